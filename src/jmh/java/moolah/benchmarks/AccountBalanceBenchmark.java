@@ -0,0 +1,104 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the balance hot paths: the old boxed Double balance against the fixed-point long balance.
+ *
+ * Run with the GC profiler to see the allocation rate next to ns/op:
+ * {@code ./gradlew jmh -PjmhArgs='AccountBalance -prof gc'}. The {@code gc.alloc.rate.norm} column gives the bytes
+ * allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBalanceBenchmark {
+
+    /** an amount outside the Double cache, as amounts parsed from JSON are */
+    private Double amount;
+
+    private long amountMinor;
+
+    private LegacyAccount legacy;
+
+    private Account account;
+
+    @Setup
+    public void setUp() {
+        amount = 12.34;
+        amountMinor = 1234;
+        legacy = new LegacyAccount();
+        legacy.deposit(1000000.0);
+        account = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+    }
+
+    @Benchmark
+    public Double legacyDepositWithdraw() {
+        legacy.deposit(amount);
+        legacy.withdraw(amount);
+        return legacy.getBalance();
+    }
+
+    /**
+     * the check-then-debit done by TransferManager before balances became atomic
+     */
+    @Benchmark
+    public Double legacyCheckAndWithdraw() {
+        if (legacy.getBalance() >= amount) {
+            legacy.withdraw(amount);
+        }
+        legacy.deposit(amount);
+        return legacy.getBalance();
+    }
+
+    @Benchmark
+    public Double depositWithdraw() {
+        account.deposit(amount);
+        account.withdraw(amount);
+        return account.getBalance();
+    }
+
+    @Benchmark
+    public long minorDepositWithdraw() {
+        account.depositMinor(amountMinor);
+        account.withdrawMinor(amountMinor);
+        return account.getBalanceMinor();
+    }
+
+    @Benchmark
+    public long tryWithdrawMinor() {
+        account.tryWithdrawMinor(amountMinor);
+        account.depositMinor(amountMinor);
+        return account.getBalanceMinor();
+    }
+
+    /**
+     * state shared between threads, to measure the compare-and-set under contention
+     */
+    @State(Scope.Group)
+    public static class Shared {
+
+        Account account;
+
+        @Setup
+        public void setUp() {
+            account = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+        }
+    }
+
+    @Benchmark
+    @Group("contendedTryWithdraw")
+    @GroupThreads(4)
+    public long contendedTryWithdrawMinor(Shared shared) {
+        shared.account.tryWithdrawMinor(amountMinor);
+        shared.account.depositMinor(amountMinor);
+        return shared.account.getBalanceMinor();
+    }
+}
@@ -0,0 +1,45 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating an account, as every POST /accounts does: most of it is the random UUID, drawn from the shared
+ * SecureRandom, so the benchmark runs on 1 and 4 threads to show how it scales.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountFactoryBenchmark {
+
+    private final Double balance = 1234.56;
+
+    private Account template;
+
+    @Setup
+    public void setUp() {
+        template = AccountFactory.createAccount("Checking", "Benchmark", balance);
+    }
+
+    @Benchmark
+    public Account createAccount() {
+        return AccountFactory.createAccount("Checking", "Benchmark", balance);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Account createAccountContended() {
+        return AccountFactory.createAccount("Checking", "Benchmark", balance);
+    }
+
+    @Benchmark
+    public Account copyAccount() {
+        return AccountFactory.createAccount(template);
+    }
+}
@@ -0,0 +1,68 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.providers.AccountStreamingOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a listing of accounts as GET /accounts does, through {@link AccountStreamingOutput}, to a stream that
+ * discards the bytes: the cost of serialization alone, without the network.
+ *
+ * Run with {@code -prof gc} to see the bytes allocated per listing; divide by {@code accounts} for the cost per account.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountListingBenchmark {
+
+    @Param({"10000"})
+    private int accounts;
+
+    @Param({"false", "true"})
+    private boolean lines;
+
+    private List<Account> listing;
+
+    private final CountingOutputStream output = new CountingOutputStream();
+
+    @Setup
+    public void setUp() {
+        listing = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            listing.add(AccountFactory.createAccount("Checking " + i, "Owner " + i, i * 1.25));
+        }
+    }
+
+    @Benchmark
+    public long writeListing() throws IOException {
+        output.count = 0;
+        new AccountStreamingOutput(listing, lines).write(output);
+        return output.count;
+    }
+
+    /** counts the bytes written to it and drops them */
+    static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.store.AccountStore;
+import moolah.store.StripedAccountStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded throughput of {@link StripedAccountStore} against the synchronized HashMap it replaced.
+ *
+ * The {@code readWrite} group models request traffic: six threads looking accounts up while two create and delete
+ * accounts. Run with more threads, e.g. {@code -PjmhArgs='AccountStore -t 32'}, to see how each store scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountStoreBenchmark {
+
+    @Param({"striped", "hashmap"})
+    public String store;
+
+    @Param({"100000"})
+    public int accounts;
+
+    private AccountStore accountStore;
+
+    private UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accountStore = "striped".equals(store) ? new StripedAccountStore() : new MapAccountStore();
+        ids = new UUID[accounts];
+        for (int i = 0; i < accounts; i++) {
+            Account account = AccountFactory.createAccount("Checking", "Benchmark", 100.0);
+            accountStore.put(account);
+            ids[i] = account.getId();
+        }
+    }
+
+    /**
+     * per-thread state: a random sequence over the stored ids and a pool of accounts to create and delete
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+
+        private static final int POOL = 1024;
+
+        private final Account[] pool = new Account[POOL];
+
+        private int seed = ThreadLocalRandom.current().nextInt() | 1;
+
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            for (int i = 0; i < POOL; i++) {
+                pool[i] = AccountFactory.createAccount("Checking", "Benchmark", 100.0);
+            }
+        }
+
+        int nextIndex(int bound) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            return (seed & Integer.MAX_VALUE) % bound;
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(6)
+    public Account lookup(Worker worker) {
+        return accountStore.get(ids[worker.nextIndex(ids.length)]);
+    }
+
+    /**
+     * insert an account from the pool and remove the one inserted half a pool earlier, keeping the size stable
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public Account createDelete(Worker worker) {
+        int i = worker.next++ & (Worker.POOL - 1);
+        accountStore.put(worker.pool[i]);
+        return accountStore.remove(worker.pool[(i + Worker.POOL / 2) & (Worker.POOL - 1)].getId());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Account lookupOnly(Worker worker) {
+        return accountStore.get(ids[worker.nextIndex(ids.length)]);
+    }
+
+    /**
+     * a full listing, as done by GET /accounts, while other threads create and delete accounts
+     */
+    @Benchmark
+    @Group("iterate")
+    @GroupThreads(1)
+    public void iterate(Blackhole bh) {
+        for (Account account : accountStore) {
+            bh.consume(account);
+        }
+    }
+
+    @Benchmark
+    @Group("iterate")
+    @GroupThreads(3)
+    public Account iterateCreateDelete(Worker worker) {
+        return createDelete(worker);
+    }
+}
@@ -0,0 +1,108 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.store.AccountStore;
+import moolah.store.PrimitiveAccountStore;
+import moolah.store.StripedAccountStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap footprint and garbage collection cost of the account table, one Account object per account against the
+ * primitive arrays of {@link PrimitiveAccountStore}, at 10M and 50M accounts.
+ *
+ * <ul>
+ *     <li>{@code lookupAndDeposit}: steady state work on random accounts, run it with {@code -prof gc} to see the
+ *     allocation rate and young collection count</li>
+ *     <li>{@code fullGc}: time of a full collection of the populated table, i.e. the worst pause a collector that
+ *     has to trace the whole old generation can take</li>
+ * </ul>
+ * After setup, the heap used by the table is printed, and after each trial, the number and total time of the
+ * collections run.
+ *
+ * Give the forked JVM a heap large enough for the 50M objects table, e.g.
+ * {@code -PjmhArgs='AccountTable -jvmArgs -Xmx24g'}, or run a single size with {@code -p accounts=10000000}.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseG1GC")
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AccountTableBenchmark {
+
+    @Param({"objects", "primitive"})
+    public String store;
+
+    @Param({"10000000", "50000000"})
+    public int accounts;
+
+    private AccountStore table;
+
+    /** ids of the stored accounts, as raw bits so that they do not weigh on the measured heap */
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        table = "primitive".equals(store) ? new PrimitiveAccountStore(accounts)
+                : new StripedAccountStore(Runtime.getRuntime().availableProcessors() * 4, accounts);
+        ids = new long[accounts * 2];
+        long before = usedHeap();
+        for (int i = 0; i < accounts; i++) {
+            UUID id = UUID.randomUUID();
+            Account account = new Account();
+            account.setId(id);
+            // distinct strings per account, as real names and owners would be
+            account.setName("Checking " + i);
+            account.setOwner("Owner " + i);
+            account.setBalanceMinor(100000);
+            table.put(account);
+            ids[2 * i] = id.getMostSignificantBits();
+            ids[2 * i + 1] = id.getLeastSignificantBits();
+        }
+        long used = usedHeap() - before;
+        System.out.printf("%n%s table of %d accounts: %d MB of heap, %d bytes per account%n",
+                store, accounts, used >> 20, used / accounts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+            millis += gc.getCollectionTime();
+        }
+        System.out.printf("%n%s table of %d accounts: %d collections, %d ms in total%n", store, accounts, count, millis);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long lookupAndDeposit() {
+        int i = ThreadLocalRandom.current().nextInt(accounts);
+        Account account = table.get(new UUID(ids[2 * i], ids[2 * i + 1]));
+        account.depositMinor(1);
+        return account.getBalanceMinor();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    public void fullGc() {
+        System.gc();
+    }
+}
@@ -0,0 +1,78 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.services.AccountService;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.*;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dashboard polling an account that does not change, through the whole Jersey application in-process (matching,
+ * filters, serialization) but without the network: plain GETs, and conditional GETs sending the ETag of the previous
+ * response and answered with a 304.
+ *
+ * The bytes of each response body are printed at setup. Run with {@code -prof gc} to see the bytes allocated per poll.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConditionalGetBenchmark {
+
+    /** {@code account} for GET /accounts/{id}, {@code balance} for GET /accounts/{id}/p/balance */
+    @Param({"account", "balance"})
+    private String resource;
+
+    @Param({"false", "true"})
+    private boolean conditional;
+
+    private ApplicationHandler handler;
+
+    private final URI base = URI.create("http://localhost/");
+
+    private URI uri;
+
+    private String tag;
+
+    private final AccountListingBenchmark.CountingOutputStream output = new AccountListingBenchmark.CountingOutputStream();
+
+    @Setup
+    public void setUp() throws Exception {
+        handler = new ApplicationHandler(new ResourceConfig().packages("moolah"));
+        Account account = AccountFactory.createAccount("Checking", "Dashboard", 1234.56);
+        AccountService.getAccountStore().put(account);
+        String path = AccountService.ACCOUNTS_ROOT + "/" + account.getId() + (resource.equals("balance") ? "/p/balance" : "");
+        uri = base.resolve(path.substring(1));
+        tag = poll(null).getEntityTag().toString();
+        long full = output.count;
+        poll(tag);
+        System.out.printf("%n%s: %d B body, %d B body when not modified%n", resource, full, output.count);
+    }
+
+    @Benchmark
+    public int poll() throws Exception {
+        return poll(conditional ? tag : null).getStatus();
+    }
+
+    private ContainerResponse poll(String ifNoneMatch) throws InterruptedException, ExecutionException {
+        ContainerRequest request = new ContainerRequest(base, uri, "GET", null, new MapPropertiesDelegate());
+        request.header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        output.count = 0;
+        return handler.apply(request, output).get();
+    }
+}
@@ -0,0 +1,146 @@
+package moolah.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop HTTP load over many concurrent keep-alive connections, to compare the execution models of
+ * {@link moolah.ServerFactory}: each connection sends a GET, waits for the whole response and sends the next one.
+ * A single selector thread drives every connection, so thousands of them cost the client little.
+ *
+ * Start the server in the mode to measure, e.g. {@code java -Dmoolah.server.mode=selector -cp ... moolah.Main}, then
+ * run {@code java -cp ... moolah.benchmarks.ConnectionLoad <host> <port> <connections> <seconds> <path>}. It prints
+ * the throughput, latency percentiles and failed connections. The first quarter of the run is a warmup, not measured.
+ */
+public class ConnectionLoad {
+
+    /** latencies are recorded in 10 microsecond buckets, up to 10 seconds */
+    private static final long BUCKET_NANOS = 10000;
+
+    private static final long[] latencies = new long[1000000];
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer request;
+        final ByteBuffer response = ByteBuffer.allocate(64 * 1024);
+        long sentAt;
+
+        Connection(SocketChannel channel, byte[] request) {
+            this.channel = channel;
+            this.request = ByteBuffer.wrap(request);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int connections = Integer.parseInt(args[2]);
+        long seconds = Long.parseLong(args[3]);
+        String path = args[4];
+        byte[] request = String.format("GET %s HTTP/1.1\r\nHost: %s:%d\r\nAccept: application/json\r\n\r\n",
+                path, host, port).getBytes(StandardCharsets.US_ASCII);
+
+        Selector selector = Selector.open();
+        int failed = 0;
+        for (int i = 0; i < connections; i++) {
+            try {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                channel.configureBlocking(false);
+                Connection connection = new Connection(channel, request);
+                channel.register(selector, SelectionKey.OP_WRITE, connection);
+            }
+            catch (IOException exc) {
+                failed++;
+            }
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(seconds) / 4;
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long completed = 0;
+        while (System.nanoTime() < end) {
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isWritable()) {
+                        if (connection.request.position() == 0) {
+                            connection.sentAt = System.nanoTime();
+                        }
+                        connection.channel.write(connection.request);
+                        if (!connection.request.hasRemaining()) {
+                            connection.request.clear();
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    }
+                    else if (key.isReadable()) {
+                        if (connection.channel.read(connection.response) < 0) {
+                            throw new IOException("closed by the server");
+                        }
+                        if (isComplete(connection.response)) {
+                            long now = System.nanoTime();
+                            if (connection.sentAt >= measureFrom) {
+                                completed++;
+                                latencies[(int) Math.min(latencies.length - 1, (now - connection.sentAt) / BUCKET_NANOS)]++;
+                            }
+                            connection.response.clear();
+                            key.interestOps(SelectionKey.OP_WRITE);
+                        }
+                    }
+                }
+                catch (IOException exc) {
+                    failed++;
+                    key.cancel();
+                    connection.channel.close();
+                }
+            }
+        }
+        double measured = (end - measureFrom) / 1e9;
+        System.out.printf("%d connections (%d failed): %.0f requests/s, p50 %s, p99 %s, p99.9 %s, max %s%n",
+                connections, failed, completed / measured, percentile(completed, 0.5), percentile(completed, 0.99),
+                percentile(completed, 0.999), percentile(completed, 1.0));
+        selector.close();
+    }
+
+    /**
+     * @return true if {@code response} holds a whole response with a Content-Length header
+     */
+    private static boolean isComplete(ByteBuffer response) {
+        String text = new String(response.array(), 0, response.position(), StandardCharsets.US_ASCII);
+        int headersEnd = text.indexOf("\r\n\r\n");
+        if (headersEnd < 0) {
+            return false;
+        }
+        int length = 0;
+        for (String header : text.substring(0, headersEnd).split("\r\n")) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        return response.position() >= headersEnd + 4 + length;
+    }
+
+    private static String percentile(long count, double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < latencies.length; i++) {
+            seen += latencies[i];
+            if (seen >= rank) {
+                return String.format("%.2f ms", (i + 1) * BUCKET_NANOS / 1e6);
+            }
+        }
+        return "-";
+    }
+
+    private ConnectionLoad() { }
+}
@@ -0,0 +1,477 @@
+package moolah.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import moolah.Configuration;
+import moolah.Main;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.services.AccountService;
+import moolah.services.FastPathHandler;
+import org.HdrHistogram.Histogram;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test of the whole HTTP stack: starts the server in-process with {@link Main#startServer()}, seeds
+ * accounts, then sends a mix of requests at a fixed rate and reports throughput and latency percentiles.
+ *
+ * The load is open-loop: request i is due at {@code start + i / rate} whether or not earlier requests have been
+ * answered, and its latency is measured from that due time, not from when a connection was free to send it. A
+ * server stall therefore shows as the whole queue of late requests it delayed, instead of as a single slow request,
+ * i.e. the measurement does not suffer from coordinated omission.
+ *
+ * Arguments are {@code key=value} pairs, all optional:
+ * <ul>
+ *     <li>{@code rate}: requests per second, default 2000</li>
+ *     <li>{@code seconds}: length of the measured run, default 30</li>
+ *     <li>{@code warmup}: seconds of load before measuring, default 10</li>
+ *     <li>{@code accounts}: number of accounts seeded, default 10000</li>
+ *     <li>{@code connections}: keep-alive connections requests are spread over, default 64</li>
+ *     <li>{@code mix}: weights of each request kind, default {@code get:70,list:5,create:10,transfer:15}. The
+ *     {@code fast_get} and {@code fast_transfer} kinds go to {@link FastPathHandler}, which is then enabled, e.g.
+ *     {@code mix=get:25,fast_get:25,transfer:25,fast_transfer:25} to compare both routes under the same load</li>
+ *     <li>{@code results}: JSON file the results are written to, default {@code build/reports/loadtest/results.json}</li>
+ * </ul>
+ * The server, store, engine and transfer executor are configured with the usual system properties, see
+ * {@link moolah.Configuration}. The journal is not opened.
+ */
+public class HttpLoadTest {
+
+    /** kinds of requests in the mix */
+    enum Kind {
+        /** GET /accounts/{id} */
+        GET,
+        /** GET /accounts?after={id}&amp;limit=100 */
+        LIST,
+        /** POST /accounts */
+        CREATE,
+        /** POST /accounts/{fromId}/transfer/{toId} */
+        TRANSFER,
+        /** GET /fast/balance/{id}, served by {@link moolah.services.FastPathHandler} */
+        FAST_GET,
+        /** POST /fast/transfer/{fromId}/{toId}, served by {@link moolah.services.FastPathHandler} */
+        FAST_TRANSFER
+    }
+
+    /** latencies are recorded in microseconds, up to a minute, with 3 significant digits */
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String host;
+
+    private final int port;
+
+    private final UUID[] ids;
+
+    private final Kind[] draws = new Kind[100];
+
+    private final Random random = new Random(42);
+
+    private final Map<Kind, Histogram> histograms = new EnumMap<>(Kind.class);
+
+    private final Map<Kind, long[]> errors = new EnumMap<>(Kind.class);
+
+    private static final class Request {
+        final Kind kind;
+        /** {@link System#nanoTime()} the request was due at */
+        final long due;
+        final byte[] bytes;
+
+        Request(Kind kind, long due, byte[] bytes) {
+            this.kind = kind;
+            this.due = due;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        ByteBuffer response = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer out;
+        Request request;
+        /** whether the server closes the connection after the current response */
+        boolean closing;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * @return the status of the response read so far if it is complete, 0 otherwise. Bodies are delimited by
+         * Content-Length or chunked.
+         */
+        int complete() {
+            byte[] bytes = response.array();
+            int length = response.position();
+            int headersEnd = indexOf(bytes, 0, length, "\r\n\r\n");
+            if (headersEnd < 0) {
+                return 0;
+            }
+            String headers = new String(bytes, 0, headersEnd, StandardCharsets.US_ASCII);
+            int status = Integer.parseInt(headers.substring(9, 12));
+            int bodyStart = headersEnd + 4;
+            boolean chunked = false;
+            closing = false;
+            int contentLength = 0;
+            for (String header : headers.split("\r\n")) {
+                if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                }
+                else if (header.regionMatches(true, 0, "Connection:", 0, 11)) {
+                    closing = header.toLowerCase().contains("close");
+                }
+                else if (header.regionMatches(true, 0, "Transfer-Encoding:", 0, 18)
+                        && header.toLowerCase().contains("chunked")) {
+                    chunked = true;
+                }
+            }
+            if (!chunked) {
+                return length >= bodyStart + contentLength ? status : 0;
+            }
+            int position = bodyStart;
+            while (true) {
+                int lineEnd = indexOf(bytes, position, length, "\r\n");
+                if (lineEnd < 0) {
+                    return 0;
+                }
+                String size = new String(bytes, position, lineEnd - position, StandardCharsets.US_ASCII);
+                int semicolon = size.indexOf(';');
+                int chunk = Integer.parseInt((semicolon < 0 ? size : size.substring(0, semicolon)).trim(), 16);
+                if (chunk == 0) {
+                    return indexOf(bytes, lineEnd, length, "\r\n\r\n") == lineEnd ? status : 0;
+                }
+                position = lineEnd + 2 + chunk + 2;
+                if (position > length) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+    private HttpLoadTest(String host, int port, UUID[] ids, Map<Kind, Integer> mix) {
+        this.host = host;
+        this.port = port;
+        this.ids = ids;
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        int index = 0;
+        for (Map.Entry<Kind, Integer> entry : mix.entrySet()) {
+            int slots = (int) Math.round(100.0 * entry.getValue() / total);
+            for (int i = 0; i < slots && index < draws.length; i++) {
+                draws[index++] = entry.getKey();
+            }
+        }
+        while (index < draws.length) {
+            draws[index] = draws[index - 1];
+            index++;
+        }
+        for (Kind kind : Kind.values()) {
+            histograms.put(kind, new Histogram(MAX_LATENCY_MICROS, 3));
+            errors.put(kind, new long[1]);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rate", "2000");
+        options.put("seconds", "30");
+        options.put("warmup", "10");
+        options.put("accounts", "10000");
+        options.put("connections", "64");
+        options.put("mix", "get:70,list:5,create:10,transfer:15");
+        options.put("results", "build/reports/loadtest/results.json");
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0 || !options.containsKey(arg.substring(0, equals))) {
+                throw new IllegalArgumentException("Unknown argument " + arg + ", expected one of " + options.keySet());
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        Map<Kind, Integer> mix = new LinkedHashMap<>();
+        for (String part : options.get("mix").split(",")) {
+            String[] weight = part.split(":");
+            mix.put(Kind.valueOf(weight[0].trim().toUpperCase().replace('-', '_')), Integer.parseInt(weight[1].trim()));
+        }
+        if (mix.containsKey(Kind.FAST_GET) || mix.containsKey(Kind.FAST_TRANSFER)) {
+            System.setProperty(Configuration.FASTPATH_ENABLED, "true");
+        }
+
+        // the services as Main sets them up, without the journal: this measures the HTTP stack, the journal has its
+        // own benchmarks
+        AccountService.setAccountStore(Main.createAccountStore());
+        AccountService.setTransferEngine(Main.createTransferEngine());
+        AccountService.getTransferExecutor().close();
+        AccountService.setTransferExecutor(Main.createTransferExecutor());
+        HttpServer server = Main.startServer();
+        try {
+            UUID[] ids = seed(Integer.parseInt(options.get("accounts")));
+            NetworkListener listener = server.getListeners().iterator().next();
+            InetSocketAddress address = new InetSocketAddress(listener.getHost(), listener.getPort());
+            HttpLoadTest test = new HttpLoadTest(address.getHostString(), address.getPort(), ids, mix);
+            double rate = Double.parseDouble(options.get("rate"));
+            long warmup = Long.parseLong(options.get("warmup"));
+            long seconds = Long.parseLong(options.get("seconds"));
+            long incomplete = test.run(address, Integer.parseInt(options.get("connections")), rate, warmup, seconds);
+            test.report(options, seconds, incomplete, new File(options.get("results")));
+        }
+        finally {
+            server.shutdownNow();
+            AccountService.getTransferExecutor().close();
+            AccountService.getTransferEngine().close();
+        }
+    }
+
+    private static UUID[] seed(int accounts) {
+        AccountService service = new AccountService();
+        UUID[] ids = new UUID[accounts];
+        for (int i = 0; i < accounts; i++) {
+            Account account = AccountFactory.createAccount("Checking", "Load " + i, 1000000.0);
+            service.addAccount(account);
+            ids[i] = account.getId();
+        }
+        return ids;
+    }
+
+    /**
+     * send requests at {@code rate} for {@code warmup + seconds}, recording the latencies of those due after the
+     * warmup
+     *
+     * @return the number of measured requests still unanswered at the end of the run
+     */
+    private long run(InetSocketAddress address, int connections, double rate, long warmup, long seconds)
+            throws IOException {
+        Selector selector = Selector.open();
+        ArrayDeque<Connection> idle = new ArrayDeque<>();
+        for (int i = 0; i < connections; i++) {
+            idle.add(connect(address, selector));
+        }
+
+        ArrayDeque<Request> late = new ArrayDeque<>();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        double interval = 1e9 / rate;
+        long sent = 0;
+        long inFlight = 0;
+        while (true) {
+            long now = System.nanoTime();
+            // queue every request due by now, whether or not a connection is free to send it
+            while (now < end && start + (long) (sent * interval) <= now) {
+                late.add(newRequest(start + (long) (sent * interval)));
+                sent++;
+            }
+            while (!late.isEmpty() && !idle.isEmpty()) {
+                Connection connection = idle.poll();
+                connection.request = late.poll();
+                connection.out = ByteBuffer.wrap(connection.request.bytes);
+                connection.channel.keyFor(selector).interestOps(SelectionKey.OP_WRITE);
+                inFlight++;
+            }
+            if (now >= end && (inFlight == 0 || now >= end + TimeUnit.SECONDS.toNanos(5))) {
+                break;
+            }
+            long next = start + (long) (sent * interval);
+            long waitMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(next - now));
+            selector.select(Math.min(waitMillis, 100));
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection connection = (Connection) key.attachment();
+                if (key.isWritable()) {
+                    connection.channel.write(connection.out);
+                    if (!connection.out.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                else if (key.isReadable()) {
+                    if (!connection.response.hasRemaining()) {
+                        ByteBuffer larger = ByteBuffer.allocate(connection.response.capacity() * 2);
+                        connection.response.flip();
+                        larger.put(connection.response);
+                        connection.response = larger;
+                    }
+                    if (connection.channel.read(connection.response) < 0) {
+                        throw new IOException("Connection closed by the server");
+                    }
+                    int status = connection.complete();
+                    if (status > 0) {
+                        Request request = connection.request;
+                        if (request.due >= measureFrom) {
+                            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - request.due);
+                            histograms.get(request.kind).recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+                            if (status >= 300) {
+                                errors.get(request.kind)[0]++;
+                            }
+                        }
+                        connection.response.clear();
+                        connection.request = null;
+                        inFlight--;
+                        if (connection.closing) {
+                            // the server closes keep-alive connections after a number of requests
+                            key.cancel();
+                            connection.channel.close();
+                            idle.add(connect(address, selector));
+                        }
+                        else {
+                            key.interestOps(0);
+                            idle.add(connection);
+                        }
+                    }
+                }
+            }
+        }
+        selector.close();
+        long incomplete = 0;
+        for (Request request : late) {
+            if (request.due >= measureFrom) {
+                incomplete++;
+            }
+        }
+        return incomplete + inFlight;
+    }
+
+    private static Connection connect(InetSocketAddress address, Selector selector) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        channel.register(selector, 0, connection);
+        return connection;
+    }
+
+    private Request newRequest(long due) {
+        Kind kind = draws[random.nextInt(draws.length)];
+        String request;
+        switch (kind) {
+            case GET:
+                request = request("GET", "/accounts/" + randomId(), null);
+                break;
+            case LIST:
+                request = request("GET", "/accounts?limit=100&after=" + randomId(), null);
+                break;
+            case CREATE:
+                request = request("POST", "/accounts", "{\"name\":\"Load\",\"owner\":\"Load\",\"balance\":100.0}");
+                break;
+            case FAST_GET:
+                request = request("GET", FastPathHandler.CONTEXT + FastPathHandler.BALANCE + randomId(), null, null);
+                break;
+            case FAST_TRANSFER: {
+                int from = random.nextInt(ids.length);
+                int to = (from + 1 + random.nextInt(ids.length - 1)) % ids.length;
+                request = request("POST", FastPathHandler.CONTEXT + FastPathHandler.TRANSFER + ids[from] + "/" + ids[to],
+                        "text/plain", "0.01");
+                break;
+            }
+            case TRANSFER:
+            default: {
+                int from = random.nextInt(ids.length);
+                int to = (from + 1 + random.nextInt(ids.length - 1)) % ids.length;
+                request = request("POST", "/accounts/" + ids[from] + "/transfer/" + ids[to], "{\"amount\":0.01}");
+                break;
+            }
+        }
+        return new Request(kind, due, request.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private UUID randomId() {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    private String request(String method, String path, String body) {
+        return request(method, path, "application/json", body);
+    }
+
+    private String request(String method, String path, String type, String body) {
+        StringBuilder request = new StringBuilder()
+                .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append(':').append(port).append("\r\n")
+                .append("Accept: ").append(type == null ? "text/plain" : type).append("\r\n");
+        if (body != null) {
+            request.append("Content-Type: ").append(type).append("\r\n")
+                    .append("Content-Length: ").append(body.getBytes(StandardCharsets.UTF_8).length).append("\r\n");
+        }
+        request.append("\r\n");
+        if (body != null) {
+            request.append(body);
+        }
+        return request.toString();
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, String pattern) {
+        outer:
+        for (int i = from; i <= to - pattern.length(); i++) {
+            for (int j = 0; j < pattern.length(); j++) {
+                if (bytes[i + j] != pattern.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void report(Map<String, String> options, long seconds, long incomplete, File file) throws IOException {
+        Histogram all = new Histogram(MAX_LATENCY_MICROS, 3);
+        long allErrors = 0;
+        Map<String, Object> kinds = new LinkedHashMap<>();
+        System.out.printf("%n%-14s %10s %10s %8s %10s %10s %10s %10s%n",
+                "request", "count", "req/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Kind kind : Kind.values()) {
+            Histogram histogram = histograms.get(kind);
+            all.add(histogram);
+            allErrors += errors.get(kind)[0];
+            kinds.put(kind.name().toLowerCase(), summary(kind.name().toLowerCase(), histogram, errors.get(kind)[0], seconds));
+        }
+        Map<String, Object> total = summary("all", all, allErrors, seconds);
+        System.out.printf("%d requests due in the measured run were still unanswered at its end%n", incomplete);
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("options", options);
+        results.put("incomplete", incomplete);
+        results.put("all", total);
+        results.put("requests", kinds);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, results);
+        System.out.printf("Results written to %s%n", file.getAbsolutePath());
+    }
+
+    private static Map<String, Object> summary(String name, Histogram histogram, long errors, long seconds) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("throughput", (double) histogram.getTotalCount() / seconds);
+        summary.put("errors", errors);
+        summary.put("p50Millis", histogram.getValueAtPercentile(50) / 1000.0);
+        summary.put("p99Millis", histogram.getValueAtPercentile(99) / 1000.0);
+        summary.put("p999Millis", histogram.getValueAtPercentile(99.9) / 1000.0);
+        summary.put("maxMillis", histogram.getMaxValue() / 1000.0);
+        System.out.printf("%-14s %10d %10.0f %8d %10.2f %10.2f %10.2f %10.2f%n", name, histogram.getTotalCount(),
+                (double) histogram.getTotalCount() / seconds, errors, histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+        return summary;
+    }
+}
@@ -0,0 +1,81 @@
+package moolah.benchmarks;
+
+import moolah.store.IdempotencyCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap footprint and latency of the idempotency cache when full, at 100K and 500K keys.
+ *
+ * <ul>
+ *     <li>{@code hit}: a retry of a held key, i.e. a lookup returning the outcome of the first execution</li>
+ *     <li>{@code miss}: a new key, i.e. an insertion evicting the oldest key</li>
+ * </ul>
+ * Keys are random UUID strings, as clients generate them, and outcomes small objects standing for transfers. After
+ * setup, the heap used by the cache is printed.
+ *
+ * The benchmark runs a single thread to measure latency alone, add contention with e.g.
+ * {@code -PjmhArgs='IdempotencyCache -t 8'}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+public class IdempotencyCacheBenchmark {
+
+    @Param({"100000", "500000"})
+    public int keys;
+
+    private IdempotencyCache<Object> cache;
+
+    private String[] held;
+
+    private Object request;
+
+    private final AtomicLong fresh = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        held = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            held[i] = UUID.randomUUID().toString();
+        }
+        request = Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), 10.0, "benchmark");
+        long before = usedHeap();
+        cache = new IdempotencyCache<>(keys, TimeUnit.HOURS.toMillis(24));
+        for (String key : held) {
+            cache.execute(key, request, () -> new long[4]);
+        }
+        long used = usedHeap() - before;
+        System.out.printf("%nidempotency cache of %d keys: %d MB of heap, %d bytes per key (key strings excluded)%n",
+                cache.size(), used >> 20, used / cache.size());
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Benchmark
+    public Object hit() {
+        return cache.execute(held[ThreadLocalRandom.current().nextInt(keys)], request, () -> null);
+    }
+
+    @Benchmark
+    public Object miss() {
+        List<Object> outcome = Arrays.asList(fresh.incrementAndGet());
+        return cache.execute(Long.toString(fresh.get()), request, () -> outcome);
+    }
+}
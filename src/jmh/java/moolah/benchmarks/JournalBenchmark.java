@@ -0,0 +1,91 @@
+package moolah.benchmarks;
+
+import moolah.exceptions.TransferException;
+import moolah.journal.FsyncPolicy;
+import moolah.journal.Journal;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable transfer throughput under each fsync policy: every operation applies a transfer and waits until its journal
+ * record is durable, as a request does before it is acknowledged. With {@code group}, the 8 request threads share
+ * forces, so throughput should approach {@code interval} rather than {@code always}.
+ *
+ * The journal is written to a temporary directory, on the device holding {@code java.io.tmpdir}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class JournalBenchmark {
+
+    @Param({"always", "group", "interval"})
+    public String fsync;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private Path directory;
+
+    private Journal journal;
+
+    private Account[] table;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("moolah-journal");
+        journal = new Journal(directory, FsyncPolicy.valueOf(fsync.toUpperCase()), 10);
+        journal.start();
+        table = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            table[i] = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+            journal.accountCreated(table[i]);
+        }
+        journal.sync();
+        TransferManager.addListener(journal);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TransferManager.removeListener(journal);
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final Random random = new Random();
+        final Double amount = 0.01;
+    }
+
+    @Benchmark
+    public Transfer durableTransfer(Client client) {
+        Transfer transfer;
+        try {
+            transfer = TransferManager.doTransfer(table[client.random.nextInt(accounts)],
+                    table[client.random.nextInt(accounts)], client.amount, "benchmark");
+        }
+        catch (TransferException exc) {
+            // the same account drawn twice
+            return null;
+        }
+        journal.sync();
+        return transfer;
+    }
+}
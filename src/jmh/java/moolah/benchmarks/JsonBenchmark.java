@@ -0,0 +1,95 @@
+package moolah.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+import moolah.services.AccountService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON round trips of the entities the REST API exchanges, through Jackson as the service's provider does: an
+ * Account, and a Transfer whose accounts go through {@link moolah.providers.AccountJSONSerializer} and
+ * {@link moolah.providers.AccountJSONDeserializer}, i.e. are written as ids and looked up in the account store when
+ * read.
+ *
+ * Run with {@code -prof gc} to see the bytes allocated per round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private ObjectWriter accountWriter;
+
+    private ObjectReader accountReader;
+
+    private ObjectWriter transferWriter;
+
+    private ObjectReader transferReader;
+
+    private Account account;
+
+    private Transfer transfer;
+
+    private byte[] accountJson;
+
+    private byte[] transferJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        accountWriter = mapper.writerFor(Account.class);
+        accountReader = mapper.readerFor(Account.class);
+        transferWriter = mapper.writerFor(Transfer.class);
+        transferReader = mapper.readerFor(Transfer.class);
+
+        account = AccountFactory.createAccount("Checking", "Benchmark", 1234.56);
+        Account other = AccountFactory.createAccount("Saving", "Benchmark", 0.0);
+        AccountService.getAccountStore().put(account);
+        AccountService.getAccountStore().put(other);
+        transfer = TransferManager.doTransfer(account, other, 12.34, "benchmark");
+
+        accountJson = accountWriter.writeValueAsBytes(account);
+        transferJson = transferWriter.writeValueAsBytes(transfer);
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws IOException {
+        return accountWriter.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public Account readAccount() throws IOException {
+        return accountReader.readValue(accountJson);
+    }
+
+    @Benchmark
+    public Account roundTripAccount() throws IOException {
+        return accountReader.readValue(accountWriter.writeValueAsBytes(account));
+    }
+
+    @Benchmark
+    public byte[] writeTransfer() throws IOException {
+        return transferWriter.writeValueAsBytes(transfer);
+    }
+
+    @Benchmark
+    public Transfer readTransfer() throws IOException {
+        return transferReader.readValue(transferJson);
+    }
+
+    @Benchmark
+    public Transfer roundTripTransfer() throws IOException {
+        return transferReader.readValue(transferWriter.writeValueAsBytes(transfer));
+    }
+}
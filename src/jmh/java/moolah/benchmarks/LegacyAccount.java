@@ -0,0 +1,26 @@
+package moolah.benchmarks;
+
+/**
+ * The balance handling of Account before balances became fixed-point longs: a boxed Double updated without any
+ * synchronization. Kept only as a baseline for {@link AccountBalanceBenchmark}.
+ */
+class LegacyAccount {
+
+    private Double balance = 0.0;
+
+    Double getBalance() {
+        return balance;
+    }
+
+    void deposit(Double amount) {
+        if (amount < 0)
+            throw new IllegalArgumentException("Amount to deposit cannot be negative.");
+        balance += amount;
+    }
+
+    void withdraw(Double amount) {
+        if (amount < 0)
+            throw new IllegalArgumentException("Amount to withdraw cannot be negative.");
+        balance -= amount;
+    }
+}
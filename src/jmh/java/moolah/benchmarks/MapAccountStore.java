@@ -0,0 +1,54 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.store.AccountStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * {@link AccountStore} over a {@code HashMap}, the way AccountService kept its accounts before the store existed.
+ *
+ * A plain HashMap cannot be written by several threads without corrupting it, so it is wrapped with
+ * {@link Collections#synchronizedMap(Map)}: the least that makes the old approach correct.
+ */
+class MapAccountStore implements AccountStore {
+
+    private final Map<UUID, Account> accounts = Collections.synchronizedMap(new HashMap<>());
+
+    @Override
+    public Account get(UUID id) {
+        return accounts.get(id);
+    }
+
+    @Override
+    public Account put(Account account) {
+        return accounts.put(account.getId(), account);
+    }
+
+    @Override
+    public Account putIfAbsent(Account account) {
+        return accounts.putIfAbsent(account.getId(), account);
+    }
+
+    @Override
+    public Account remove(UUID id) {
+        return accounts.remove(id);
+    }
+
+    @Override
+    public int size() {
+        return accounts.size();
+    }
+
+    @Override
+    public Iterator<Account> iterator() {
+        synchronized (accounts) {
+            return new ArrayList<>(accounts.values()).iterator();
+        }
+    }
+}
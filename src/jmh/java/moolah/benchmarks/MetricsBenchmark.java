@@ -0,0 +1,42 @@
+package moolah.benchmarks;
+
+import moolah.metrics.HttpMetrics;
+import moolah.metrics.RouteMetrics;
+import moolah.services.AccountService;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a request in the metrics: looking up the route of the matched resource method and recording the
+ * latency and status. Run with {@code -prof gc} to check that recording allocates nothing. The start time
+ * {@link moolah.providers.MetricsFilter} keeps as a request property is not included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private Method method;
+
+    private long latency;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        method = AccountService.class.getMethod("getAccount", UUID.class);
+    }
+
+    @Benchmark
+    public RouteMetrics record() {
+        RouteMetrics route = HttpMetrics.route(AccountService.class, method);
+        // vary the latency so that different buckets are hit
+        latency = (latency + 7919) & 0xFFFFF;
+        route.record(200, latency * 100);
+        return route;
+    }
+}
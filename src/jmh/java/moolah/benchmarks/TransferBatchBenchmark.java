@@ -0,0 +1,106 @@
+package moolah.benchmarks;
+
+import moolah.exceptions.TransferException;
+import moolah.journal.FsyncPolicy;
+import moolah.journal.Journal;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.TransferBatch;
+import moolah.model.TransferManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable transfer throughput when a client issues its transfers one at a time or in batches: every operation
+ * applies {@code size} transfers and waits until they are durable, either with one lock acquisition and one journal
+ * wait per transfer, as a sequence of single transfer requests does, or with one of each for the whole batch.
+ *
+ * Scores are batches per second, multiply by {@code size} for transfers per second. The journal is written to a
+ * temporary directory with the {@code group} fsync policy, the default, on the device holding {@code java.io.tmpdir}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class TransferBatchBenchmark {
+
+    @Param({"100"})
+    public int size;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private Path directory;
+
+    private Journal journal;
+
+    private Account[] table;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("moolah-batch");
+        journal = new Journal(directory, FsyncPolicy.GROUP, 10);
+        journal.start();
+        table = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            table[i] = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+            journal.accountCreated(table[i]);
+        }
+        journal.sync();
+        TransferManager.addListener(journal);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TransferManager.removeListener(journal);
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final Random random = new Random();
+        final Double amount = 0.01;
+    }
+
+    @Benchmark
+    public int singles(Client client) {
+        int committed = 0;
+        for (int i = 0; i < size; i++) {
+            try {
+                TransferManager.doTransfer(table[client.random.nextInt(accounts)],
+                        table[client.random.nextInt(accounts)], client.amount, "benchmark");
+                committed++;
+            }
+            catch (TransferException exc) {
+                // the same account drawn twice
+            }
+            journal.sync();
+        }
+        return committed;
+    }
+
+    @Benchmark
+    public boolean batch(Client client) {
+        TransferBatch batch = new TransferBatch(TransferBatch.Mode.INDEPENDENT);
+        for (int i = 0; i < size; i++) {
+            batch.add(table[client.random.nextInt(accounts)], table[client.random.nextInt(accounts)], client.amount,
+                    "benchmark");
+        }
+        boolean committed = TransferManager.doBatch(batch);
+        journal.sync();
+        return committed;
+    }
+}
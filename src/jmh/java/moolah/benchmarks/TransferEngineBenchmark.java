@@ -0,0 +1,80 @@
+package moolah.benchmarks;
+
+import moolah.engine.LockingTransferEngine;
+import moolah.engine.SequencedTransferEngine;
+import moolah.engine.TransferEngine;
+import moolah.exceptions.TransferException;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Transfer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer throughput of the locking engine against the sequenced (single-writer) engine, with accounts drawn
+ * uniformly or following a Zipfian distribution where a few hot accounts take most of the traffic.
+ *
+ * The benchmark runs 8 request threads by default, change it with e.g. {@code -PjmhArgs='TransferEngine -t 32'}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class TransferEngineBenchmark {
+
+    @Param({"locking", "sequenced"})
+    public String engine;
+
+    @Param({"uniform", "zipfian"})
+    public String distribution;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferEngine transferEngine;
+
+    private Account[] table;
+
+    private ZipfianGenerator zipfian;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transferEngine = "sequenced".equals(engine) ? new SequencedTransferEngine(1024) : new LockingTransferEngine();
+        table = new Account[accounts];
+        for (int i = 0; i < accounts; i++) {
+            table[i] = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+        }
+        zipfian = "zipfian".equals(distribution) ? new ZipfianGenerator(accounts) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transferEngine.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final Random random = new Random();
+        final Double amount = 0.01;
+    }
+
+    private Account pick(Random random) {
+        return table[zipfian == null ? random.nextInt(table.length) : zipfian.next(random)];
+    }
+
+    @Benchmark
+    public Transfer transfer(Client client) {
+        try {
+            return transferEngine.transfer(pick(client.random), pick(client.random), client.amount, "benchmark");
+        }
+        catch (TransferException exc) {
+            // the same account drawn twice, frequent with hot accounts
+            return null;
+        }
+    }
+}
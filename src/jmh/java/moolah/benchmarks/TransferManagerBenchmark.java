@@ -0,0 +1,100 @@
+package moolah.benchmarks;
+
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+import moolah.store.TransferIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link TransferManager#doTransfer(Account, Account, Double, String)} as contention on the accounts grows:
+ *
+ * <ul>
+ *     <li>{@code uncontended}: every thread transfers between its own two accounts</li>
+ *     <li>{@code contended}: all threads transfer between the same 4 accounts</li>
+ *     <li>{@code hot}: every transfer involves one hot account, the other side drawn from 10000</li>
+ * </ul>
+ * Transfers alternate direction so that balances never run out. The benchmark runs 4 threads by default, change it
+ * with e.g. {@code -PjmhArgs='TransferManager -t 16'}.
+ *
+ * Every committed transfer stays in the {@link TransferManager#getIndex() index} and in the histories of its accounts.
+ * The index and the accounts are therefore replaced before each iteration, so that an iteration measures the transfers
+ * and not the heap built up by the ones before: the index is pre-sized and the histories start empty.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TransferManagerBenchmark {
+
+    @Param({"uncontended", "contended", "hot"})
+    public String scenario;
+
+    private Account[] shared;
+
+    private Account hot;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        TransferManager.setIndex(new TransferIndex(Runtime.getRuntime().availableProcessors() * 4, 1 << 22));
+        shared = new Account["hot".equals(scenario) ? 10000 : 4];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+        }
+        hot = AccountFactory.createAccount("Checking", "Hot", 1000000.0);
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final Random random = new Random();
+        final Double amount = 0.01;
+        Account own;
+        Account other;
+        boolean back;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            own = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+            other = AccountFactory.createAccount("Checking", "Benchmark", 1000000.0);
+        }
+    }
+
+    @Benchmark
+    public Transfer doTransfer(Client client) {
+        Account a;
+        Account b;
+        switch (scenario) {
+            case "uncontended":
+                a = client.own;
+                b = client.other;
+                break;
+            case "contended":
+                a = shared[client.random.nextInt(shared.length)];
+                b = shared[(client.random.nextInt(shared.length - 1) + 1 + indexOf(a)) % shared.length];
+                break;
+            default:
+                a = hot;
+                b = shared[client.random.nextInt(shared.length)];
+                break;
+        }
+        client.back = !client.back;
+        return client.back ? TransferManager.doTransfer(b, a, client.amount, "benchmark")
+                : TransferManager.doTransfer(a, b, client.amount, "benchmark");
+    }
+
+    private int indexOf(Account account) {
+        for (int i = 0; i < shared.length; i++) {
+            if (shared[i] == account) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
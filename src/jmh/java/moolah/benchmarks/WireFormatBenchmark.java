@@ -0,0 +1,113 @@
+package moolah.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+import moolah.model.TransferRequest;
+import moolah.providers.SmileProvider;
+import moolah.services.AccountService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding the entities the REST API exchanges in each wire format it offers: JSON, the default, and
+ * Smile ({@link SmileProvider}). Both go through the same serializers, so the difference is the encoding alone.
+ *
+ * The payload size of each entity in each format is printed at setup. Run with {@code -prof gc} to see the bytes
+ * allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "smile"})
+    private String format;
+
+    /** number of transfers in a batch request */
+    @Param({"100"})
+    private int batchSize;
+
+    private ObjectWriter accountWriter;
+
+    private ObjectReader accountReader;
+
+    private ObjectWriter transferWriter;
+
+    private ObjectWriter batchWriter;
+
+    private ObjectReader batchReader;
+
+    private Account account;
+
+    private Transfer transfer;
+
+    private List<TransferRequest> batch;
+
+    private byte[] accountBytes;
+
+    private byte[] batchBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = format.equals("smile") ? SmileProvider.getMapper() : new ObjectMapper();
+        TypeReference<List<TransferRequest>> batchType = new TypeReference<List<TransferRequest>>() { };
+        accountWriter = mapper.writerFor(Account.class);
+        accountReader = mapper.readerFor(Account.class);
+        transferWriter = mapper.writerFor(Transfer.class);
+        batchWriter = mapper.writerFor(batchType);
+        batchReader = mapper.readerFor(batchType);
+
+        account = AccountFactory.createAccount("Checking", "Benchmark", 1234.56);
+        Account other = AccountFactory.createAccount("Saving", "Benchmark", 0.0);
+        AccountService.getAccountStore().put(account);
+        AccountService.getAccountStore().put(other);
+        transfer = TransferManager.doTransfer(account, other, 12.34, "benchmark");
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new TransferRequest(account.getId().toString(), other.getId().toString(), i + 0.25, "batch " + i));
+        }
+
+        accountBytes = accountWriter.writeValueAsBytes(account);
+        batchBytes = batchWriter.writeValueAsBytes(batch);
+        System.out.printf("%n%s payloads: account %d B, transfer %d B, batch of %d %d B%n", format,
+                accountBytes.length, transferWriter.writeValueAsBytes(transfer).length, batchSize, batchBytes.length);
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws IOException {
+        return accountWriter.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public Account readAccount() throws IOException {
+        return accountReader.readValue(accountBytes);
+    }
+
+    @Benchmark
+    public byte[] writeTransfer() throws IOException {
+        return transferWriter.writeValueAsBytes(transfer);
+    }
+
+    @Benchmark
+    public byte[] writeBatch() throws IOException {
+        return batchWriter.writeValueAsBytes(batch);
+    }
+
+    @Benchmark
+    public List<TransferRequest> readBatch() throws IOException {
+        return batchReader.readValue(batchBytes);
+    }
+}
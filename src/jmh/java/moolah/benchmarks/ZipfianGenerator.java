@@ -0,0 +1,56 @@
+package moolah.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Draws integers in [0, n) following a Zipfian distribution: item 0 is the most popular, then item 1, and so on.
+ *
+ * This is the generator of Gray et al., "Quickly Generating Billion-Record Synthetic Databases", also used by YCSB.
+ * With the default skew of 0.99 a handful of items get most of the draws, like hot accounts do.
+ */
+class ZipfianGenerator {
+
+    static final double DEFAULT_THETA = 0.99;
+
+    private final int n;
+
+    private final double theta;
+
+    private final double alpha;
+
+    private final double zetan;
+
+    private final double eta;
+
+    ZipfianGenerator(int n) {
+        this(n, DEFAULT_THETA);
+    }
+
+    ZipfianGenerator(int n, double theta) {
+        this.n = n;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetan = zeta(n, theta);
+        this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    }
+
+    int next(Random random) {
+        double u = random.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(n - 1, (int) (n * Math.pow(eta * u - eta + 1, alpha)));
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
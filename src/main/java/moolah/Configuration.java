@@ -0,0 +1,169 @@
+package moolah;
+
+import java.util.Locale;
+
+/**
+ * Startup configuration, read from system properties, e.g. {@code java -Dmoolah.engine=sequenced ...}
+ *
+ * Every setting has a default so the application starts without any property set.
+ */
+public final class Configuration {
+
+    /** account storage mode, one of {@link moolah.store.AccountStore.Mode}, case insensitive */
+    public static final String STORE = "moolah.store";
+
+    /** number of accounts the store is sized for at startup */
+    public static final String STORE_EXPECTED_ACCOUNTS = "moolah.store.expectedAccounts";
+
+    /** transfer engine mode, one of {@link moolah.engine.TransferEngine.Mode}, case insensitive */
+    public static final String ENGINE = "moolah.engine";
+
+    /** number of slots in the ring buffer of the sequenced transfer engine, rounded up to a power of two */
+    public static final String ENGINE_RING_SIZE = "moolah.engine.ringSize";
+
+    /** whether changes are recorded in the write-ahead journal and replayed at startup */
+    public static final String JOURNAL_ENABLED = "moolah.journal.enabled";
+
+    /** directory holding the journal */
+    public static final String JOURNAL_DIR = "moolah.journal.dir";
+
+    /** when the journal forces records to disk, one of {@link moolah.journal.FsyncPolicy}, case insensitive */
+    public static final String JOURNAL_FSYNC = "moolah.journal.fsync";
+
+    /** milliseconds between forces with the {@code interval} fsync policy */
+    public static final String JOURNAL_FSYNC_INTERVAL = "moolah.journal.fsync.intervalMillis";
+
+    /** seconds between snapshots of the accounts, 0 to take none */
+    public static final String SNAPSHOT_INTERVAL = "moolah.snapshot.intervalSeconds";
+
+    /** directory journal segments covered by a snapshot are moved to, deleted if not set */
+    public static final String SNAPSHOT_ARCHIVE = "moolah.snapshot.archive";
+
+    /** host name or address the HTTP server listens on */
+    public static final String SERVER_HOST = "moolah.server.host";
+
+    /** port the HTTP server listens on */
+    public static final String SERVER_PORT = "moolah.server.port";
+
+    /** threads running HTTP requests, one of {@link ServerFactory.Mode}, case insensitive */
+    public static final String SERVER_MODE = "moolah.server.mode";
+
+    /** number of worker threads in {@code workers} and {@code selector} modes, 0 for the container's default */
+    public static final String SERVER_WORKERS = "moolah.server.workers";
+
+    /**
+     * number of requests that can wait for a worker thread in {@code workers} and {@code selector} modes, -1 for no
+     * limit
+     */
+    public static final String SERVER_WORKER_QUEUE = "moolah.server.workerQueue";
+
+    /** number of selector threads accepting connections and reading requests, 0 for one per processor */
+    public static final String SERVER_SELECTORS = "moolah.server.selectors";
+
+    /** size in bytes of the socket receive buffer, 0 for the operating system's default */
+    public static final String SERVER_READ_BUFFER = "moolah.server.readBufferSize";
+
+    /** size in bytes of the socket send buffer, 0 for the operating system's default */
+    public static final String SERVER_WRITE_BUFFER = "moolah.server.writeBufferSize";
+
+    /** maximum number of connections waiting to be accepted, 0 for the container's default */
+    public static final String SERVER_BACKLOG = "moolah.server.backlog";
+
+    /** whether the fast-path transfer and balance endpoints of {@link moolah.services.FastPathHandler} are served */
+    public static final String FASTPATH_ENABLED = "moolah.fastpath.enabled";
+
+    /** number of threads running transfer requests, off the container's threads */
+    public static final String TRANSFER_THREADS = "moolah.transfer.threads";
+
+    /** number of transfer requests that can wait for a transfer thread before new ones are rejected with a 503 */
+    public static final String TRANSFER_QUEUE_SIZE = "moolah.transfer.queueSize";
+
+    /** seconds transfer requests rejected with a 503 are told to wait before retrying */
+    public static final String TRANSFER_RETRY_AFTER = "moolah.transfer.retryAfterSeconds";
+
+    /** largest number of transfers accepted in one batch request */
+    public static final String BATCH_MAX_SIZE = "moolah.batch.maxSize";
+
+    /** number of transfer idempotency keys held before the oldest are evicted */
+    public static final String IDEMPOTENCY_MAX_KEYS = "moolah.idempotency.maxKeys";
+
+    /** seconds a transfer idempotency key is held after its first use */
+    public static final String IDEMPOTENCY_TTL = "moolah.idempotency.ttlSeconds";
+
+    private Configuration() { }
+
+    /**
+     * @return the value of the property {@code key}, or {@code defaultValue} if it is not set
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * @return the integer value of the property {@code key}, or {@code defaultValue} if it is not set
+     * @throws IllegalArgumentException if the property is set but is not an integer
+     */
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException exc) {
+            throw new IllegalArgumentException(String.format("Property %s must be an integer, was '%s'", key, value));
+        }
+    }
+
+    /**
+     * @return the long value of the property {@code key}, or {@code defaultValue} if it is not set
+     * @throws IllegalArgumentException if the property is set but is not an integer
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        }
+        catch (NumberFormatException exc) {
+            throw new IllegalArgumentException(String.format("Property %s must be an integer, was '%s'", key, value));
+        }
+    }
+
+    /**
+     * @return the boolean value of the property {@code key}, or {@code defaultValue} if it is not set
+     * @throws IllegalArgumentException if the property is set to something other than true or false
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException(String.format("Property %s must be true or false, was '%s'", key, value));
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return the constant of {@code type} named by the property {@code key} (case insensitive, '-' standing for
+     * '_'), or {@code defaultValue} if it is not set
+     * @throws IllegalArgumentException if the property is set but names no constant of {@code type}
+     */
+    public static <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+        catch (IllegalArgumentException exc) {
+            throw new IllegalArgumentException(String.format("Property %s has unknown value '%s'", key, value));
+        }
+    }
+}
@@ -1,37 +1,163 @@
 package moolah;
 
+import moolah.engine.LockingTransferEngine;
+import moolah.engine.SequencedTransferEngine;
+import moolah.engine.TransferEngine;
+import moolah.journal.FsyncPolicy;
+import moolah.journal.Journal;
+import moolah.journal.Snapshotter;
 import moolah.model.Account;
 import moolah.model.AccountFactory;
+import moolah.model.TransferManager;
 import moolah.services.AccountService;
+import moolah.services.FastPathHandler;
+import moolah.services.TransferExecutor;
+import moolah.services.TransferService;
+import moolah.store.AccountStore;
+import moolah.store.IdempotencyCache;
+import moolah.store.PrimitiveAccountStore;
+import moolah.store.StripedAccountStore;
+import org.glassfish.grizzly.http.server.HttpHandler;
 import org.glassfish.grizzly.http.server.HttpServer;
-import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
     private static Logger logger = LoggerFactory.getLogger(Main.class);
 
-    // Base URI the Grizzly HTTP server will listen on
+    // Base URI the Grizzly HTTP server listens on when no host or port is configured
     public static final String BASE_URI = "http://localhost:8080/";
 
-    public static HttpServer startServer() {
+    public static HttpServer startServer() throws IOException {
 
         // create a resource config that scans for JAX-RS services and providers
         // in com.example.rest package
         final ResourceConfig rc = new ResourceConfig().packages("moolah");
 
         // create and start a new instance of grizzly http server
-        // exposing the Jersey application at BASE_URI
-        return GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc);
+        // exposing the Jersey application at the configured host and port
+        URI uri = UriBuilder.fromUri(BASE_URI)
+                .host(Configuration.getString(Configuration.SERVER_HOST, "localhost"))
+                .port(Configuration.getInt(Configuration.SERVER_PORT, 8080))
+                .build();
+        Map<String, HttpHandler> handlers = new HashMap<>();
+        if (Configuration.getBoolean(Configuration.FASTPATH_ENABLED, false)) {
+            handlers.put(FastPathHandler.CONTEXT, new FastPathHandler());
+            logger.info("Serving fast-path transfers at {}", FastPathHandler.CONTEXT);
+        }
+        return ServerFactory.createServer(uri, rc, handlers);
     }
 
-    public static void main(String[] args) throws IOException {
+    /**
+     * @return the transfer engine selected by the {@link Configuration#ENGINE} property
+     */
+    public static TransferEngine createTransferEngine() {
+        TransferEngine.Mode mode = Configuration.getEnum(Configuration.ENGINE, TransferEngine.Mode.class,
+                TransferEngine.Mode.LOCKING);
+        logger.info("Using {} transfer engine", mode);
+        switch (mode) {
+            case SEQUENCED:
+                return new SequencedTransferEngine(Configuration.getInt(Configuration.ENGINE_RING_SIZE, 1024));
+            case LOCKING:
+            default:
+                return new LockingTransferEngine();
+        }
+    }
+
+    /**
+     * @return the executor running transfer requests, sized by the {@link Configuration#TRANSFER_THREADS} and
+     * {@link Configuration#TRANSFER_QUEUE_SIZE} properties
+     */
+    public static TransferExecutor createTransferExecutor() {
+        return new TransferExecutor(
+                Configuration.getInt(Configuration.TRANSFER_THREADS, AccountService.DEFAULT_TRANSFER_THREADS),
+                Configuration.getInt(Configuration.TRANSFER_QUEUE_SIZE, AccountService.DEFAULT_TRANSFER_QUEUE_SIZE),
+                Configuration.getLong(Configuration.TRANSFER_RETRY_AFTER, AccountService.DEFAULT_RETRY_AFTER_SECONDS));
+    }
+
+    /**
+     * @return the account store selected by the {@link Configuration#STORE} property
+     */
+    public static AccountStore createAccountStore() {
+        AccountStore.Mode mode = Configuration.getEnum(Configuration.STORE, AccountStore.Mode.class,
+                AccountStore.Mode.OBJECTS);
+        int expected = Configuration.getInt(Configuration.STORE_EXPECTED_ACCOUNTS, 0);
+        logger.info("Using {} account store", mode);
+        switch (mode) {
+            case PRIMITIVE:
+                return new PrimitiveAccountStore(expected);
+            case OBJECTS:
+            default:
+                return new StripedAccountStore(Runtime.getRuntime().availableProcessors() * 4, expected);
+        }
+    }
+
+    /** takes periodic snapshots of the accounts, null if journaling is disabled */
+    private static Snapshotter snapshotter;
+
+    /**
+     * rebuild the account store from the latest snapshot and the journal after it, both kept in the directory selected
+     * by the {@link Configuration#JOURNAL_DIR} property, then start journaling every change made through
+     * {@link AccountService} and taking periodic snapshots
+     *
+     * @return the started journal, null if journaling is disabled
+     */
+    static Journal openJournal() throws IOException, JMException {
+        if (!Configuration.getBoolean(Configuration.JOURNAL_ENABLED, true)) {
+            logger.warn("Journal disabled, changes will be lost when the application stops");
+            return null;
+        }
+        Path directory = Paths.get(Configuration.getString(Configuration.JOURNAL_DIR, "data"));
+        String archive = Configuration.getString(Configuration.SNAPSHOT_ARCHIVE, null);
+        FsyncPolicy policy = Configuration.getEnum(Configuration.JOURNAL_FSYNC, FsyncPolicy.class, FsyncPolicy.GROUP);
+        Journal journal = new Journal(directory, policy, Configuration.getLong(Configuration.JOURNAL_FSYNC_INTERVAL, 10));
+        snapshotter = new Snapshotter(directory, journal, AccountService.getAccountStore(),
+                archive == null ? null : Paths.get(archive));
+
+        long started = System.nanoTime();
+        long snapshot = snapshotter.load(AccountService.getAccountStore());
+        journal.replay(AccountService.getAccountStore(), snapshot);
+        logger.info("Recovered {} accounts in {} ms", AccountService.getAccountStore().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        journal.start();
+        TransferManager.addListener(journal);
+        AccountService.setJournal(journal);
+        logger.info("Journaling changes with fsync policy {}", policy);
+
+        long interval = Configuration.getLong(Configuration.SNAPSHOT_INTERVAL, 300);
+        if (interval > 0) {
+            snapshotter.start(TimeUnit.SECONDS.toMillis(interval));
+        }
+        ManagementFactory.getPlatformMBeanServer().registerMBean(snapshotter, new ObjectName("moolah:type=Snapshotter"));
+        return journal;
+    }
+
+    public static void main(String[] args) throws IOException, JMException {
+        AccountService.setAccountStore(createAccountStore());
+        Journal journal = openJournal();
+        AccountService.setTransferEngine(createTransferEngine());
+        AccountService.setTransferExecutor(createTransferExecutor());
+        AccountService.setIdempotencyCache(new IdempotencyCache<>(
+                Configuration.getInt(Configuration.IDEMPOTENCY_MAX_KEYS, AccountService.DEFAULT_IDEMPOTENCY_KEYS),
+                TimeUnit.SECONDS.toMillis(Configuration.getLong(Configuration.IDEMPOTENCY_TTL,
+                        AccountService.DEFAULT_IDEMPOTENCY_TTL_SECONDS))));
+        TransferService.setMaxBatchSize(Configuration.getInt(Configuration.BATCH_MAX_SIZE, TransferService.DEFAULT_MAX_BATCH_SIZE));
         AccountService service = new AccountService();
 
         // create 3 Accounts and fix their IDs
@@ -42,13 +168,22 @@ public class Main {
         account1.setId(UUID.fromString("263afea3-3843-4880-b1d5-cce977be06c1"));
         account2.setId(UUID.fromString("960b5a20-8201-4f14-9012-6f388e6313e3"));
         account3.setId(UUID.fromString("2562e2ad-15a0-493f-a003-878e6cd43670"));
-        service.addAccount(account1);
-        service.addAccount(account2);
-        service.addAccount(account3);
+        // the accounts may already have been restored from the journal
+        for (Account account : new Account[] {account1, account2, account3}) {
+            if (AccountService.getAccountStore().get(account.getId()) == null) {
+                service.addAccount(account);
+            }
+        }
 
         final HttpServer server = startServer();
         logger.info("Moolah Jersey app started. Press any button to stop.");
         System.in.read();
         server.stop();
+        AccountService.getTransferExecutor().close();
+        AccountService.getTransferEngine().close();
+        if (journal != null) {
+            snapshotter.close();
+            journal.close();
+        }
     }
 }
@@ -0,0 +1,207 @@
+package moolah;
+
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpHandlerRegistration;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.RequestExecutorProvider;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.server.ServerConfiguration;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.strategies.SameThreadIOStrategy;
+import org.glassfish.grizzly.strategies.WorkerThreadIOStrategy;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the HTTP server, with the execution model and transport settings read from {@link Configuration}.
+ */
+public final class ServerFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerFactory.class);
+
+    /**
+     * which threads run requests once the selector threads have read them
+     */
+    public enum Mode {
+        /** a pool of platform worker threads, sized by {@link Configuration#SERVER_WORKERS} */
+        WORKERS,
+        /** a new virtual thread per request. Requires a Java 21 runtime. */
+        VIRTUAL,
+        /**
+         * the selector thread that read the request for GET and HEAD requests, which neither read a body nor wait for
+         * the journal: no hand-off at all. Every other request may block, reading its body or waiting for its change
+         * to be durable, which would stall every connection of the selector, so it runs on a pool of worker threads
+         * sized by {@link Configuration#SERVER_WORKERS}.
+         */
+        SELECTOR
+    }
+
+    private ServerFactory() { }
+
+    /**
+     * create and start a server exposing {@code resources} at {@code uri}
+     *
+     * @throws IOException if the server cannot bind its address
+     * @throws IllegalArgumentException if the configuration is invalid, or asks for virtual threads on a runtime
+     * without them
+     */
+    public static HttpServer createServer(URI uri, ResourceConfig resources) throws IOException {
+        return createServer(uri, resources, Collections.emptyMap());
+    }
+
+    /**
+     * create and start a server exposing {@code resources} at {@code uri}, and {@code handlers} next to them
+     *
+     * @param handlers Grizzly handlers served outside of Jersey, by context path
+     * @throws IOException if the server cannot bind its address
+     * @throws IllegalArgumentException if the configuration is invalid, or asks for virtual threads on a runtime
+     * without them
+     */
+    public static HttpServer createServer(URI uri, ResourceConfig resources, Map<String, HttpHandler> handlers)
+            throws IOException {
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(uri, resources, false);
+        ServerConfiguration configuration = server.getServerConfiguration();
+        for (Map.Entry<String, HttpHandler> handler : handlers.entrySet()) {
+            configuration.addHttpHandler(handler.getValue(),
+                    HttpHandlerRegistration.builder().contextPath(handler.getKey()).urlPattern("/*").build());
+        }
+        Mode mode = Configuration.getEnum(Configuration.SERVER_MODE, Mode.class, Mode.WORKERS);
+        if (mode == Mode.SELECTOR) {
+            Map<HttpHandler, HttpHandlerRegistration[]> registered =
+                    new HashMap<>(configuration.getHttpHandlersWithMapping());
+            for (Map.Entry<HttpHandler, HttpHandlerRegistration[]> handler : registered.entrySet()) {
+                configuration.removeHttpHandler(handler.getKey());
+                configuration.addHttpHandler(new ReadsInPlaceHandler(handler.getKey()), handler.getValue());
+            }
+        }
+        for (NetworkListener listener : server.getListeners()) {
+            configure(listener.getTransport(), mode);
+        }
+        server.start();
+        return server;
+    }
+
+    private static void configure(TCPNIOTransport transport, Mode mode) {
+        int selectors = Configuration.getInt(Configuration.SERVER_SELECTORS, 0);
+        if (selectors > 0) {
+            transport.setSelectorRunnersCount(selectors);
+        }
+        int readBuffer = Configuration.getInt(Configuration.SERVER_READ_BUFFER, 0);
+        if (readBuffer > 0) {
+            transport.setReadBufferSize(readBuffer);
+        }
+        int writeBuffer = Configuration.getInt(Configuration.SERVER_WRITE_BUFFER, 0);
+        if (writeBuffer > 0) {
+            transport.setWriteBufferSize(writeBuffer);
+        }
+        int backlog = Configuration.getInt(Configuration.SERVER_BACKLOG, 0);
+        if (backlog > 0) {
+            transport.setServerConnectionBackLog(backlog);
+        }
+
+        switch (mode) {
+            case VIRTUAL:
+                transport.setWorkerThreadPool(newVirtualThreadPerTaskExecutor());
+                break;
+            case SELECTOR:
+                transport.setIOStrategy(SameThreadIOStrategy.getInstance());
+                // for the requests that may block, see ReadsInPlaceHandler
+                ThreadPoolConfig config = workerPoolConfig();
+                transport.setWorkerThreadPoolConfig(config != null ? config
+                        : WorkerThreadIOStrategy.getInstance().createDefaultWorkerPoolConfig(transport));
+                break;
+            case WORKERS:
+            default:
+                if (workerPoolConfig() != null) {
+                    transport.setWorkerThreadPoolConfig(workerPoolConfig());
+                }
+                break;
+        }
+        logger.info("Running requests in {} mode", mode);
+    }
+
+    /**
+     * @return the worker pool configuration set by {@link Configuration#SERVER_WORKERS}, null for Grizzly's default
+     */
+    private static ThreadPoolConfig workerPoolConfig() {
+        int workers = Configuration.getInt(Configuration.SERVER_WORKERS, 0);
+        if (workers <= 0) {
+            return null;
+        }
+        return ThreadPoolConfig.defaultConfig().copy()
+                .setPoolName("moolah-http-worker")
+                .setCorePoolSize(workers)
+                .setMaxPoolSize(workers)
+                .setQueueLimit(Configuration.getInt(Configuration.SERVER_WORKER_QUEUE, -1));
+    }
+
+    /**
+     * Runs GET and HEAD requests to a handler on the thread that read them, and every other request on the worker
+     * threads of the transport, for {@link Mode#SELECTOR}.
+     */
+    static final class ReadsInPlaceHandler extends HttpHandler {
+
+        private static final RequestExecutorProvider WORKERS = new RequestExecutorProvider.WorkerThreadProvider();
+
+        private static final RequestExecutorProvider READS_IN_PLACE = request -> {
+            Method method = request.getMethod();
+            return method == Method.GET || method == Method.HEAD ? null : WORKERS.getExecutor(request);
+        };
+
+        private final HttpHandler handler;
+
+        ReadsInPlaceHandler(HttpHandler handler) {
+            super(handler.getName());
+            this.handler = handler;
+        }
+
+        @Override
+        public RequestExecutorProvider getRequestExecutorProvider() {
+            return READS_IN_PLACE;
+        }
+
+        @Override
+        public void service(Request request, Response response) throws Exception {
+            handler.service(request, response);
+        }
+
+        @Override
+        public void start() {
+            handler.start();
+        }
+
+        @Override
+        public void destroy() {
+            handler.destroy();
+        }
+    }
+
+    /**
+     * @return {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up at runtime so that the application still
+     * builds and runs on Java 8 when virtual threads are not asked for
+     * @throws IllegalArgumentException if the runtime has no virtual threads
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException exc) {
+            throw new IllegalArgumentException(String.format("Property %s=virtual requires a Java 21 runtime, running %s",
+                    Configuration.SERVER_MODE, System.getProperty("java.version")), exc);
+        }
+    }
+}
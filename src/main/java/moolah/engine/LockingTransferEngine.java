@@ -0,0 +1,20 @@
+package moolah.engine;
+
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+
+/**
+ * Default engine: every transfer runs on the calling thread through {@link TransferManager#doTransfer}, which locks
+ * both accounts.
+ */
+public class LockingTransferEngine implements TransferEngine {
+
+    @Override
+    public Transfer transfer(Account from, Account to, long amountMinor, String name) {
+        return TransferManager.doTransfer(from, to, amountMinor, name);
+    }
+
+    @Override
+    public void close() { }
+}
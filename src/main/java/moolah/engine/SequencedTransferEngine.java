@@ -0,0 +1,233 @@
+package moolah.engine;
+
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Engine applying every transfer in strict sequence on a single business-logic thread, the writer.
+ *
+ * Request threads claim a sequence number, fill the matching slot of a pre-allocated ring buffer and publish it. The
+ * writer takes slots in sequence order and applies each transfer through {@link TransferManager}. Being the only
+ * thread moving money, the account locks it takes are never contended, however much of the traffic goes to a few
+ * hot accounts. The outcome is handed back to the waiting request thread through a completion owned by that thread,
+ * so requests allocate nothing on top of the Transfer itself.
+ *
+ * When the ring is full, request threads wait for the writer to free a slot. The writer applies every claimed slot
+ * before exiting, so the wait ends even if the engine is closed meanwhile; it fails only if the writer died.
+ */
+public class SequencedTransferEngine implements TransferEngine {
+
+    /** busy-spin iterations before a waiting thread parks, only worth it with more than one processor */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+
+    /** longest a waiting thread parks before checking again */
+    private static final long PARK_NANOS = 1000000;
+
+    private final Slot[] ring;
+
+    private final int mask;
+
+    /** last sequence claimed by a request thread */
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /** last sequence applied by the writer */
+    private volatile long applied = -1;
+
+    /** set while the writer is parked, so that publishers know to wake it up */
+    private volatile boolean writerParked;
+
+    private volatile boolean running = true;
+
+    private final Thread writer;
+
+    private final ThreadLocal<Completion> completions = ThreadLocal.withInitial(Completion::new);
+
+    /**
+     * create the engine and start its writer thread
+     *
+     * @param ringSize number of slots in the ring buffer, rounded up to a power of two
+     */
+    public SequencedTransferEngine(int ringSize) {
+        int size = Integer.highestOneBit(Math.max(2, ringSize - 1)) << 1;
+        ring = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Slot();
+        }
+        mask = size - 1;
+        writer = new Thread(this::run, "moolah-transfer-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public Transfer transfer(Account from, Account to, long amountMinor, String name) {
+        if (!running) {
+            throw new IllegalStateException("Transfer engine is closed.");
+        }
+        Completion completion = completions.get();
+        completion.reset();
+
+        long sequence = claimed.incrementAndGet();
+
+        // the slot is free once the writer has applied the request that used it one lap earlier
+        long wrapPoint = sequence - ring.length;
+        for (int idle = 0; wrapPoint > applied; idle++) {
+            if (idle >= SPINS && !writer.isAlive()) {
+                throw new IllegalStateException("Transfer engine is closed.");
+            }
+            idle(idle);
+        }
+
+        Slot slot = ring[(int) sequence & mask];
+        slot.from = from;
+        slot.to = to;
+        slot.amountMinor = amountMinor;
+        slot.name = name;
+        slot.completion = completion;
+        slot.sequence = sequence;
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        return await(completion);
+    }
+
+    /**
+     * stop accepting transfers. Transfers already claimed are applied before the writer exits.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Transfer await(Completion completion) {
+        for (int idle = 0; !completion.done; idle++) {
+            if (idle < SPINS) {
+                continue;
+            }
+            LockSupport.parkNanos(this, PARK_NANOS);
+            if (!completion.done && !writer.isAlive()) {
+                throw new IllegalStateException("Transfer engine is closed.");
+            }
+        }
+        Throwable failure = completion.failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return completion.transfer;
+    }
+
+    private static void idle(int iteration) {
+        if (iteration < SPINS) {
+            return;
+        }
+        if (iteration < SPINS + 100) {
+            Thread.yield();
+        }
+        else {
+            LockSupport.parkNanos(PARK_NANOS / 100);
+        }
+    }
+
+    /**
+     * writer loop
+     */
+    private void run() {
+        long next = 0;
+        int idle = 0;
+        while (running || next <= claimed.get()) {
+            Slot slot = ring[(int) next & mask];
+            if (slot.sequence != next) {
+                waitForPublication(slot, next, idle++);
+                continue;
+            }
+            idle = 0;
+            apply(slot);
+            applied = next++;
+        }
+    }
+
+    private void waitForPublication(Slot slot, long sequence, int iteration) {
+        if (iteration < SPINS) {
+            return;
+        }
+        writerParked = true;
+        // re-check after announcing we park, a publisher may have missed the flag
+        if (slot.sequence != sequence && running) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        writerParked = false;
+    }
+
+    private static void apply(Slot slot) {
+        Account from = slot.from;
+        Account to = slot.to;
+        long amountMinor = slot.amountMinor;
+        String name = slot.name;
+        Completion completion = slot.completion;
+        // do not keep the request reachable from the ring
+        slot.from = null;
+        slot.to = null;
+        slot.name = null;
+        slot.completion = null;
+
+        Transfer transfer = null;
+        Throwable failure = null;
+        try {
+            transfer = TransferManager.doTransfer(from, to, amountMinor, name);
+        }
+        catch (Throwable exc) {
+            failure = exc;
+        }
+        completion.complete(transfer, failure);
+    }
+
+    /**
+     * a ring buffer entry. Request fields are written by the publishing thread before {@code sequence} and read by
+     * the writer after it.
+     */
+    private static final class Slot {
+        volatile long sequence = -1;
+        Account from;
+        Account to;
+        long amountMinor;
+        String name;
+        Completion completion;
+    }
+
+    /**
+     * outcome of a transfer, reused by its owning request thread for all its transfers
+     */
+    private static final class Completion {
+        private final Thread owner = Thread.currentThread();
+        private volatile boolean done;
+        private Transfer transfer;
+        private Throwable failure;
+
+        void reset() {
+            transfer = null;
+            failure = null;
+            done = false;
+        }
+
+        void complete(Transfer transfer, Throwable failure) {
+            this.transfer = transfer;
+            this.failure = failure;
+            done = true;
+            LockSupport.unpark(owner);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package moolah.engine;
+
+import moolah.exceptions.TransferException;
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+
+/**
+ * Executes transfers on behalf of the REST layer.
+ *
+ * The engine in use is chosen at startup, see {@link Mode}.
+ */
+public interface TransferEngine {
+
+    /**
+     * available engines
+     */
+    enum Mode {
+        /** transfers run on the calling thread, locking both accounts, see {@link LockingTransferEngine} */
+        LOCKING,
+        /** transfers are applied in sequence by a single thread, see {@link SequencedTransferEngine} */
+        SEQUENCED
+    }
+
+    /**
+     * transfer {@code amount} from {@code from} to {@code to}, blocking until the transfer has been applied
+     *
+     * @param from account to transfer money from
+     * @param to account to transfer money to
+     * @param amount amount to be transferred
+     * @param name name of the transfer
+     * @return the Transfer object recording the transfer
+     * @throws TransferException if the transfer is not valid
+     */
+    default Transfer transfer(Account from, Account to, Double amount, String name) throws TransferException {
+        return transfer(from, to, TransferManager.toMinor(amount), name);
+    }
+
+    /**
+     * transfer {@code amountMinor} from {@code from} to {@code to}, see
+     * {@link #transfer(Account, Account, Double, String)}
+     *
+     * @param amountMinor amount to be transferred, in minor units
+     */
+    Transfer transfer(Account from, Account to, long amountMinor, String name) throws TransferException;
+
+    /**
+     * stop the engine, releasing any thread it owns
+     */
+    void close();
+}
@@ -0,0 +1,12 @@
+package moolah.exceptions;
+
+/**
+ * Thrown when an idempotency key is reused for a request different from the one it was first used for
+ */
+public class IdempotencyException extends RuntimeException {
+    public IdempotencyException() { }
+
+    public IdempotencyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package moolah.exceptions;
+
+/**
+ * Thrown when a change cannot be made durable in the journal
+ */
+public class JournalException extends RuntimeException {
+    public JournalException() { }
+
+    public JournalException(String message) {
+        super(message);
+    }
+
+    public JournalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -4,9 +4,36 @@ package moolah.exceptions;
  * Thrown for errors relating transfers
  */
 public class TransferException extends RuntimeException {
+
+    /** why a transfer was rejected */
+    public enum Reason {
+        /** the amount is not strictly positive */
+        INVALID_AMOUNT,
+        /** 'from' and 'to' are the same account */
+        SAME_ACCOUNT,
+        /** the 'from' account does not contain the amount */
+        INSUFFICIENT_FUNDS,
+        /** the 'to' account cannot hold the amount on top of its balance */
+        BALANCE_OVERFLOW
+    }
+
+    private Reason reason;
+
     public TransferException() { }
 
     public TransferException(String message) {
         super(message);
     }
+
+    public TransferException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * @return why the transfer was rejected, null if not given
+     */
+    public Reason getReason() {
+        return reason;
+    }
 }
@@ -0,0 +1,23 @@
+package moolah.exceptions;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+/**
+ * Thrown while reading JSON that refers to an account that does not exist.
+ *
+ * It is a {@link JsonMappingException} so that Jackson passes it on as it is instead of wrapping it, and it records no
+ * stack trace: a client sending unknown ids costs a message, not a stack walk. Like other mapping errors, it is
+ * answered with a 400.
+ */
+public class UnknownAccountException extends JsonMappingException {
+
+    public UnknownAccountException(JsonParser parser, String message) {
+        super(parser, message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
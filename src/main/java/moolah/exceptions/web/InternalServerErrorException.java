@@ -0,0 +1,17 @@
+package moolah.exceptions.web;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+public class InternalServerErrorException extends BaseWebApplicationException {
+
+    private static final Response.Status STATUS = Response.Status.INTERNAL_SERVER_ERROR;
+
+    /**
+     * Create a HTTP 500 (Internal Server Error) exception.
+     * @param message the String that is the entity of the 500 response.
+     */
+    public InternalServerErrorException(String message) {
+        super(Response.status(STATUS).entity(toMap(message, STATUS)).type(MediaType.APPLICATION_JSON).build());
+    }
+}
@@ -0,0 +1,21 @@
+package moolah.exceptions.web;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+public class PreconditionFailedException extends BaseWebApplicationException {
+
+    private static final Response.Status STATUS = Response.Status.PRECONDITION_FAILED;
+
+    /**
+     * Create a HTTP 412 (Precondition Failed) exception.
+     * @param message the String that is the entity of the 412 response.
+     * @param current the entity tag of the current state of the resource, sent as the ETag header.
+     */
+    public PreconditionFailedException(String message, EntityTag current) {
+        super(Response.status(STATUS).entity(toMap(message, STATUS))
+                .tag(current)
+                .type(MediaType.APPLICATION_JSON).build());
+    }
+}
@@ -0,0 +1,21 @@
+package moolah.exceptions.web;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+public class ServiceUnavailableException extends BaseWebApplicationException {
+
+    private static final Response.Status STATUS = Response.Status.SERVICE_UNAVAILABLE;
+
+    /**
+     * Create a HTTP 503 (Service Unavailable) exception.
+     * @param message the String that is the entity of the 503 response.
+     * @param retryAfterSeconds the value of the Retry-After header: seconds the client should wait before retrying.
+     */
+    public ServiceUnavailableException(String message, long retryAfterSeconds) {
+        super(Response.status(STATUS).entity(toMap(message, STATUS))
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                .type(MediaType.APPLICATION_JSON).build());
+    }
+}
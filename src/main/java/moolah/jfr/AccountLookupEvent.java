@@ -0,0 +1,27 @@
+package moolah.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A lookup of an account by id in the account store, made by {@link moolah.services.AccountService}.
+ */
+@Name("moolah.AccountLookup")
+@Label("Account Lookup")
+@Description("A lookup of an account by id in the account store")
+@Category({"Moolah", "Account"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class AccountLookupEvent extends Event {
+
+    @Label("Account")
+    public String accountId;
+
+    @Label("Found")
+    public boolean found;
+}
@@ -0,0 +1,29 @@
+package moolah.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Reading a request entity from JSON, or writing a response entity to JSON. Streamed responses are timed as a whole,
+ * writing to the connection included.
+ */
+@Name("moolah.JsonBinding")
+@Label("JSON Binding")
+@Description("Reading a request entity from JSON or writing a response entity to JSON")
+@Category({"Moolah", "HTTP"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class JsonBindingEvent extends Event {
+
+    @Label("Direction")
+    @Description("read or write")
+    public String direction;
+
+    @Label("Type")
+    public String type;
+}
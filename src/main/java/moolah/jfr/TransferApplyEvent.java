@@ -0,0 +1,14 @@
+package moolah.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Balance check, debit, credit and listeners (the journal append) of a transfer, under its locks.
+ */
+@Name("moolah.TransferApply")
+@Label("Transfer Apply")
+@Description("Balance check, debit, credit and journal append of a transfer, with its accounts locked")
+public class TransferApplyEvent extends TransferPhaseEvent {
+}
@@ -0,0 +1,38 @@
+package moolah.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A whole transfer through {@link moolah.model.TransferManager}, from validation to the release of its locks, and its
+ * outcome. The phases are recorded by the {@link TransferPhaseEvent}s.
+ */
+@Name("moolah.Transfer")
+@Label("Transfer")
+@Description("A transfer between two accounts, from validation to the release of the account locks")
+@Category({"Moolah", "Transfer"})
+@StackTrace(false)
+@Threshold("10 ms")
+public class TransferEvent extends Event {
+
+    @Label("Transfer Id")
+    public String transferId;
+
+    @Label("From Account")
+    public String from;
+
+    @Label("To Account")
+    public String to;
+
+    @Label("Amount")
+    public double amount;
+
+    @Label("Outcome")
+    @Description("committed, or the reason the transfer was rejected")
+    public String outcome;
+}
@@ -0,0 +1,14 @@
+package moolah.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Time spent waiting for the locks of both accounts of a transfer.
+ */
+@Name("moolah.TransferLock")
+@Label("Transfer Lock Wait")
+@Description("Time taken to lock the accounts of a transfer")
+public class TransferLockEvent extends TransferPhaseEvent {
+}
@@ -0,0 +1,39 @@
+package moolah.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.util.UUID;
+
+/**
+ * Base of the events timing one phase of a transfer, carrying the accounts involved.
+ *
+ * Like every event of this package it records no stack trace and only durations above its threshold, so that it can
+ * stay enabled in production; fields are only filled in once the event is known to be committed.
+ */
+@Category({"Moolah", "Transfer"})
+@StackTrace(false)
+@Threshold("10 ms")
+abstract class TransferPhaseEvent extends Event {
+
+    @Label("From Account")
+    String from;
+
+    @Label("To Account")
+    String to;
+
+    /**
+     * end the event and commit it if it is enabled and took longer than its threshold
+     */
+    public void end(UUID fromId, UUID toId) {
+        end();
+        if (shouldCommit()) {
+            from = String.valueOf(fromId);
+            to = String.valueOf(toId);
+            commit();
+        }
+    }
+}
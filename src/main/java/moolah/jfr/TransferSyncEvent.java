@@ -0,0 +1,14 @@
+package moolah.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Time a transfer request waited for the journal to make the transfer durable.
+ */
+@Name("moolah.TransferSync")
+@Label("Transfer Sync")
+@Description("Time a transfer request waited for its journal records to be durable")
+public class TransferSyncEvent extends TransferPhaseEvent {
+}
@@ -0,0 +1,14 @@
+package moolah.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The checks of a transfer that do not depend on balances: amount and accounts.
+ */
+@Name("moolah.TransferValidation")
+@Label("Transfer Validation")
+@Description("Checks of a transfer request that do not depend on balances")
+public class TransferValidationEvent extends TransferPhaseEvent {
+}
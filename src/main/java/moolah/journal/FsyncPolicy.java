@@ -0,0 +1,23 @@
+package moolah.journal;
+
+/**
+ * When the journal forces what it wrote to the storage device, i.e. how much an acknowledged change can lose.
+ */
+public enum FsyncPolicy {
+
+    /** every record is forced before it is acknowledged. Nothing acknowledged is ever lost, slowest. */
+    ALWAYS,
+
+    /**
+     * records are forced in groups: all records appended while the previous force was running are written and forced
+     * together, then acknowledged together. Nothing acknowledged is ever lost, and a single force covers many records.
+     */
+    GROUP,
+
+    /**
+     * records are acknowledged once written to the operating system, before they are forced, and forced every
+     * interval: {@link Journal#awaitDurable(long)} returns for records that are not on the device yet. A crash of the
+     * process loses nothing; a crash of the machine loses the acknowledged changes of at most the last interval.
+     */
+    INTERVAL
+}
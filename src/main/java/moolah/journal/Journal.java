@@ -0,0 +1,706 @@
+package moolah.journal;
+
+import moolah.exceptions.JournalException;
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferListener;
+import moolah.store.AccountStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of every change made to accounts.
+ *
+ * Changes are appended by the threads making them and written to disk by a single writer thread, in append order.
+ * The writer takes every record appended since its last write as one group, writes it and forces it to the device
+ * according to the {@link FsyncPolicy}, so that under load a single force covers many records (group commit). A
+ * change must not be acknowledged before {@link #awaitDurable(long)} returns for its record.
+ *
+ * On disk, each record is framed as
+ * <pre>
+ *     int length of the body, int CRC32 of the body, body (see {@link JournalRecord})
+ * </pre>
+ * A record that is cut short or fails its checksum marks the end of the journal: it was being written when the
+ * process stopped, so it was never acknowledged. {@link #replay(AccountStore, long)} truncates it away.
+ *
+ * Records are numbered by their sequence, from 1, and written to segment files named after the sequence of their first
+ * record. {@link #rollover()} starts a new segment, so that a {@link Snapshotter} can drop the segments its snapshot
+ * covers with {@link #removeSegmentsBefore(long, Path)}.
+ *
+ * Typical use: load the latest snapshot, {@code replay} the journal after it, {@link #start()} the journal, then
+ * register it with {@link moolah.model.TransferManager#addListener} so transfers are recorded as they are applied.
+ */
+public class Journal implements TransferListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** the single file written before the journal was split into segments, read as the segment starting at 1 */
+    private static final String LEGACY_FILE_NAME = "journal.log";
+
+    /** length and checksum */
+    static final int HEADER_SIZE = 8;
+
+    /** larger lengths are taken as corruption */
+    static final int MAX_RECORD_SIZE = 1 << 24;
+
+    private static final int BUFFER_SIZE = 1 << 18;
+
+    private final Path directory;
+
+    private final FsyncPolicy policy;
+
+    private final long intervalNanos;
+
+    /** guards {@code pending} and {@code lastAppended} */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private final Condition appended = appendLock.newCondition();
+
+    private List<JournalRecord> pending = new ArrayList<>();
+
+    private long lastAppended;
+
+    /** last sequence of the segment being written once a rollover is requested, -1 otherwise */
+    private long rollAfter = -1;
+
+    /** last sequence of the segment closed by the latest rollover, guarded by {@code durable} */
+    private long rolledAfter;
+
+    /** monitor the writer notifies when records become durable */
+    private final Object durable = new Object();
+
+    private volatile long lastDurable;
+
+    /** set once the journal can no longer make records durable */
+    private volatile JournalException failure;
+
+    private volatile boolean running;
+
+    /** set once {@link #start()} ran, guarded by {@code appendLock} */
+    private boolean started;
+
+    /** the segment being written and the sequence of its first record */
+    private FileChannel channel;
+
+    private Path segment;
+
+    private volatile long segmentFirst;
+
+    /** sequence of the last record of the last segment read by {@link #replay(AccountStore, long)}, -1 if none */
+    private long replayedEnd = -1;
+
+    private boolean replayed;
+
+    private Thread writer;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * @param directory      directory holding the journal, created if missing
+     * @param policy         when written records are forced to the device
+     * @param intervalMillis interval between forces for {@link FsyncPolicy#INTERVAL}, ignored otherwise
+     * @throws IOException if the directory cannot be created
+     */
+    public Journal(Path directory, FsyncPolicy policy, long intervalMillis) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.policy = policy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+    }
+
+    /**
+     * apply every record of the journal to {@code store}, in order
+     *
+     * @see #replay(AccountStore, long)
+     */
+    public long replay(AccountStore store) throws IOException {
+        return replay(store, 0);
+    }
+
+    /**
+     * apply every record of the journal whose sequence is greater than {@code after} to {@code store}, in order. A
+     * torn or corrupt record at the end of the last segment ends the journal and is truncated away.
+     *
+     * Must be called before {@link #start()}, which then appends after the last record read.
+     *
+     * @param store the store to rebuild, empty or loaded from the snapshot taken at {@code after}
+     * @param after sequence of the last record already reflected in {@code store}, 0 for none
+     * @return the number of records applied
+     * @throws IOException if the journal cannot be read, is corrupt before its last segment, or does not reach back
+     * to {@code after}
+     */
+    public long replay(AccountStore store, long after) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Journal must be replayed before it is started.");
+        }
+        Path legacy = directory.resolve(LEGACY_FILE_NAME);
+        if (Files.exists(legacy)) {
+            Files.move(legacy, directory.resolve(segmentName(1)));
+        }
+        NavigableMap<Long, Path> segments = segments(directory);
+        long sequence = after;
+        long count = 0;
+        if (!segments.isEmpty() && segments.firstKey() > after + 1) {
+            throw new IOException(String.format("Journal in %s starts at record %d, records after %d are missing",
+                    directory, segments.firstKey(), after));
+        }
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            Long next = segments.higherKey(entry.getKey());
+            if (next != null && next <= after + 1) {
+                // entirely covered by the snapshot
+                continue;
+            }
+            if (entry.getKey() != sequence + 1 && entry.getKey() > after + 1) {
+                throw new IOException(String.format("Journal segment %s does not follow record %d",
+                        entry.getValue(), sequence));
+            }
+            sequence = entry.getKey() - 1;
+            long[] read = replaySegment(entry.getValue(), store, sequence, after, next == null);
+            sequence = read[0];
+            count += read[1];
+        }
+        replayed = true;
+        replayedEnd = segments.isEmpty() ? -1 : sequence;
+        lastAppended = Math.max(sequence, after);
+        logger.info("Replayed {} journal records from {}, last record is {}", count, directory, lastAppended);
+        return count;
+    }
+
+    /**
+     * @param sequence sequence of the record preceding the segment
+     * @param last     whether this is the last segment, which may end with a torn record
+     * @return the sequence of the last record in the segment and the number of records applied
+     */
+    private long[] replaySegment(Path file, AccountStore store, long sequence, long after, boolean last)
+            throws IOException {
+        long position = 0;
+        long count = 0;
+        CRC32 check = new CRC32();
+        try (InputStream input = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE))) {
+            while (true) {
+                int first = in.read();
+                if (first < 0) {
+                    break;
+                }
+                JournalRecord record;
+                int length;
+                try {
+                    length = (first << 24) | (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+                    int checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_SIZE) {
+                        throw new IllegalArgumentException("Invalid journal record length " + length);
+                    }
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    check.reset();
+                    check.update(body, 0, length);
+                    if ((int) check.getValue() != checksum) {
+                        throw new IllegalArgumentException("Journal record checksum mismatch");
+                    }
+                    record = JournalRecord.decode(ByteBuffer.wrap(body));
+                }
+                catch (EOFException | IllegalArgumentException exc) {
+                    if (!last) {
+                        throw new IOException(String.format("Journal segment %s is corrupt at byte %d", file,
+                                position), exc);
+                    }
+                    logger.warn("Journal {} ends with an incomplete record at byte {} ({}), truncating it",
+                            file, position, exc.getMessage());
+                    break;
+                }
+                if (++sequence > after) {
+                    record.apply(store);
+                    count++;
+                }
+                position += HEADER_SIZE + length;
+            }
+        }
+        if (position < Files.size(file)) {
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(position);
+                truncate.force(true);
+            }
+        }
+        return new long[] {sequence, count};
+    }
+
+    /**
+     * open the journal for appending and start its writer thread
+     *
+     * @throws IOException if the journal cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        NavigableMap<Long, Path> segments = segments(directory);
+        if (!replayed && !segments.isEmpty()) {
+            throw new IllegalStateException("Journal must be replayed before it is started.");
+        }
+        if (replayedEnd == lastAppended) {
+            // carry on after the last record of the last segment
+            segmentFirst = segments.lastKey();
+        }
+        else {
+            segmentFirst = lastAppended + 1;
+        }
+        segment = directory.resolve(segmentName(segmentFirst));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        lastDurable = lastAppended;
+        appendLock.lock();
+        try {
+            started = true;
+            running = true;
+        }
+        finally {
+            appendLock.unlock();
+        }
+        writer = new Thread(this::run, "moolah-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return the policy deciding when records are forced to the device
+     */
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * record the creation of {@code account}. Must be called before the account is made visible to other threads.
+     *
+     * @return the sequence to pass to {@link #awaitDurable(long)}
+     */
+    public long accountCreated(Account account) {
+        return append(JournalRecord.created(account));
+    }
+
+    /**
+     * record the new name and owner of {@code account}. Must be called while the account is locked.
+     *
+     * @return the sequence to pass to {@link #awaitDurable(long)}
+     */
+    public long accountUpdated(Account account) {
+        return append(JournalRecord.updated(account));
+    }
+
+    /**
+     * record the deletion of the account whose id is {@code id}
+     *
+     * @return the sequence to pass to {@link #awaitDurable(long)}
+     */
+    public long accountDeleted(UUID id) {
+        return append(JournalRecord.deleted(id));
+    }
+
+    /**
+     * record {@code transfer}. Called by {@link moolah.model.TransferManager} with both accounts locked; wait for the
+     * record with {@link #awaitDurable(long)} and {@link Transfer#getJournalSequence()}.
+     */
+    @Override
+    public void transferCommitted(Transfer transfer) {
+        transfer.setJournalSequence(append(JournalRecord.transferred(transfer)));
+    }
+
+    /**
+     * @return the sequence of the last appended record
+     */
+    public long getLastAppended() {
+        appendLock.lock();
+        try {
+            return lastAppended;
+        }
+        finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence of the last record made durable
+     */
+    public long getLastDurable() {
+        return lastDurable;
+    }
+
+    /**
+     * end the segment being written after the last record appended so far; later records go to a new segment. Blocks
+     * until the segment is written, forced and closed.
+     *
+     * @return the sequence of the last record of the closed segment
+     * @throws JournalException if the journal failed or was closed
+     */
+    public long rollover() {
+        long last;
+        appendLock.lock();
+        try {
+            if (!running) {
+                throw new JournalException("Journal is not running.");
+            }
+            last = lastAppended;
+            rollAfter = last;
+            appended.signal();
+        }
+        finally {
+            appendLock.unlock();
+        }
+        synchronized (durable) {
+            while (rolledAfter < last) {
+                if (failure != null) {
+                    throw failure;
+                }
+                try {
+                    durable.wait();
+                }
+                catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    throw new JournalException("Interrupted while waiting for the journal.", exc);
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * remove the segments holding only records up to {@code sequence}, i.e. those a snapshot taken at {@code sequence}
+     * covers. The segment being written is never removed.
+     *
+     * @param sequence sequence of the last record covered
+     * @param archive  directory to move the segments to, null to delete them
+     * @return the number of segments removed
+     * @throws IOException if a segment cannot be removed
+     */
+    public int removeSegmentsBefore(long sequence, Path archive) throws IOException {
+        NavigableMap<Long, Path> segments = segments(directory);
+        int removed = 0;
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            Long next = segments.higherKey(entry.getKey());
+            if (next == null || next > sequence + 1 || entry.getKey() == segmentFirst) {
+                break;
+            }
+            if (archive == null) {
+                Files.delete(entry.getValue());
+            }
+            else {
+                Files.createDirectories(archive);
+                Files.move(entry.getValue(), archive.resolve(entry.getValue().getFileName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * block until every record appended so far is durable
+     *
+     * @throws JournalException if the journal failed or was closed
+     */
+    public void sync() {
+        awaitDurable(getLastAppended());
+    }
+
+    /**
+     * block until the record appended with {@code sequence}, and every record before it, is durable as the
+     * {@link FsyncPolicy} has it: forced to the device, or only written to the operating system with
+     * {@link FsyncPolicy#INTERVAL}
+     *
+     * @throws JournalException if the journal failed or was closed before the record became durable
+     */
+    public void awaitDurable(long sequence) {
+        if (lastDurable >= sequence) {
+            return;
+        }
+        synchronized (durable) {
+            while (lastDurable < sequence) {
+                if (failure != null) {
+                    throw failure;
+                }
+                try {
+                    durable.wait();
+                }
+                catch (InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                    throw new JournalException("Interrupted while waiting for the journal.", exc);
+                }
+            }
+        }
+    }
+
+    /**
+     * write and force every record appended so far, then stop the writer thread. Records appended afterwards are
+     * never made durable.
+     */
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            running = false;
+            appended.signal();
+        }
+        finally {
+            appendLock.unlock();
+        }
+        try {
+            writer.join();
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        fail(new JournalException("Journal is closed."));
+    }
+
+    /**
+     * @throws IllegalStateException if the journal was never started: the record would never become durable
+     */
+    private long append(JournalRecord record) {
+        appendLock.lock();
+        try {
+            if (!started) {
+                throw new IllegalStateException("Journal must be started before records are appended.");
+            }
+            record.sequence = ++lastAppended;
+            if (running) {
+                pending.add(record);
+                appended.signal();
+            }
+            return record.sequence;
+        }
+        finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * writer loop
+     */
+    private void run() {
+        List<JournalRecord> batch = new ArrayList<>();
+        long lastForce = System.nanoTime();
+        boolean unforced = false;
+        long roll;
+        try {
+            while (true) {
+                appendLock.lock();
+                try {
+                    while (pending.isEmpty() && running && rollAfter < 0) {
+                        if (unforced) {
+                            long wait = intervalNanos - (System.nanoTime() - lastForce);
+                            if (wait <= 0) {
+                                break;
+                            }
+                            appended.awaitNanos(wait);
+                        }
+                        else {
+                            appended.await();
+                        }
+                    }
+                    if (pending.isEmpty() && !running && !unforced && rollAfter < 0) {
+                        return;
+                    }
+                    List<JournalRecord> swap = pending;
+                    pending = batch;
+                    batch = swap;
+                    // every record of the closing segment was appended before the rollover request, so is in batch,
+                    // but batch may also hold records appended since, which go to the new segment
+                    roll = rollAfter;
+                    rollAfter = -1;
+                }
+                finally {
+                    appendLock.unlock();
+                }
+
+                // records before split belong to the segment closed by the rollover, if any
+                int split = 0;
+                if (roll >= 0) {
+                    while (split < batch.size() && batch.get(split).sequence <= roll) {
+                        split++;
+                    }
+                }
+                write(batch, 0, split);
+                if (roll >= 0) {
+                    roll(roll);
+                    unforced = false;
+                    lastForce = System.nanoTime();
+                    publish(roll);
+                    synchronized (durable) {
+                        rolledAfter = roll;
+                        durable.notifyAll();
+                    }
+                }
+                write(batch, split, batch.size());
+                flush();
+                long last = batch.isEmpty() ? lastDurable : batch.get(batch.size() - 1).sequence;
+                boolean tail = split < batch.size();
+                if (policy == FsyncPolicy.GROUP && (roll < 0 || tail)) {
+                    channel.force(false);
+                }
+                else if (policy == FsyncPolicy.INTERVAL) {
+                    unforced |= tail;
+                    if (unforced && (System.nanoTime() - lastForce >= intervalNanos || !running)) {
+                        channel.force(false);
+                        lastForce = System.nanoTime();
+                        unforced = false;
+                    }
+                }
+                publish(last);
+                batch.clear();
+            }
+        }
+        catch (IOException | RuntimeException exc) {
+            logger.error("Journal {} failed, no further changes can be made durable", segment, exc);
+            fail(new JournalException("Journal write failed.", exc));
+        }
+        catch (InterruptedException exc) {
+            fail(new JournalException("Journal writer interrupted.", exc));
+        }
+    }
+
+    /**
+     * write the records of {@code batch} from {@code from} to {@code to}, excluded, to the segment being written
+     */
+    private void write(List<JournalRecord> batch, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            JournalRecord record = batch.get(i);
+            write(record);
+            if (policy == FsyncPolicy.ALWAYS) {
+                flush();
+                channel.force(false);
+                publish(record.sequence);
+            }
+        }
+    }
+
+    /**
+     * force and close the segment being written, ending with record {@code roll}, and open the segment following it
+     */
+    private void roll(long roll) throws IOException {
+        flush();
+        channel.force(false);
+        if (roll + 1 != segmentFirst) {
+            channel.close();
+            segmentFirst = roll + 1;
+            segment = directory.resolve(segmentName(segmentFirst));
+            channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+    }
+
+    static String segmentName(long first) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, first, SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return the segments in {@code directory} by the sequence of their first record
+     */
+    static NavigableMap<Long, Path> segments(Path directory) throws IOException {
+        NavigableMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                }
+                catch (NumberFormatException exc) {
+                    logger.warn("Ignoring unexpected file {} in the journal directory", file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private void write(JournalRecord record) throws IOException {
+        int size = record.encodedSize();
+        if (size > MAX_RECORD_SIZE) {
+            throw new JournalException("Journal record too large: " + size + " bytes.");
+        }
+        ByteBuffer target = buffer;
+        if (HEADER_SIZE + size > target.remaining()) {
+            flush();
+            if (HEADER_SIZE + size > target.remaining()) {
+                target = ByteBuffer.allocate(HEADER_SIZE + size);
+            }
+        }
+        int start = target.position();
+        target.position(start + HEADER_SIZE);
+        record.encode(target);
+        int end = target.position();
+
+        ByteBuffer body = target.duplicate();
+        body.limit(end).position(start + HEADER_SIZE);
+        crc.reset();
+        crc.update(body);
+        target.putInt(start, size);
+        target.putInt(start + 4, (int) crc.getValue());
+
+        if (target != buffer) {
+            target.flip();
+            writeFully(target);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private void publish(long sequence) {
+        synchronized (durable) {
+            if (sequence > lastDurable) {
+                lastDurable = sequence;
+            }
+            durable.notifyAll();
+        }
+    }
+
+    private void fail(JournalException exc) {
+        synchronized (durable) {
+            if (failure == null) {
+                failure = exc;
+            }
+            durable.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package moolah.journal;
+
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+import moolah.store.AccountStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * One change recorded in the journal.
+ *
+ * Records carry after-images: the state a change left the account in, not the difference it made. Applying a record
+ * therefore sets state rather than adjusting it.
+ *
+ * Body layout (all numbers big-endian, strings as an int byte length, -1 for null, followed by UTF-8 bytes):
+ * <pre>
+ * CREATE   : type, id, balance, name, owner
+ * UPDATE   : type, id, name, owner
+ * DELETE   : type, id
+ * TRANSFER : type, id, date, amount, from, from balance, to, to balance, name
+ * </pre>
+ * where ids are two longs, balances and amounts are in minor units and dates are epoch milliseconds.
+ */
+final class JournalRecord {
+
+    enum Type {
+        CREATE(1), UPDATE(2), DELETE(3), TRANSFER(4);
+
+        final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        static Type of(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown journal record type " + code);
+        }
+    }
+
+    final Type type;
+
+    /** id of the account, or of the transfer for TRANSFER records */
+    final UUID id;
+
+    String name;
+
+    String owner;
+
+    long balance;
+
+    long date;
+
+    long amount;
+
+    UUID from;
+
+    long fromBalance;
+
+    UUID to;
+
+    long toBalance;
+
+    /** position of the record in the journal, assigned when appended. Not persisted. */
+    long sequence;
+
+    private byte[] nameBytes;
+
+    private byte[] ownerBytes;
+
+    private JournalRecord(Type type, UUID id) {
+        this.type = type;
+        this.id = id;
+    }
+
+    static JournalRecord created(Account account) {
+        JournalRecord record = new JournalRecord(Type.CREATE, account.getId());
+        record.balance = account.getBalanceMinor();
+        record.name = account.getName();
+        record.owner = account.getOwner();
+        return record;
+    }
+
+    static JournalRecord updated(Account account) {
+        JournalRecord record = new JournalRecord(Type.UPDATE, account.getId());
+        record.name = account.getName();
+        record.owner = account.getOwner();
+        return record;
+    }
+
+    static JournalRecord deleted(UUID id) {
+        return new JournalRecord(Type.DELETE, id);
+    }
+
+    /**
+     * must be called while both accounts of {@code transfer} are locked, so that their balances are the ones the
+     * transfer left them with
+     */
+    static JournalRecord transferred(Transfer transfer) {
+        JournalRecord record = new JournalRecord(Type.TRANSFER, transfer.getId());
+        record.date = transfer.getDate().getTime();
+        record.amount = transfer.getAmountMinor();
+        record.from = transfer.getFrom().getId();
+        record.fromBalance = transfer.getFrom().getBalanceMinor();
+        record.to = transfer.getTo().getId();
+        record.toBalance = transfer.getTo().getBalanceMinor();
+        record.name = transfer.getName();
+        return record;
+    }
+
+    /**
+     * @return the number of bytes {@link #encode(ByteBuffer)} writes
+     */
+    int encodedSize() {
+        nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        ownerBytes = owner == null ? null : owner.getBytes(StandardCharsets.UTF_8);
+        int size = 1 + 16;
+        switch (type) {
+            case CREATE:
+                return size + 8 + sizeOf(nameBytes) + sizeOf(ownerBytes);
+            case UPDATE:
+                return size + sizeOf(nameBytes) + sizeOf(ownerBytes);
+            case DELETE:
+                return size;
+            case TRANSFER:
+            default:
+                return size + 8 + 8 + 24 + 24 + sizeOf(nameBytes);
+        }
+    }
+
+    /**
+     * write the record body to {@code buffer}, {@link #encodedSize()} must have been called first
+     */
+    void encode(ByteBuffer buffer) {
+        buffer.put(type.code);
+        putId(buffer, id);
+        switch (type) {
+            case CREATE:
+                buffer.putLong(balance);
+                putBytes(buffer, nameBytes);
+                putBytes(buffer, ownerBytes);
+                break;
+            case UPDATE:
+                putBytes(buffer, nameBytes);
+                putBytes(buffer, ownerBytes);
+                break;
+            case DELETE:
+                break;
+            case TRANSFER:
+                buffer.putLong(date);
+                buffer.putLong(amount);
+                putId(buffer, from);
+                buffer.putLong(fromBalance);
+                putId(buffer, to);
+                buffer.putLong(toBalance);
+                putBytes(buffer, nameBytes);
+                break;
+        }
+    }
+
+    /**
+     * @param buffer holds exactly one record body
+     * @throws IllegalArgumentException if the body is malformed
+     */
+    static JournalRecord decode(ByteBuffer buffer) {
+        try {
+            Type type = Type.of(buffer.get());
+            JournalRecord record = new JournalRecord(type, getId(buffer));
+            switch (type) {
+                case CREATE:
+                    record.balance = buffer.getLong();
+                    record.name = getString(buffer);
+                    record.owner = getString(buffer);
+                    break;
+                case UPDATE:
+                    record.name = getString(buffer);
+                    record.owner = getString(buffer);
+                    break;
+                case DELETE:
+                    break;
+                case TRANSFER:
+                    record.date = buffer.getLong();
+                    record.amount = buffer.getLong();
+                    record.from = getId(buffer);
+                    record.fromBalance = buffer.getLong();
+                    record.to = getId(buffer);
+                    record.toBalance = buffer.getLong();
+                    record.name = getString(buffer);
+                    break;
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes after journal record");
+            }
+            return record;
+        }
+        catch (RuntimeException exc) {
+            throw new IllegalArgumentException("Malformed journal record", exc);
+        }
+    }
+
+    /**
+     * apply the change to {@code store}. Legs of a transfer whose account no longer exists are skipped; the transfer
+     * is indexed all the same. A transfer already in an account's history, restored from a snapshot taken after it was
+     * committed, is not added to it again.
+     */
+    void apply(AccountStore store) {
+        switch (type) {
+            case CREATE: {
+                Account account = new Account();
+                account.setId(id);
+                account.setName(name);
+                account.setOwner(owner);
+                account.setBalanceMinor(balance);
+                store.put(account);
+                break;
+            }
+            case UPDATE: {
+                Account account = store.get(id);
+                if (account != null) {
+                    account.setName(name);
+                    account.setOwner(owner);
+                }
+                break;
+            }
+            case DELETE:
+                store.remove(id);
+                break;
+            case TRANSFER: {
+                Account fromAccount = store.get(from);
+                Account toAccount = store.get(to);
+                Transfer transfer = new Transfer();
+                transfer.setId(id);
+                transfer.setDate(new Date(date));
+                transfer.setAmountMinor(amount);
+                transfer.setFrom(fromAccount);
+                transfer.setTo(toAccount);
+                transfer.setName(name);
+                if (fromAccount != null) {
+                    fromAccount.setBalanceMinor(fromBalance);
+                    if (!fromAccount.getHistory().contains(transfer)) {
+                        fromAccount.addTransfer(transfer);
+                    }
+                }
+                if (toAccount != null) {
+                    toAccount.setBalanceMinor(toBalance);
+                    if (!toAccount.getHistory().contains(transfer)) {
+                        toAccount.addTransfer(transfer);
+                    }
+                }
+                TransferManager.getIndex().add(transfer);
+                break;
+            }
+        }
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putId(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID getId(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        }
+        else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
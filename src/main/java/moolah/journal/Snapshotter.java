@@ -0,0 +1,430 @@
+package moolah.journal;
+
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferIds;
+import moolah.model.TransferManager;
+import moolah.store.AccountStore;
+import moolah.store.TransferIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes snapshots of the account store and of the committed transfers next to the {@link Journal}, so that a restart
+ * loads the latest snapshot and replays only the journal records after it, however long the history.
+ *
+ * A snapshot is taken while transfers keep running. It first rolls the journal over at sequence S, then copies every
+ * account. Since records are after-images and a change is applied before its record is appended, each account is
+ * copied in a state at least as recent as S, and any change the copy missed or only partly saw has a record after S
+ * that sets it right on replay. The transfers are copied from the {@link TransferManager#getIndex() index} after the
+ * accounts, up to an id taken from {@link TransferIds} right after the rollover. A transfer is indexed before its
+ * record is appended and ids are time-ordered, so every transfer up to S is copied, later ones are skipped however
+ * fast they are committed, and those after S that are copied all the same are not added twice on replay. Once the snapshot is durable, older snapshots and the
+ * journal segments it covers are deleted, or moved to an archive directory.
+ *
+ * Loading indexes the transfers again and rebuilds each account's history from them, in id order, which is the order
+ * {@link TransferManager} commits them in.
+ *
+ * Snapshot file layout, all numbers big-endian:
+ * <pre>
+ *     int magic, int format, long S,
+ *     for each account: byte 1, long id msb, long id lsb, long balance, name, owner
+ *     byte 0, long account count,
+ *     for each transfer: byte 1, long id msb, long id lsb, long date, long amount, from, to, name
+ *     byte 0, long transfer count, int CRC32 of everything before it
+ * </pre>
+ * where strings are an int byte length, -1 for null, followed by UTF-8 bytes, balances and amounts are in minor units,
+ * dates are epoch milliseconds and accounts of a transfer are a byte 1 followed by the id, or a byte 0 if the account
+ * was already gone. Format 1 snapshots end after the account count and hold no transfers.
+ */
+public class Snapshotter implements SnapshotterMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(Snapshotter.class);
+
+    private static final int MAGIC = 0x4d534e50;
+
+    private static final int FORMAT = 2;
+
+    /** format of the snapshots written before they held transfers, still loaded */
+    private static final int ACCOUNTS_FORMAT = 1;
+
+    private static final String PREFIX = "snapshot-";
+
+    private static final String SUFFIX = ".snap";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+
+    private final Journal journal;
+
+    private final AccountStore store;
+
+    private final Path archive;
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile long lastSequence;
+
+    private volatile long snapshotCount;
+
+    private volatile long failedCount;
+
+    private volatile long lastDurationMillis;
+
+    private volatile long lastSizeBytes;
+
+    private volatile long lastAccounts;
+
+    /**
+     * @param directory directory holding the snapshots, normally the journal directory
+     * @param journal   the journal recording changes to {@code store}
+     * @param store     the store to snapshot
+     * @param archive   directory old journal segments are moved to, null to delete them
+     * @throws IOException if the directory cannot be created
+     */
+    public Snapshotter(Path directory, Journal journal, AccountStore store, Path archive) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.journal = journal;
+        this.store = store;
+        this.archive = archive;
+    }
+
+    /**
+     * load the latest snapshot into {@code target}, and its transfers into {@link TransferManager#getIndex()} and the
+     * histories of their accounts. Replay the journal after the returned sequence to complete them.
+     *
+     * @param target the store to fill, normally empty
+     * @return the sequence of the last journal record covered by the snapshot, 0 if there is no snapshot
+     * @throws IOException if the latest snapshot cannot be read or is corrupt
+     */
+    public long load(AccountStore target) throws IOException {
+        NavigableMap<Long, Path> snapshots = snapshots();
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        Path file = snapshots.lastEntry().getValue();
+        long started = System.nanoTime();
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), crc))) {
+            int format = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (format != FORMAT && format != ACCOUNTS_FORMAT) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            long sequence = in.readLong();
+            long count = 0;
+            while (in.readByte() != 0) {
+                Account account = new Account();
+                account.setId(new UUID(in.readLong(), in.readLong()));
+                account.setBalanceMinor(in.readLong());
+                account.setName(readString(in));
+                account.setOwner(readString(in));
+                target.put(account);
+                count++;
+            }
+            if (in.readLong() != count) {
+                throw new IOException("Snapshot account count mismatch in " + file);
+            }
+            List<Transfer> transfers = new ArrayList<>();
+            if (format == FORMAT) {
+                while (in.readByte() != 0) {
+                    Transfer transfer = new Transfer();
+                    transfer.setId(new UUID(in.readLong(), in.readLong()));
+                    transfer.setDate(new Date(in.readLong()));
+                    transfer.setAmountMinor(in.readLong());
+                    transfer.setFrom(readAccount(in, target));
+                    transfer.setTo(readAccount(in, target));
+                    transfer.setName(readString(in));
+                    transfers.add(transfer);
+                }
+                if (in.readLong() != transfers.size()) {
+                    throw new IOException("Snapshot transfer count mismatch in " + file);
+                }
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Snapshot checksum mismatch in " + file);
+            }
+            restore(transfers);
+            lastSequence = sequence;
+            logger.info("Loaded {} accounts and {} transfers from snapshot {} in {} ms", count, transfers.size(), file,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return sequence;
+        }
+    }
+
+    /**
+     * take a snapshot every {@code intervalMillis} on a background thread
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "moolah-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            }
+            catch (IOException | RuntimeException exc) {
+                // keep the previous snapshot and journal, try again next time
+                failedCount++;
+                logger.error("Snapshot failed", exc);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stop taking snapshots, waiting for one in progress to finish
+     */
+    public synchronized void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+    }
+
+    /**
+     * snapshot the store now, then remove the older snapshots and the journal segments the snapshot covers. Does
+     * nothing if no record was appended since the latest snapshot.
+     *
+     * @return the sequence of the last journal record covered by the snapshot
+     * @throws IOException if the snapshot cannot be written; the previous snapshot and journal are kept
+     */
+    public synchronized long snapshot() throws IOException {
+        long started = System.nanoTime();
+        long sequence = journal.rollover();
+        if (sequence == lastSequence) {
+            return sequence;
+        }
+        UUID lastTransfer = TransferIds.next();
+        Path file = directory.resolve(snapshotName(sequence));
+        Path temp = directory.resolve(snapshotName(sequence) + TEMP_SUFFIX);
+        long count = 0;
+        long transfers = 0;
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(stream, BUFFER_SIZE), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(sequence);
+            for (Account account : store) {
+                out.writeByte(1);
+                out.writeLong(account.getId().getMostSignificantBits());
+                out.writeLong(account.getId().getLeastSignificantBits());
+                out.writeLong(account.getBalanceMinor());
+                writeString(out, account.getName());
+                writeString(out, account.getOwner());
+                count++;
+            }
+            out.writeByte(0);
+            out.writeLong(count);
+            for (Transfer transfer : TransferManager.getIndex()) {
+                if (transfer.getId().compareTo(lastTransfer) > 0) {
+                    continue;
+                }
+                out.writeByte(1);
+                out.writeLong(transfer.getId().getMostSignificantBits());
+                out.writeLong(transfer.getId().getLeastSignificantBits());
+                out.writeLong(transfer.getDate().getTime());
+                out.writeLong(transfer.getAmountMinor());
+                writeAccount(out, transfer.getFrom());
+                writeAccount(out, transfer.getTo());
+                writeString(out, transfer.getName());
+                transfers++;
+            }
+            out.writeByte(0);
+            out.writeLong(transfers);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        catch (IOException | RuntimeException exc) {
+            Files.deleteIfExists(temp);
+            throw exc;
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+
+        for (Path old : snapshots().headMap(sequence, false).values()) {
+            Files.delete(old);
+        }
+        int segments = journal.removeSegmentsBefore(sequence, archive);
+
+        lastSequence = sequence;
+        lastDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        lastSizeBytes = Files.size(file);
+        lastAccounts = count;
+        snapshotCount++;
+        logger.info("Snapshot of {} accounts and {} transfers at record {} written in {} ms, {} bytes, {} journal "
+                + "segments {}", count, transfers, sequence, lastDurationMillis, lastSizeBytes, segments,
+                archive == null ? "deleted" : "archived");
+        return sequence;
+    }
+
+    @Override
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    @Override
+    public long getLastSnapshotSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public long getLastSnapshotDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    @Override
+    public long getLastSnapshotSizeBytes() {
+        return lastSizeBytes;
+    }
+
+    @Override
+    public long getLastSnapshotAccounts() {
+        return lastAccounts;
+    }
+
+    @Override
+    public long getFailedSnapshotCount() {
+        return failedCount;
+    }
+
+    /**
+     * make the rename of the snapshot durable. Not every platform can open a directory, which is then left to the
+     * file system.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException exc) {
+            logger.debug("Cannot force directory {}", directory, exc);
+        }
+    }
+
+    private NavigableMap<Long, Path> snapshots() throws IOException {
+        NavigableMap<Long, Path> snapshots = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    snapshots.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())),
+                            file);
+                }
+                catch (NumberFormatException exc) {
+                    logger.warn("Ignoring unexpected file {} in the snapshot directory", file);
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * index {@code transfers} and add them to the histories of their accounts, oldest first
+     */
+    private static void restore(List<Transfer> transfers) {
+        transfers.sort(Comparator.comparing(Transfer::getId));
+        TransferIndex index = TransferManager.getIndex();
+        for (Transfer transfer : transfers) {
+            if (transfer.getFrom() != null) {
+                transfer.getFrom().addTransfer(transfer);
+            }
+            if (transfer.getTo() != null) {
+                transfer.getTo().addTransfer(transfer);
+            }
+            index.add(transfer);
+        }
+    }
+
+    static String snapshotName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeAccount(DataOutputStream out, Account account) throws IOException {
+        if (account == null) {
+            out.writeByte(0);
+        }
+        else {
+            out.writeByte(1);
+            out.writeLong(account.getId().getMostSignificantBits());
+            out.writeLong(account.getId().getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * @return the account of {@code target} read from {@code in}, null if the account was gone or is not in
+     * {@code target}
+     */
+    private static Account readAccount(DataInputStream in, AccountStore target) throws IOException {
+        return in.readByte() == 0 ? null : target.get(new UUID(in.readLong(), in.readLong()));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
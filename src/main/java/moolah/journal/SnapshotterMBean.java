@@ -0,0 +1,37 @@
+package moolah.journal;
+
+/**
+ * Management interface of the {@link Snapshotter}, registered as {@code moolah:type=Snapshotter}.
+ */
+public interface SnapshotterMBean {
+
+    /**
+     * @return the number of snapshots taken since startup
+     */
+    long getSnapshotCount();
+
+    /**
+     * @return the sequence of the last journal record covered by the latest snapshot, 0 if there is none
+     */
+    long getLastSnapshotSequence();
+
+    /**
+     * @return how long the latest snapshot taken since startup took to write, in milliseconds
+     */
+    long getLastSnapshotDurationMillis();
+
+    /**
+     * @return the size of the latest snapshot taken since startup, in bytes
+     */
+    long getLastSnapshotSizeBytes();
+
+    /**
+     * @return the number of accounts in the latest snapshot taken since startup
+     */
+    long getLastSnapshotAccounts();
+
+    /**
+     * @return the number of snapshots that failed since startup
+     */
+    long getFailedSnapshotCount();
+}
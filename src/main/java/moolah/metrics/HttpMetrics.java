@@ -0,0 +1,100 @@
+package moolah.metrics;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Path;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link RouteMetrics} of every route requested so far, shared by all request threads.
+ *
+ * Routes are keyed by the resource method serving them, and their labels are worked out from its annotations the
+ * first time it is requested; looking up an existing route allocates nothing.
+ */
+public final class HttpMetrics {
+
+    /** label of requests no resource method matched */
+    public static final String UNMATCHED = "unmatched";
+
+    /** methods counted under their own name when unmatched, any other under OTHER */
+    private static final List<String> METHODS = Arrays.asList(HttpMethod.GET, HttpMethod.POST, HttpMethod.PUT,
+            HttpMethod.DELETE, HttpMethod.HEAD, HttpMethod.OPTIONS, "PATCH");
+
+    private static final ConcurrentMap<Method, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, RouteMetrics> unmatched = new ConcurrentHashMap<>();
+
+    private HttpMetrics() { }
+
+    /**
+     * @param resourceClass  the resource class the request was matched to
+     * @param resourceMethod the resource method the request was matched to
+     * @return the metrics of the route served by {@code resourceMethod}
+     */
+    public static RouteMetrics route(Class<?> resourceClass, Method resourceMethod) {
+        RouteMetrics route = routes.get(resourceMethod);
+        if (route == null) {
+            route = routes.computeIfAbsent(resourceMethod,
+                    method -> new RouteMetrics(httpMethod(method), template(resourceClass, method)));
+        }
+        return route;
+    }
+
+    /**
+     * @param method the HTTP method of a request no resource method matched
+     * @return the metrics of unmatched requests with {@code method}
+     */
+    public static RouteMetrics unmatched(String method) {
+        RouteMetrics route = unmatched.get(method);
+        if (route == null) {
+            String label = METHODS.contains(method) ? method : "OTHER";
+            route = unmatched.computeIfAbsent(label, key -> new RouteMetrics(key, UNMATCHED));
+        }
+        return route;
+    }
+
+    /**
+     * @return a copy of the metrics of every route requested so far
+     */
+    public static Collection<RouteMetrics> getRoutes() {
+        List<RouteMetrics> all = new ArrayList<>(routes.values());
+        all.addAll(unmatched.values());
+        return all;
+    }
+
+    private static String httpMethod(Method method) {
+        for (Annotation annotation : method.getAnnotations()) {
+            HttpMethod httpMethod = annotation.annotationType().getAnnotation(HttpMethod.class);
+            if (httpMethod != null) {
+                return httpMethod.value();
+            }
+        }
+        return "OTHER";
+    }
+
+    /**
+     * @return the path template of {@code method}, e.g. {@code /accounts/{id}}, without a trailing '/'
+     */
+    private static String template(Class<?> resourceClass, Method method) {
+        StringBuilder template = new StringBuilder();
+        Path classPath = resourceClass.getAnnotation(Path.class);
+        Path methodPath = method.getAnnotation(Path.class);
+        for (Path path : new Path[] {classPath, methodPath}) {
+            if (path == null) {
+                continue;
+            }
+            for (String segment : path.value().split("/")) {
+                if (!segment.isEmpty()) {
+                    template.append('/').append(segment);
+                }
+            }
+        }
+        return template.length() == 0 ? "/" : template.toString();
+    }
+}
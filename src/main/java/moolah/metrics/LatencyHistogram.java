@@ -0,0 +1,89 @@
+package moolah.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of latencies over fixed buckets, in the shape of a Prometheus histogram.
+ *
+ * Recording increments one bucket counter and the sum, both {@link LongAdder}s, so concurrent recorders do not contend
+ * on a single cache line and nothing is allocated. Buckets are not cumulative here; {@link #getCount(int)} adds them up
+ * when read.
+ */
+public final class LatencyHistogram {
+
+    /** upper bounds of the buckets, in seconds, from 0.1ms to 10s; latencies above the last go in the +Inf bucket */
+    private static final double[] BOUNDS = {
+            0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /** one counter per bound, then the +Inf bucket */
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos the latency to record, in nanoseconds
+     */
+    public void record(long nanos) {
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return the number of buckets, the +Inf one included
+     */
+    public int getBuckets() {
+        return buckets.length;
+    }
+
+    /**
+     * @return the upper bound of bucket {@code i} in seconds, {@link Double#POSITIVE_INFINITY} for the last
+     */
+    public double getBound(int i) {
+        return i < BOUNDS.length ? BOUNDS[i] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the number of latencies recorded no greater than the bound of bucket {@code i}
+     */
+    public long getCount(int i) {
+        long count = 0;
+        for (int j = 0; j <= i; j++) {
+            count += buckets[j].sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public long getCount() {
+        return getCount(buckets.length - 1);
+    }
+
+    /**
+     * @return the sum of the latencies recorded, in seconds
+     */
+    public double getSumSeconds() {
+        return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+}
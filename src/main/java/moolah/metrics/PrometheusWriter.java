@@ -0,0 +1,113 @@
+package moolah.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes metrics in the Prometheus text exposition format, version 0.0.4.
+ *
+ * Each metric is declared once with {@link #declare(String, String, String)}, then followed by its samples. Label
+ * values are escaped; names are written as given.
+ */
+public final class PrometheusWriter {
+
+    /** media type of the text exposition format */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Writer out;
+
+    public PrometheusWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * write the HELP and TYPE lines of a metric
+     *
+     * @param type one of counter, gauge, histogram
+     */
+    public PrometheusWriter declare(String name, String type, String help) throws IOException {
+        out.write("# HELP ");
+        out.write(name);
+        out.write(' ');
+        out.write(help);
+        out.write("\n# TYPE ");
+        out.write(name);
+        out.write(' ');
+        out.write(type);
+        out.write('\n');
+        return this;
+    }
+
+    /**
+     * write one sample
+     *
+     * @param labels label names and values, alternately
+     */
+    public PrometheusWriter sample(String name, double value, String... labels) throws IOException {
+        out.write(name);
+        if (labels.length > 0) {
+            out.write('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(labels[i]);
+                out.write("=\"");
+                escape(labels[i + 1]);
+                out.write('"');
+            }
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(format(value));
+        out.write('\n');
+        return this;
+    }
+
+    /**
+     * write the buckets, sum and count of {@code histogram} as the samples of the histogram {@code name}
+     *
+     * @param labels label names and values, alternately, added to every sample
+     */
+    public PrometheusWriter histogram(String name, LatencyHistogram histogram, String... labels) throws IOException {
+        String[] bucketLabels = new String[labels.length + 2];
+        System.arraycopy(labels, 0, bucketLabels, 0, labels.length);
+        bucketLabels[labels.length] = "le";
+        for (int i = 0; i < histogram.getBuckets(); i++) {
+            bucketLabels[labels.length + 1] = format(histogram.getBound(i));
+            sample(name + "_bucket", histogram.getCount(i), bucketLabels);
+        }
+        sample(name + "_sum", histogram.getSumSeconds(), labels);
+        sample(name + "_count", histogram.getCount(), labels);
+        return this;
+    }
+
+    private void escape(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+
+    private static String format(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == (long) value) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
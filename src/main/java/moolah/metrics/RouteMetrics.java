@@ -0,0 +1,63 @@
+package moolah.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies and responses by status of the requests to one route, i.e. one HTTP method on one path template.
+ */
+public final class RouteMetrics {
+
+    /** statuses are counted in a flat array indexed by status code, codes outside of it are counted as 0 */
+    private static final int STATUSES = 600;
+
+    private final String method;
+
+    private final String route;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    private final AtomicLongArray statuses = new AtomicLongArray(STATUSES);
+
+    RouteMetrics(String method, String route) {
+        this.method = method;
+        this.route = route;
+    }
+
+    /**
+     * @param status the status of the response
+     * @param nanos  time between the arrival of the request and its response, in nanoseconds
+     */
+    public void record(int status, long nanos) {
+        latencies.record(nanos);
+        statuses.incrementAndGet(status > 0 && status < STATUSES ? status : 0);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the path template of the route, e.g. {@code /accounts/{id}}
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return the number of responses with {@code status}
+     */
+    public long getCount(int status) {
+        return statuses.get(status > 0 && status < STATUSES ? status : 0);
+    }
+
+    /**
+     * @return the highest status code that can be counted separately
+     */
+    public static int maxStatus() {
+        return STATUSES - 1;
+    }
+}
@@ -1,22 +1,40 @@
 package moolah.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import moolah.exceptions.AccountBalanceException;
+import moolah.providers.AccountSerializer;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.xml.bind.annotation.XmlRootElement;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * POJO Account object
+ *
+ * Written to JSON by {@link AccountSerializer}, read by Jackson's bean deserializer.
  */
 @XmlRootElement
+@JsonSerialize(using = AccountSerializer.class)
 public class Account {
 
+    private static final AtomicLongFieldUpdater<Account> BALANCE =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "balance");
+
+    private static final AtomicLongFieldUpdater<Account> VERSION =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "version");
+
+    /**
+     * amount every change adds to the version. Versions stay even between updates of the name and owner and are odd
+     * while one is in progress, see {@link #beginUpdate(long)}.
+     */
+    public static final long VERSION_STEP = 2;
+
     /**
      * account's unique identifier
      */
@@ -33,18 +51,24 @@ public class Account {
     private String owner;
 
     /**
-     * balance of the account
+     * balance of the account in minor units, see {@link Money}
      *
-     * Within Account, this value can be made negative.
+     * Within Account, this value can be made negative. It is only ever updated atomically through {@code BALANCE}.
      *
      * note: no currency is in use at this point
      */
-    private Double balance = 0.0;
+    private volatile long balance;
 
     /**
-     * list of transfers coming in or going out of this account
+     * increased by {@link #VERSION_STEP} after every change to the balance, name or owner, odd while an update is in
+     * progress
      */
-    private List<Transfer> transfers = new ArrayList<>();
+    private volatile long version;
+
+    /**
+     * transfers coming in or going out of this account, created with the first one
+     */
+    private volatile TransferHistory history;
 
     /**
      * default constructor needed by Jersey
@@ -67,13 +91,85 @@ public class Account {
 
     @GET @Path("balance")
     public Double getBalance() {
+        return Money.toMajor(getBalanceMinor());
+    }
+
+    /**
+     * @return the balance in minor units
+     */
+    @JsonIgnore
+    public long getBalanceMinor() {
         return balance;
     }
 
+    /**
+     * @return a counter increased by {@link #VERSION_STEP} after every change to the balance, name or owner of the
+     * account, odd while an update of the name and owner is in progress
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * start an update of the name and owner if the version is {@code expected}: a compare-and-set that makes the
+     * version odd, so that no other update can start until {@link #endUpdate()} is called.
+     *
+     * Transfers do not wait for updates, nor updates for transfers: they only change the balance, which updates leave
+     * alone, and keep the version odd while an update is in progress. Updates do not wait for each other either: an
+     * update whose expected version is gone fails at once.
+     *
+     * @return true if the update started, false if the version is no longer {@code expected} or another update is in
+     * progress
+     */
+    public boolean beginUpdate(long expected) {
+        return (expected & 1) == 0 && VERSION.compareAndSet(this, expected, expected + 1);
+    }
+
+    /**
+     * start an update of the name and owner whatever the version, retrying while another update is in progress. Such
+     * updates last as long as two field writes and a journal append, so no thread ever parks on them.
+     *
+     * @return the version the update started from
+     */
+    public long beginUpdate() {
+        while (true) {
+            long current = getVersion();
+            if (beginUpdate(current)) {
+                return current;
+            }
+            if ((current & 1) != 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * end the update started by {@link #beginUpdate(long)}, making the version even again, and newer than any read
+     * while the update was in progress
+     */
+    public void endUpdate() {
+        VERSION.incrementAndGet(this);
+    }
+
+    /**
+     * @return every transfer of the account, oldest first. Not part of the account's JSON: histories can be long, page
+     * through them with {@link #getHistory()} instead.
+     */
     @GET @Path("transfers")
     @Produces(MediaType.APPLICATION_JSON)
+    @JsonIgnore
     public List<Transfer> getTransfers() {
-        return transfers;
+        return getHistory().toList();
+    }
+
+    /**
+     * @return the transfers coming in or going out of this account
+     */
+    @JsonIgnore
+    public TransferHistory getHistory() {
+        TransferHistory current = history;
+        return current == null ? TransferHistory.EMPTY : current;
     }
 
     public void setId(UUID id) {
@@ -82,14 +178,24 @@ public class Account {
 
     public void setName(String name) {
         this.name = name;
+        VERSION.addAndGet(this, VERSION_STEP);
     }
 
     public void setOwner(String owner) {
         this.owner = owner;
+        VERSION.addAndGet(this, VERSION_STEP);
     }
 
     public void setBalance(Double balance) {
+        setBalanceMinor(balance == null ? 0 : Money.toMinor(balance));
+    }
+
+    /**
+     * @param balance the balance in minor units
+     */
+    public void setBalanceMinor(long balance) {
         this.balance = balance;
+        VERSION.addAndGet(this, VERSION_STEP);
     }
 
     /**
@@ -100,7 +206,23 @@ public class Account {
     public void deposit(Double amount) {
         if (amount < 0)
             throw new AccountBalanceException("Amount to deposit cannot be negative.");
-        balance += amount;
+        depositMinor(toMinor(amount));
+    }
+
+    /**
+     * Atomically increments the balance by the provided {@code amount}
+     *
+     * @param amount to deposit in minor units, must be positive
+     * @throws AccountBalanceException if the balance cannot hold the amount, nothing is deposited then
+     */
+    public void depositMinor(long amount) {
+        if (amount < 0)
+            throw new AccountBalanceException("Amount to deposit cannot be negative.");
+        long current;
+        do {
+            current = balance;
+        } while (!BALANCE.compareAndSet(this, current, add(current, amount)));
+        VERSION.addAndGet(this, VERSION_STEP);
     }
 
     /**
@@ -114,7 +236,72 @@ public class Account {
     public void withdraw(Double amount) {
         if (amount < 0)
             throw new AccountBalanceException("Amount to withdraw cannot be negative.");
-        balance -= amount;
+        withdrawMinor(toMinor(amount));
+    }
+
+    /**
+     * Atomically decrements the balance by the provided {@code amount}, see {@link #withdraw(Double)}
+     *
+     * @param amount to withdraw in minor units, must be positive
+     * @throws AccountBalanceException if the balance cannot hold the result, nothing is withdrawn then
+     */
+    public void withdrawMinor(long amount) {
+        if (amount < 0)
+            throw new AccountBalanceException("Amount to withdraw cannot be negative.");
+        long current;
+        do {
+            current = balance;
+        } while (!BALANCE.compareAndSet(this, current, add(current, -amount)));
+        VERSION.addAndGet(this, VERSION_STEP);
+    }
+
+    /**
+     * Atomically decrements the balance by the provided {@code amount} if the balance is at least {@code amount}.
+     *
+     * The check and the decrement happen in one compare-and-set, so concurrent callers can never take the balance
+     * below zero between them. No lock is taken.
+     *
+     * @param amount to withdraw in minor units, must be positive
+     * @return true if the amount was withdrawn, false if the balance was too low
+     */
+    public boolean tryWithdrawMinor(long amount) {
+        if (amount < 0)
+            throw new AccountBalanceException("Amount to withdraw cannot be negative.");
+        long current;
+        do {
+            current = balance;
+            if (current < amount) {
+                return false;
+            }
+        } while (!BALANCE.compareAndSet(this, current, current - amount));
+        VERSION.addAndGet(this, VERSION_STEP);
+        return true;
+    }
+
+    /**
+     * @return {@code amount} in minor units
+     * @throws AccountBalanceException if {@code amount} is not finite or too large
+     */
+    private static long toMinor(Double amount) {
+        try {
+            return Money.toMinor(amount);
+        }
+        catch (ArithmeticException exc) {
+            throw new AccountBalanceException(exc.getMessage() + ".");
+        }
+    }
+
+    /**
+     * @return {@code balance + amount}
+     * @throws AccountBalanceException if the sum does not fit in a balance
+     */
+    protected static long add(long balance, long amount) {
+        try {
+            return Math.addExact(balance, amount);
+        }
+        catch (ArithmeticException exc) {
+            throw new AccountBalanceException("Balance cannot hold the amount.");
+        }
     }
 
     /**
@@ -122,7 +309,16 @@ public class Account {
      * @param transfer transfer to be added
      */
     public void addTransfer(Transfer transfer) {
-        transfers.add(transfer);
+        // transfers are added with the account locked, so only one thread can find the history missing
+        TransferHistory current = history;
+        if (current == null) {
+            current = new TransferHistory();
+            current.add(transfer);
+            history = current;
+        }
+        else {
+            current.add(transfer);
+        }
     }
 
     /**
@@ -130,12 +326,12 @@ public class Account {
      * @param transfer transfer to be removed
      */
     public void removeTransfer(Transfer transfer) {
-        transfers.remove(transfer);
+        getHistory().remove(transfer);
     }
 
     @Override
     public String toString() {
-        return name;
+        return getName();
     }
 
     @Override
@@ -151,6 +347,6 @@ public class Account {
 
     @Override
     public int hashCode() {
-        return id.hashCode();
+        return getId().hashCode();
     }
 }
@@ -0,0 +1,132 @@
+package moolah.model;
+
+/**
+ * Conversions between amounts expressed in major units (e.g. 12.34), as they appear in JSON, and the fixed-point
+ * minor units (e.g. 1234) that balances and transfer amounts are kept in.
+ *
+ * Amounts are rounded to the nearest minor unit, half up.
+ */
+public final class Money {
+
+    /** number of decimal places kept */
+    public static final int SCALE = 2;
+
+    /** number of minor units in one major unit */
+    public static final long MINOR_PER_MAJOR = 100;
+
+    /** 2^63, the first amount in minor units that does not fit in a long */
+    private static final double MINOR_LIMIT = 0x1p63;
+
+    private Money() { }
+
+    /**
+     * @param major amount in major units
+     * @return {@code major} in minor units
+     * @throws ArithmeticException if {@code major} is not a finite number, or does not fit in a long once in minor units
+     */
+    public static long toMinor(double major) {
+        double minor = major * MINOR_PER_MAJOR;
+        if (!(Math.abs(minor) < MINOR_LIMIT)) {
+            throw new ArithmeticException(Double.isNaN(major) || Double.isInfinite(major)
+                    ? "Amount must be a finite number" : "Amount is too large");
+        }
+        return Math.round(minor);
+    }
+
+    /**
+     * @param minor amount in minor units
+     * @return {@code minor} in major units
+     */
+    public static double toMajor(long minor) {
+        return minor / (double) MINOR_PER_MAJOR;
+    }
+
+    /**
+     * write {@code minor} in major units to {@code chars}, in plain decimal notation with at least one and at most
+     * {@link #SCALE} decimals, e.g. 123456 as {@code 1234.56}, 150 as {@code 1.5} and 100 as {@code 1.0}: the text
+     * {@link Double#toString(double)} gives for the same amount, except that large amounts are not written with an
+     * exponent
+     *
+     * @param chars  buffer with room for 24 characters at {@code offset}
+     * @param offset index the first character is written at
+     * @return the number of characters written
+     */
+    public static int format(long minor, char[] chars, int offset) {
+        int position = offset;
+        if (minor < 0) {
+            chars[position++] = '-';
+        }
+        // negated as unsigned so that Long.MIN_VALUE is handled too
+        long magnitude = minor < 0 ? -minor : minor;
+        long major = Long.divideUnsigned(magnitude, MINOR_PER_MAJOR);
+        int cents = (int) Long.remainderUnsigned(magnitude, MINOR_PER_MAJOR);
+
+        int start = position;
+        do {
+            chars[position++] = (char) ('0' + major % 10);
+            major /= 10;
+        } while (major > 0);
+        // digits were written least significant first
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        chars[position++] = '.';
+        chars[position++] = (char) ('0' + cents / 10);
+        if (cents % 10 != 0) {
+            chars[position++] = (char) ('0' + cents % 10);
+        }
+        return position - offset;
+    }
+
+    /**
+     * parse an amount in major units written in plain decimal notation, an optional '-' followed by digits and at
+     * most {@link #SCALE} decimals, e.g. {@code 12}, {@code 12.5} or {@code 12.50}
+     *
+     * @param chars  buffer holding the amount
+     * @param offset index of the first character of the amount
+     * @param length number of characters of the amount
+     * @return the amount in minor units
+     * @throws NumberFormatException if the text is not such an amount, or does not fit in a long once in minor units
+     */
+    public static long parse(char[] chars, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        boolean negative = position < end && chars[position] == '-';
+        if (negative) {
+            position++;
+        }
+        int digits = position;
+        long major = 0;
+        long minor = 0;
+        try {
+            while (position < end && chars[position] >= '0' && chars[position] <= '9') {
+                major = Math.addExact(Math.multiplyExact(major, 10), chars[position++] - '0');
+            }
+            if (position == digits) {
+                throw new NumberFormatException("Amount must start with a digit");
+            }
+            if (position < end && chars[position] == '.') {
+                int decimals = ++position;
+                while (position < end && position - decimals < SCALE && chars[position] >= '0' && chars[position] <= '9') {
+                    minor = minor * 10 + chars[position++] - '0';
+                }
+                if (position == decimals) {
+                    throw new NumberFormatException("Amount must have a digit after its decimal point");
+                }
+                for (int i = position - decimals; i < SCALE; i++) {
+                    minor *= 10;
+                }
+            }
+            if (position != end) {
+                throw new NumberFormatException("Amount must be a number with at most " + SCALE + " decimals");
+            }
+            long amount = Math.addExact(Math.multiplyExact(major, MINOR_PER_MAJOR), minor);
+            return negative ? -amount : amount;
+        }
+        catch (ArithmeticException exc) {
+            throw new NumberFormatException("Amount is too large");
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package moolah.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import moolah.providers.AccountJSONDeserializer;
 import moolah.providers.AccountJSONSerializer;
+import moolah.providers.TransferSerializer;
 
 import javax.xml.bind.annotation.XmlRootElement;
 import java.util.Date;
@@ -11,8 +13,11 @@ import java.util.UUID;
 
 /**
  * POJO Transfer object
+ *
+ * Written to JSON by {@link TransferSerializer}, read by Jackson's bean deserializer.
  */
 @XmlRootElement
+@JsonSerialize(using = TransferSerializer.class)
 public class Transfer {
 
     private UUID id;
@@ -27,8 +32,8 @@ public class Transfer {
     @JsonDeserialize(using = AccountJSONDeserializer.class)
     private Account to;
 
-    /** transfer amount, must be positive */
-    private Double amount;
+    /** transfer amount in minor units (see {@link Money}), must be positive */
+    private long amount;
 
     /** name of the transfer */
     private String name = "";
@@ -36,6 +41,9 @@ public class Transfer {
     /** date of transfer */
     private Date date;
 
+    /** sequence of the journal record of the transfer, 0 if it was not journaled */
+    private long journalSequence;
+
     public Transfer() {
     }
 
@@ -48,6 +56,14 @@ public class Transfer {
     }
 
     public Double getAmount() {
+        return Money.toMajor(amount);
+    }
+
+    /**
+     * @return the transfer amount in minor units
+     */
+    @JsonIgnore
+    public long getAmountMinor() {
         return amount;
     }
 
@@ -55,6 +71,19 @@ public class Transfer {
         return id;
     }
 
+    /**
+     * @return the sequence of the journal record of the transfer, to wait for with
+     * {@link moolah.journal.Journal#awaitDurable(long)}; 0 if it was not journaled
+     */
+    @JsonIgnore
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    public void setJournalSequence(long journalSequence) {
+        this.journalSequence = journalSequence;
+    }
+
     public Account getTo() {
         return to;
     }
@@ -76,6 +105,10 @@ public class Transfer {
     }
 
     public void setAmount(Double amount) {
+        this.amount = amount == null ? 0 : Money.toMinor(amount);
+    }
+
+    public void setAmountMinor(long amount) {
         this.amount = amount;
     }
 
@@ -87,6 +120,9 @@ public class Transfer {
         this.date = date;
     }
 
+    /**
+     * transfers are identified by their id. A transfer without an id is only equal to itself.
+     */
     @Override
     public boolean equals(Object obj) {
         if (this == obj)
@@ -95,6 +131,14 @@ public class Transfer {
             return false;
 
         Transfer o = (Transfer) obj;
-        return getId().equals(o.getId());
+        return getId() != null && getId().equals(o.getId());
+    }
+
+    /**
+     * consistent with {@link #equals(Object)}: the hash of the id, or the identity hash of a transfer without an id
+     */
+    @Override
+    public int hashCode() {
+        return getId() == null ? System.identityHashCode(this) : getId().hashCode();
     }
 }
@@ -0,0 +1,125 @@
+package moolah.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transfers requested together, applied by {@link TransferManager#doBatch(TransferBatch)}, and their outcome.
+ *
+ * Each item ends up either committed, with its {@link Transfer}, rejected, with the reason, or neither when an atomic
+ * batch is rejected because of another item.
+ */
+public class TransferBatch {
+
+    /**
+     * how the items of a batch depend on each other
+     */
+    public enum Mode {
+        /** all items are committed, in order, or none is */
+        ATOMIC,
+        /** every item is committed or rejected on its own, in order */
+        INDEPENDENT
+    }
+
+    private final Mode mode;
+
+    private final List<Account> from = new ArrayList<>();
+
+    private final List<Account> to = new ArrayList<>();
+
+    private final List<Double> amounts = new ArrayList<>();
+
+    private final List<String> names = new ArrayList<>();
+
+    private final List<Transfer> transfers = new ArrayList<>();
+
+    private final List<String> errors = new ArrayList<>();
+
+    public TransferBatch(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * request a transfer of {@code amount} from {@code from} to {@code to}
+     *
+     * @return the index of the item
+     */
+    public int add(Account from, Account to, Double amount, String name) {
+        this.from.add(from);
+        this.to.add(to);
+        amounts.add(amount);
+        names.add(name);
+        transfers.add(null);
+        errors.add(null);
+        return size() - 1;
+    }
+
+    /**
+     * add an item rejected before the batch is applied, e.g. because one of its accounts does not exist
+     *
+     * @return the index of the item
+     */
+    public int addRejected(String error) {
+        int index = add(null, null, null, null);
+        errors.set(index, error);
+        return index;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int size() {
+        return from.size();
+    }
+
+    public Account getFrom(int index) {
+        return from.get(index);
+    }
+
+    public Account getTo(int index) {
+        return to.get(index);
+    }
+
+    public Double getAmount(int index) {
+        return amounts.get(index);
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * @return the committed transfer of the item, null if it was not committed
+     */
+    public Transfer getTransfer(int index) {
+        return transfers.get(index);
+    }
+
+    /**
+     * @return why the item was rejected, null if it was not
+     */
+    public String getError(int index) {
+        return errors.get(index);
+    }
+
+    /**
+     * @return true if every item was committed
+     */
+    public boolean isCommitted() {
+        for (Transfer transfer : transfers) {
+            if (transfer == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void committed(int index, Transfer transfer) {
+        transfers.set(index, transfer);
+    }
+
+    void rejected(int index, String error) {
+        errors.set(index, error);
+    }
+}
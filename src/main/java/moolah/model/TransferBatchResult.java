@@ -0,0 +1,82 @@
+package moolah.model;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * POJO outcome of a batch of transfers, one result per requested transfer, in request order
+ */
+@XmlRootElement
+public class TransferBatchResult {
+
+    /** true if every transfer of the batch was committed */
+    private boolean committed;
+
+    private List<Item> results = new ArrayList<>();
+
+    public TransferBatchResult() { }
+
+    /**
+     * @return the outcome of every item of {@code batch}
+     */
+    public static TransferBatchResult of(TransferBatch batch) {
+        TransferBatchResult result = new TransferBatchResult();
+        result.committed = batch.isCommitted();
+        result.results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            result.results.add(new Item(batch.getTransfer(i), batch.getError(i)));
+        }
+        return result;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public List<Item> getResults() {
+        return results;
+    }
+
+    public void setCommitted(boolean committed) {
+        this.committed = committed;
+    }
+
+    public void setResults(List<Item> results) {
+        this.results = results;
+    }
+
+    /**
+     * outcome of one requested transfer: the committed transfer, or why it was rejected. Both are null for a transfer
+     * of an atomic batch that was not applied because of another one.
+     */
+    public static class Item {
+
+        private Transfer transfer;
+
+        private String error;
+
+        public Item() { }
+
+        public Item(Transfer transfer, String error) {
+            this.transfer = transfer;
+            this.error = error;
+        }
+
+        public Transfer getTransfer() {
+            return transfer;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setTransfer(Transfer transfer) {
+            this.transfer = transfer;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
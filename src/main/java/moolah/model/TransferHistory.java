@@ -0,0 +1,191 @@
+package moolah.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The transfers of one account, oldest first, in append-only chunks.
+ *
+ * Transfers are appended by one thread at a time, the one holding the account's lock, and read by any number of
+ * threads without locking: a transfer is stored in its chunk before the size that makes it visible is published.
+ * Chunks are fixed size and never copied, so appending costs the same however long the history.
+ *
+ * Pages are read backwards from a keyset cursor, the id of the last transfer of the previous page. Transfers made by
+ * {@link TransferManager} get time-ordered ids (see {@link TransferIds}) in the order they are appended, so the cursor
+ * is found by binary search and a page costs O(log n + limit). Should the history hold ids out of order, e.g. set by
+ * hand, the cursor is found by a linear scan instead.
+ */
+public final class TransferHistory {
+
+    static final int CHUNK_BITS = 6;
+
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** shared by accounts without transfers, never appended to */
+    public static final TransferHistory EMPTY = new TransferHistory();
+
+    private volatile Transfer[][] chunks = new Transfer[1][];
+
+    private volatile int size;
+
+    /** whether ids increase with position, i.e. whether the cursor can be binary searched */
+    private volatile boolean ordered = true;
+
+    /** ids of removed transfers, replaced as a whole on removal */
+    private volatile Set<UUID> removed = Collections.emptySet();
+
+    /**
+     * append {@code transfer}. Must not be called by two threads at once.
+     */
+    public void add(Transfer transfer) {
+        int position = size;
+        int chunk = position >>> CHUNK_BITS;
+        Transfer[][] directory = chunks;
+        if (chunk == directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+        }
+        if (directory[chunk] == null) {
+            directory[chunk] = new Transfer[CHUNK_SIZE];
+        }
+        directory[chunk][position & CHUNK_MASK] = transfer;
+        chunks = directory;
+        if (position > 0 && ordered && compare(get(directory, position - 1), transfer) >= 0) {
+            ordered = false;
+        }
+        size = position + 1;
+    }
+
+    /**
+     * hide {@code transfer} from the history. It is found by binary search when the history is in id order. Must not
+     * be called by two threads at once, nor concurrently with {@link #add(Transfer)}.
+     *
+     * @return true if the transfer was in the history
+     */
+    public boolean remove(Transfer transfer) {
+        if (removed.contains(transfer.getId())) {
+            return false;
+        }
+        if (indexOf(chunks, size, transfer) < 0) {
+            return false;
+        }
+        Set<UUID> updated = new HashSet<>(removed);
+        updated.add(transfer.getId());
+        removed = updated;
+        return true;
+    }
+
+    /**
+     * @return true if {@code transfer} is in the history and was not removed. It is found by binary search when the
+     * history is in id order.
+     */
+    public boolean contains(Transfer transfer) {
+        return !removed.contains(transfer.getId()) && indexOf(chunks, size, transfer) >= 0;
+    }
+
+    /**
+     * @return the position of {@code transfer}, -1 if it is not in the history
+     */
+    private int indexOf(Transfer[][] directory, int end, Transfer transfer) {
+        if (ordered && transfer.getId() != null) {
+            int position = find(directory, end, transfer.getId());
+            return position < end && transfer.equals(get(directory, position)) ? position : -1;
+        }
+        for (int i = end - 1; i >= 0; i--) {
+            if (transfer.equals(get(directory, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of transfers in the history
+     */
+    public int size() {
+        return size - removed.size();
+    }
+
+    /**
+     * @return every transfer, oldest first
+     */
+    public List<Transfer> toList() {
+        int end = size;
+        Transfer[][] directory = chunks;
+        Set<UUID> hidden = removed;
+        List<Transfer> list = new ArrayList<>(end);
+        for (int i = 0; i < end; i++) {
+            Transfer transfer = get(directory, i);
+            if (!hidden.contains(transfer.getId())) {
+                list.add(transfer);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param before id of the last transfer of the previous page, null for the first page
+     * @param limit  maximum number of transfers to return
+     * @param page   receives the transfers, newest first
+     * @return true if there are older transfers after the page
+     */
+    public boolean page(UUID before, int limit, List<Transfer> page) {
+        int end = size;
+        Transfer[][] directory = chunks;
+        Set<UUID> hidden = removed;
+        int position = before == null ? end : find(directory, end, before);
+        while (--position >= 0) {
+            Transfer transfer = get(directory, position);
+            if (hidden.contains(transfer.getId())) {
+                continue;
+            }
+            if (page.size() == limit) {
+                return true;
+            }
+            page.add(transfer);
+        }
+        return false;
+    }
+
+    /**
+     * @return the position the page before {@code id} ends at (exclusive), 0 if {@code id} is unknown and the history
+     * is not ordered
+     */
+    private int find(Transfer[][] directory, int end, UUID id) {
+        if (ordered) {
+            // first position whose id is not less than id
+            int low = 0;
+            int high = end;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (get(directory, middle).getId().compareTo(id) < 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+        for (int i = end - 1; i >= 0; i--) {
+            if (id.equals(get(directory, i).getId())) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static Transfer get(Transfer[][] directory, int position) {
+        return directory[position >>> CHUNK_BITS][position & CHUNK_MASK];
+    }
+
+    private static int compare(Transfer a, Transfer b) {
+        return a.getId() == null || b.getId() == null ? 0 : a.getId().compareTo(b.getId());
+    }
+}
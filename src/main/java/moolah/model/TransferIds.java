@@ -0,0 +1,50 @@
+package moolah.model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered transfer ids.
+ *
+ * Ids follow the layout of version 7 UUIDs: the most significant bits hold the creation time in epoch milliseconds,
+ * the version and a counter, the least significant bits are random. The generator is monotonic across threads: every
+ * id compares greater, with {@link UUID#compareTo(UUID)}, than all ids generated before it, even when several are
+ * generated in the same millisecond or the clock steps back.
+ */
+public final class TransferIds {
+
+    private static final int COUNTER_BITS = 12;
+
+    /** timestamp and counter of the last generated id, {@code millis << COUNTER_BITS | counter} */
+    private static final AtomicLong last = new AtomicLong();
+
+    private TransferIds() { }
+
+    /**
+     * @return a new id, greater than every id generated so far
+     */
+    public static UUID next() {
+        long now = System.currentTimeMillis() << COUNTER_BITS;
+        long previous;
+        long current;
+        do {
+            previous = last.get();
+            // a counter overflowing within a millisecond borrows from the next one, which keeps ids ordered
+            current = Math.max(now, previous + 1);
+        } while (!last.compareAndSet(previous, current));
+
+        long millis = current >>> COUNTER_BITS;
+        long counter = current & ((1L << COUNTER_BITS) - 1);
+        long msb = (millis << 16) | 0x7000L | counter;
+        long lsb = (ThreadLocalRandom.current().nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * @return the creation time in epoch milliseconds of an id made by {@link #next()}
+     */
+    public static long timestamp(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+}
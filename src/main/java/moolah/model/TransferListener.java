@@ -0,0 +1,19 @@
+package moolah.model;
+
+/**
+ * Notified by {@link TransferManager} of every transfer it applies.
+ *
+ * Register listeners with {@link TransferManager#addListener(TransferListener)}.
+ */
+public interface TransferListener {
+
+    /**
+     * Called right after {@code transfer} was applied, while both of its accounts are still locked: the balances of
+     * {@code transfer.getFrom()} and {@code transfer.getTo()} are the ones this transfer left them with.
+     *
+     * Implementations must be quick, must not block and must not throw.
+     *
+     * @param transfer the transfer that was applied
+     */
+    void transferCommitted(Transfer transfer);
+}
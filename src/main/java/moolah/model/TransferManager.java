@@ -1,15 +1,97 @@
 package moolah.model;
 
+import moolah.exceptions.AccountBalanceException;
 import moolah.exceptions.TransferException;
+import moolah.jfr.TransferApplyEvent;
+import moolah.jfr.TransferEvent;
+import moolah.jfr.TransferLockEvent;
+import moolah.jfr.TransferValidationEvent;
+import moolah.store.TransferIndex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * creates a Transfer object given the required parameters
  */
 public class TransferManager {
 
+    /** every transfer committed by {@link #doTransfer(Account, Account, Double, String)}, by id */
+    private static volatile TransferIndex index = new TransferIndex();
+
+    /** number of transfers committed, and of transfers rejected by reason, since startup */
+    private static final LongAdder committedCount = new LongAdder();
+    private static final LongAdder[] rejectedCounts = new LongAdder[TransferException.Reason.values().length];
+
+    static {
+        for (int i = 0; i < rejectedCounts.length; i++) {
+            rejectedCounts[i] = new LongAdder();
+        }
+    }
+
+    /** listeners notified of every applied transfer, replaced as a whole when a listener is added or removed */
+    private static volatile TransferListener[] listeners = new TransferListener[0];
+
+    /**
+     * @return the index of every committed transfer
+     */
+    public static TransferIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * replace the index of every committed transfer. Meant to be called at startup, before any transfer is committed
+     * or restored.
+     *
+     * @param transfers the index to use from now on
+     */
+    public static void setIndex(TransferIndex transfers) {
+        index = transfers;
+    }
+
+    /**
+     * @return the number of transfers committed since startup, batched ones included
+     */
+    public static long getCommittedCount() {
+        return committedCount.sum();
+    }
+
+    /**
+     * @return the number of transfers rejected for {@code reason} since startup, batched ones included
+     */
+    public static long getRejectedCount(TransferException.Reason reason) {
+        return rejectedCounts[reason.ordinal()].sum();
+    }
+
+    /**
+     * register {@code listener} to be notified of every transfer applied from now on
+     *
+     * @param listener the listener to add
+     */
+    public static synchronized void addListener(TransferListener listener) {
+        TransferListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * stop notifying {@code listener}
+     *
+     * @param listener the listener to remove
+     */
+    public static synchronized void removeListener(TransferListener listener) {
+        List<TransferListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        updated.remove(listener);
+        listeners = updated.toArray(new TransferListener[0]);
+    }
+
     /**
      * throws TransferException if:
      *
@@ -25,45 +107,309 @@ public class TransferManager {
      * @throws TransferException
      */
     public static void checkTransfer(Account from, Account to, Double amount) throws TransferException {
+        long amountMinor = toMinor(amount);
+        checkRequest(from, to, amountMinor);
+        if (from.getBalanceMinor() < amountMinor) {
+            throw insufficientFunds(from);
+        }
+    }
+
+    /**
+     * the checks of {@link #checkTransfer(Account, Account, Double)} that do not depend on balances
+     */
+    private static void checkRequest(Account from, Account to, long amount) throws TransferException {
         if (amount <= 0) {
-            throw new TransferException("Invalid amount. Transfer amount must be strictly positive.");
+            throw rejected(TransferException.Reason.INVALID_AMOUNT,
+                    "Invalid amount. Transfer amount must be strictly positive.");
         }
         if (from.equals(to)) {
-            throw new TransferException("Invalid transfer. 'to' and 'from' accounts are the same.");
+            throw rejected(TransferException.Reason.SAME_ACCOUNT,
+                    "Invalid transfer. 'to' and 'from' accounts are the same.");
+        }
+    }
+
+    /**
+     * @return {@code amount} in minor units, 0 if null
+     * @throws TransferException if {@code amount} is not finite or too large
+     */
+    public static long toMinor(Double amount) {
+        try {
+            return amount == null ? 0 : Money.toMinor(amount);
         }
-        if (from.getBalance() < amount) {
-            throw new TransferException(String.format("Account %s does not contain enough funds.", from));
+        catch (ArithmeticException exc) {
+            throw rejected(TransferException.Reason.INVALID_AMOUNT, "Invalid amount. " + exc.getMessage() + ".");
         }
     }
 
+    private static TransferException balanceOverflow(Account to) {
+        return rejected(TransferException.Reason.BALANCE_OVERFLOW,
+                String.format("Account %s cannot hold the amount.", to));
+    }
+
+    private static TransferException insufficientFunds(Account from) {
+        return rejected(TransferException.Reason.INSUFFICIENT_FUNDS,
+                String.format("Account %s does not contain enough funds.", from));
+    }
+
     /**
+     * count a rejection for {@code reason}
      *
-     * @param from
-     * @param to
-     * @param amount
-     * @param name
-     * @return
+     * @return the exception to throw for it
+     */
+    private static TransferException rejected(TransferException.Reason reason, String message) {
+        rejectedCounts[reason.ordinal()].increment();
+        return new TransferException(reason, message);
+    }
+
+    /**
+     * transfer {@code amount} from account {@code from} to account {@code to}
+     *
+     * Both accounts are locked, in a global order, for the whole check-and-move so that no one observes the money
+     * debited from one account but not yet credited to the other, and transfers in opposite directions cannot
+     * deadlock. The debit itself is an atomic "withdraw if balance >= amount", so concurrent transfers out of the same
+     * account can never overdraw it.
+     *
+     * The transfer and its validation, lock wait and apply phases are recorded as flight recorder events, see
+     * {@link TransferEvent}.
+     *
+     * @param from account to transfer money from
+     * @param to account to transfer money to
+     * @param amount amount to be transferred between accounts
+     * @param name name of the transfer
+     * @return the Transfer object recording the transfer
+     * @throws TransferException if the transfer is not valid, see {@link #checkTransfer(Account, Account, Double)}
      */
     public static Transfer doTransfer(Account from, Account to, Double amount, String name) {
-        checkTransfer(from, to, amount);
+        return doTransfer(from, to, toMinor(amount), name);
+    }
+
+    /**
+     * transfer {@code amountMinor} from account {@code from} to account {@code to}, see
+     * {@link #doTransfer(Account, Account, Double, String)}
+     *
+     * @param amountMinor amount to be transferred between accounts, in minor units
+     */
+    public static Transfer doTransfer(Account from, Account to, long amountMinor, String name) {
+        TransferEvent event = new TransferEvent();
+        event.begin();
+        Transfer transfer = null;
+        TransferException rejection = null;
+        try {
+            TransferValidationEvent validation = new TransferValidationEvent();
+            validation.begin();
+            try {
+                checkRequest(from, to, amountMinor);
+            }
+            finally {
+                validation.end(from.getId(), to.getId());
+            }
+
+            // create the Transfer object before taking any lock to keep the critical section short
+            Transfer created = new Transfer();
+            created.setFrom(from);
+            created.setTo(to);
+            created.setAmountMinor(amountMinor);
+            created.setName(name);
+
+            int fromStripe = AccountLocks.stripe(from.getId());
+            int toStripe = AccountLocks.stripe(to.getId());
+            TransferLockEvent lock = new TransferLockEvent();
+            lock.begin();
+            AccountLocks.lockBoth(fromStripe, toStripe);
+            lock.end(from.getId(), to.getId());
+            TransferApplyEvent apply = new TransferApplyEvent();
+            apply.begin();
+            try {
+                commit(created);
+            }
+            finally {
+                AccountLocks.unlockBoth(fromStripe, toStripe);
+                apply.end(from.getId(), to.getId());
+            }
+            transfer = created;
+            return transfer;
+        }
+        catch (TransferException exc) {
+            rejection = exc;
+            throw exc;
+        }
+        finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.transferId = transfer == null ? null : transfer.getId().toString();
+                event.from = String.valueOf(from.getId());
+                event.to = String.valueOf(to.getId());
+                event.amount = Money.toMajor(amountMinor);
+                event.outcome = transfer != null ? "committed"
+                        : rejection != null && rejection.getReason() != null
+                        ? rejection.getReason().name().toLowerCase(Locale.ROOT) : "error";
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * apply every transfer of {@code batch}, in order, recording the outcome of each item in the batch
+     *
+     * The stripes of all the accounts of the batch are locked once, in ascending order, for the whole batch: like
+     * {@link #doTransfer(Account, Account, Double, String)} it cannot deadlock with other transfers or batches, and
+     * it pays for locking once rather than once per item.
+     *
+     * In {@link TransferBatch.Mode#ATOMIC} mode every item is checked first against the balances the items before it
+     * leave, and nothing is applied unless all of them pass; the first failing item gets the error. Items rejected
+     * before the batch was applied make the whole batch fail. In {@link TransferBatch.Mode#INDEPENDENT} mode items are
+     * applied one after the other and a failing item does not stop the ones after it.
+     *
+     * @param batch the transfers to apply
+     * @return true if every item was committed
+     */
+    public static boolean doBatch(TransferBatch batch) {
+        int size = batch.size();
+        if (batch.getMode() == TransferBatch.Mode.ATOMIC) {
+            for (int i = 0; i < size; i++) {
+                if (batch.getError(i) != null) {
+                    return false;
+                }
+            }
+        }
+
+        // create the Transfer objects and check what does not depend on balances before taking any lock
+        Transfer[] transfers = new Transfer[size];
+        int[] stripes = new int[2 * size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (batch.getError(i) != null) {
+                continue;
+            }
+            Account from = batch.getFrom(i);
+            Account to = batch.getTo(i);
+            long amountMinor;
+            try {
+                amountMinor = toMinor(batch.getAmount(i));
+                checkRequest(from, to, amountMinor);
+            }
+            catch (TransferException exc) {
+                batch.rejected(i, exc.getMessage());
+                if (batch.getMode() == TransferBatch.Mode.ATOMIC) {
+                    return false;
+                }
+                continue;
+            }
+            Transfer transfer = new Transfer();
+            transfer.setFrom(from);
+            transfer.setTo(to);
+            transfer.setAmountMinor(amountMinor);
+            transfer.setName(batch.getName(i));
+            transfers[i] = transfer;
+            stripes[count++] = AccountLocks.stripe(from.getId());
+            stripes[count++] = AccountLocks.stripe(to.getId());
+        }
+
+        // the global order of AccountLocks, each stripe once
+        Arrays.sort(stripes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+
+        int locked = 0;
+        try {
+            for (; locked < distinct; locked++) {
+                AccountLocks.lock(stripes[locked]);
+            }
+            if (batch.getMode() == TransferBatch.Mode.ATOMIC && !checkBalances(batch, transfers)) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (transfers[i] == null) {
+                    continue;
+                }
+                try {
+                    commit(transfers[i]);
+                    batch.committed(i, transfers[i]);
+                }
+                catch (TransferException exc) {
+                    batch.rejected(i, exc.getMessage());
+                }
+            }
+        }
+        finally {
+            while (locked > 0) {
+                AccountLocks.unlock(stripes[--locked]);
+            }
+        }
+        return batch.isCommitted();
+    }
+
+    /**
+     * replay the debits and credits of {@code transfers} on the current balances, without applying them. Must be
+     * called while all their accounts are locked.
+     *
+     * @return true if no transfer would overdraw its account or overflow the other, otherwise the first that would is
+     * rejected in {@code batch}
+     */
+    private static boolean checkBalances(TransferBatch batch, Transfer[] transfers) {
+        Map<UUID, Long> balances = new HashMap<>();
+        for (int i = 0; i < transfers.length; i++) {
+            Transfer transfer = transfers[i];
+            Account from = transfer.getFrom();
+            Account to = transfer.getTo();
+            long fromBalance = balances.getOrDefault(from.getId(), from.getBalanceMinor());
+            if (fromBalance < transfer.getAmountMinor()) {
+                batch.rejected(i, insufficientFunds(from).getMessage());
+                return false;
+            }
+            long toBalance = balances.getOrDefault(to.getId(), to.getBalanceMinor());
+            if (toBalance > Long.MAX_VALUE - transfer.getAmountMinor()) {
+                batch.rejected(i, balanceOverflow(to).getMessage());
+                return false;
+            }
+            balances.put(from.getId(), fromBalance - transfer.getAmountMinor());
+            balances.put(to.getId(), toBalance + transfer.getAmountMinor());
+        }
+        return true;
+    }
+
+    /**
+     * apply {@code transfer}, which has passed {@link #checkRequest(Account, Account, long)}. Must be called while
+     * both of its accounts are locked.
+     *
+     * @throws TransferException if the 'from' account does not contain enough funds or the 'to' account cannot hold
+     * the amount, nothing is applied then
+     */
+    private static void commit(Transfer transfer) {
+        Account from = transfer.getFrom();
+        Account to = transfer.getTo();
+        long amountMinor = transfer.getAmountMinor();
 
-        // create and set Transfer object
-        Transfer transfer = new Transfer();
-        transfer.setId(UUID.randomUUID());
-        transfer.setFrom(from);
-        transfer.setTo(to);
-        transfer.setDate(new Date());
-        transfer.setAmount(amount);
-        transfer.setName(name);
+        // ids are time-ordered: taking one under the locks keeps each account's history in id order
+        UUID id = TransferIds.next();
+        transfer.setId(id);
+        transfer.setDate(new Date(TransferIds.timestamp(id)));
 
-        // change amounts
-        from.withdraw(amount);
-        to.deposit(amount);
+        // check and debit in one atomic step, then credit
+        if (!from.tryWithdrawMinor(amountMinor)) {
+            throw insufficientFunds(from);
+        }
+        try {
+            to.depositMinor(amountMinor);
+        }
+        catch (AccountBalanceException exc) {
+            // nothing else moved either account while locked, so the debit can be given back
+            from.depositMinor(amountMinor);
+            throw balanceOverflow(to);
+        }
 
         // add the transfer object to both 'from' and 'to' accounts
         from.addTransfer(transfer);
         to.addTransfer(transfer);
+        index.add(transfer);
+        committedCount.increment();
 
-        return transfer;
+        for (TransferListener listener : listeners) {
+            listener.transferCommitted(transfer);
+        }
     }
 }
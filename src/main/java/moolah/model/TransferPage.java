@@ -0,0 +1,35 @@
+package moolah.model;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * POJO page of the transfer history of an account, newest first
+ */
+@XmlRootElement
+public class TransferPage {
+
+    private List<Transfer> transfers = new ArrayList<>();
+
+    /** cursor to pass to get the next, older page, null if this page is the last */
+    private String next;
+
+    public TransferPage() { }
+
+    public List<Transfer> getTransfers() {
+        return transfers;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setTransfers(List<Transfer> transfers) {
+        this.transfers = transfers;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -0,0 +1,61 @@
+package moolah.model;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * POJO transfer requested by a client, before its accounts are resolved
+ */
+@XmlRootElement
+public class TransferRequest {
+
+    /** id of the account to transfer money from */
+    private String from;
+
+    /** id of the account to transfer money to */
+    private String to;
+
+    private Double amount;
+
+    private String name;
+
+    public TransferRequest() { }
+
+    public TransferRequest(String from, String to, Double amount, String name) {
+        this.from = from;
+        this.to = to;
+        this.amount = amount;
+        this.name = name;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public Double getAmount() {
+        return amount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+
+    public void setTo(String to) {
+        this.to = to;
+    }
+
+    public void setAmount(Double amount) {
+        this.amount = amount;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
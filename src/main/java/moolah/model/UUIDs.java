@@ -0,0 +1,102 @@
+package moolah.model;
+
+import java.util.Arrays;
+
+/**
+ * Parses and formats ids in the canonical textual form of UUIDs, {@code xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx},
+ * straight between a character buffer and their two halves, without building a String or a {@link java.util.UUID}.
+ */
+public final class UUIDs {
+
+    /** length of the canonical form */
+    public static final int LENGTH = 36;
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /** value of each ASCII hex digit, -1 for other characters */
+    private static final byte[] HEX = new byte[128];
+
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX['a' + i] = (byte) (10 + i);
+            HEX['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private UUIDs() { }
+
+    /**
+     * @param chars  buffer holding a canonical UUID at {@code offset}
+     * @param offset index of the first character of the UUID
+     * @return the most significant bits of the UUID
+     * @throws IllegalArgumentException if the first half of the UUID is malformed
+     */
+    public static long mostSignificantBits(char[] chars, int offset) {
+        checkDash(chars, offset + 8);
+        checkDash(chars, offset + 13);
+        return hex(chars, offset, 8) << 32 | hex(chars, offset + 9, 4) << 16 | hex(chars, offset + 14, 4);
+    }
+
+    /**
+     * @param chars  buffer holding a canonical UUID at {@code offset}
+     * @param offset index of the first character of the UUID
+     * @return the least significant bits of the UUID
+     * @throws IllegalArgumentException if the second half of the UUID is malformed
+     */
+    public static long leastSignificantBits(char[] chars, int offset) {
+        checkDash(chars, offset + 18);
+        checkDash(chars, offset + 23);
+        return hex(chars, offset + 19, 4) << 48 | hex(chars, offset + 24, 12);
+    }
+
+    /**
+     * write the canonical, lower-case form of the UUID made of {@code msb} and {@code lsb} to {@code chars}
+     *
+     * @param chars  buffer with room for {@link #LENGTH} characters at {@code offset}
+     * @param offset index the first character is written at
+     */
+    public static void format(long msb, long lsb, char[] chars, int offset) {
+        toHex(msb >>> 32, chars, offset, 8);
+        chars[offset + 8] = '-';
+        toHex(msb >>> 16, chars, offset + 9, 4);
+        chars[offset + 13] = '-';
+        toHex(msb, chars, offset + 14, 4);
+        chars[offset + 18] = '-';
+        toHex(lsb >>> 48, chars, offset + 19, 4);
+        chars[offset + 23] = '-';
+        toHex(lsb, chars, offset + 24, 12);
+    }
+
+    /**
+     * write the {@code length} lowest hex digits of {@code value} to {@code chars}, most significant first
+     */
+    private static void toHex(long value, char[] chars, int offset, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            chars[i] = DIGITS[(int) value & 0xf];
+            value >>>= 4;
+        }
+    }
+
+    private static long hex(char[] chars, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            int digit = c < HEX.length ? HEX[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid UUID: " + new String(chars, offset, length));
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private static void checkDash(char[] chars, int index) {
+        if (chars[index] != '-') {
+            throw new IllegalArgumentException("Invalid UUID: '-' expected at position " + index);
+        }
+    }
+}
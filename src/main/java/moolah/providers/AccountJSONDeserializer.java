@@ -2,22 +2,55 @@ package moolah.providers;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
+import moolah.exceptions.UnknownAccountException;
 import moolah.model.Account;
-import moolah.services.AccountService;
+import moolah.model.UUIDs;
 
 import java.io.IOException;
 import java.util.UUID;
 
 /**
  * Class defining how to deserialise an Account object from a given JSON value (assumed a string id) here
+ *
+ * Ids in canonical form are parsed straight from the parser's character buffer and resolved by an
+ * {@link AccountResolver} from their two halves, so that reading a reference builds neither a String nor a UUID.
+ * Unknown ids are reported with an {@link UnknownAccountException}.
  */
 public class AccountJSONDeserializer extends JsonDeserializer<Account> {
     @Override
     public Account deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
-        String id = p.getValueAsString();
-        AccountService resource = new AccountService(); // create object = get the singleton resource
-        return resource.getAccount(UUID.fromString(id));
+        if (p.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return (Account) ctxt.handleUnexpectedToken(Account.class, p);
+        }
+        long msb;
+        long lsb;
+        try {
+            if (p.getTextLength() == UUIDs.LENGTH) {
+                char[] chars = p.getTextCharacters();
+                int offset = p.getTextOffset();
+                msb = UUIDs.mostSignificantBits(chars, offset);
+                lsb = UUIDs.leastSignificantBits(chars, offset);
+            }
+            else {
+                // not canonical, e.g. without leading zeros: leave it to UUID
+                UUID id = UUID.fromString(p.getText());
+                msb = id.getMostSignificantBits();
+                lsb = id.getLeastSignificantBits();
+            }
+        }
+        catch (IllegalArgumentException exc) {
+            throw new UnknownAccountException(p, "Invalid account id: " + exc.getMessage());
+        }
+
+        Object attribute = ctxt.getAttribute(AccountResolver.class);
+        AccountResolver resolver = attribute == null ? AccountResolver.STORE : (AccountResolver) attribute;
+        Account account = resolver.resolve(msb, lsb);
+        if (account == null) {
+            throw new UnknownAccountException(p, "Account not found: " + new UUID(msb, lsb));
+        }
+        return account;
     }
 }
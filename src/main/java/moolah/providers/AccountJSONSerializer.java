@@ -17,6 +17,6 @@ public class AccountJSONSerializer extends JsonSerializer<Account> {
 
     @Override
     public void serialize(Account value, JsonGenerator gen, SerializerProvider serializers) throws IOException, JsonProcessingException {
-        gen.writeString(value.getId().toString());
+        JsonValues.writeId(value.getId(), gen);
     }
 }
@@ -0,0 +1,24 @@
+package moolah.providers;
+
+import moolah.model.Account;
+import moolah.services.AccountService;
+
+/**
+ * Resolves the account ids read by {@link AccountJSONDeserializer} to accounts.
+ *
+ * The deserializer uses {@link #STORE} unless a reader carries another resolver as the attribute
+ * {@code AccountResolver.class}, e.g. {@code mapper.readerFor(Transfer.class).withAttribute(AccountResolver.class, r)}.
+ */
+@FunctionalInterface
+public interface AccountResolver {
+
+    /** resolves ids against the account store of {@link AccountService} */
+    AccountResolver STORE = (msb, lsb) -> AccountService.getAccountStore().get(msb, lsb);
+
+    /**
+     * @param msb most significant bits of the id
+     * @param lsb least significant bits of the id
+     * @return the account with that id, null if there is none
+     */
+    Account resolve(long msb, long lsb);
+}
@@ -0,0 +1,45 @@
+package moolah.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import moolah.model.Account;
+
+import java.io.IOException;
+
+/**
+ * Writes an Account as the JSON object {@code {"id", "name", "owner", "balance"}}, field by field, without going
+ * through Jackson's reflective bean serializer: field names are pre-encoded, the id is formatted from its two halves
+ * and the balance is written in fixed point from its minor units.
+ */
+public class AccountSerializer extends JsonSerializer<Account> {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString OWNER = new SerializedString("owner");
+    private static final SerializableString BALANCE = new SerializedString("balance");
+
+    @Override
+    public void serialize(Account value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        write(value, gen);
+    }
+
+    /**
+     * write {@code account} to {@code gen}, for callers writing many accounts to the same generator without a
+     * serializer provider
+     */
+    public static void write(Account account, JsonGenerator gen) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(ID);
+        JsonValues.writeId(account.getId(), gen);
+        gen.writeFieldName(NAME);
+        gen.writeString(account.getName());
+        gen.writeFieldName(OWNER);
+        gen.writeString(account.getOwner());
+        gen.writeFieldName(BALANCE);
+        JsonValues.writeAmount(account.getBalanceMinor(), gen);
+        gen.writeEndObject();
+    }
+}
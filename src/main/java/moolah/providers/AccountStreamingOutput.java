@@ -0,0 +1,60 @@
+package moolah.providers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import moolah.model.Account;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes accounts to a response body one at a time, as they are iterated, so that no listing is ever held in memory
+ * in full whatever the number of accounts.
+ *
+ * Accounts are written either as a JSON array or as newline-delimited JSON, one account per line.
+ */
+public class AccountStreamingOutput implements StreamingOutput {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final Iterable<Account> accounts;
+
+    private final boolean lines;
+
+    /**
+     * @param accounts the accounts to write, iterated once while the response is written
+     * @param lines    true for newline-delimited JSON, false for a JSON array
+     */
+    public AccountStreamingOutput(Iterable<Account> accounts, boolean lines) {
+        this.accounts = accounts;
+        this.lines = lines;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+            // the generator buffers a few kilobytes and hands them to the container, which sends them as they fill
+            if (lines) {
+                generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            }
+            else {
+                generator.writeStartArray();
+            }
+            boolean empty = true;
+            for (Account account : accounts) {
+                // straight to the generator: no serializer provider is set up per account
+                AccountSerializer.write(account, generator);
+                empty = false;
+            }
+            if (!lines) {
+                generator.writeEndArray();
+            }
+            else if (!empty) {
+                generator.writeRaw('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package moolah.providers;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Answers conditional requests for resources whose entity tag is known once the request is matched, e.g. the
+ * attributes of an account served through a sub-resource locator, which cannot return a response of its own.
+ *
+ * The locator stores the tag as the {@link #TAG} property of the request. After matching, a request whose
+ * preconditions hold no longer (a GET with a matching {@code If-None-Match}) is answered with a 304 before the resource
+ * method runs, so nothing is read or serialized. Other responses get the tag as their {@code ETag} header.
+ */
+@Provider
+public class EntityTagFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    /** property of the request holding the {@link EntityTag} of the matched resource */
+    public static final String TAG = EntityTagFilter.class.getName() + ".tag";
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        Object tag = request.getProperty(TAG);
+        if (tag == null) {
+            return;
+        }
+        Response.ResponseBuilder notModified = request.getRequest().evaluatePreconditions((EntityTag) tag);
+        if (notModified != null) {
+            request.abortWith(notModified.build());
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object tag = request.getProperty(TAG);
+        if (tag != null && response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL
+                && !response.getHeaders().containsKey(HttpHeaders.ETAG)) {
+            response.getHeaders().putSingle(HttpHeaders.ETAG, tag);
+        }
+    }
+}
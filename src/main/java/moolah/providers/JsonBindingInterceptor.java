@@ -0,0 +1,62 @@
+package moolah.providers;
+
+import moolah.jfr.JsonBindingEvent;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Times the reading and writing of JSON entities as {@link JsonBindingEvent}s, for flight recordings.
+ */
+@Provider
+public class JsonBindingInterceptor implements ReaderInterceptor, WriterInterceptor {
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        if (!isJson(context.getMediaType())) {
+            return context.proceed();
+        }
+        JsonBindingEvent event = new JsonBindingEvent();
+        event.begin();
+        try {
+            return context.proceed();
+        }
+        finally {
+            commit(event, "read", context.getType());
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        if (!isJson(context.getMediaType())) {
+            context.proceed();
+            return;
+        }
+        JsonBindingEvent event = new JsonBindingEvent();
+        event.begin();
+        try {
+            context.proceed();
+        }
+        finally {
+            commit(event, "write", context.getType());
+        }
+    }
+
+    private static boolean isJson(MediaType mediaType) {
+        return mediaType != null && mediaType.getSubtype().endsWith("json");
+    }
+
+    private static void commit(JsonBindingEvent event, String direction, Class<?> type) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.direction = direction;
+            event.type = type.getSimpleName();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package moolah.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import moolah.model.Money;
+import moolah.model.UUIDs;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Writes ids and amounts to a {@link JsonGenerator} from a per-thread character buffer, so that no String is built for
+ * them on the way out.
+ */
+final class JsonValues {
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[UUIDs.LENGTH]);
+
+    private JsonValues() { }
+
+    /**
+     * write {@code id} as a JSON string, or null
+     */
+    static void writeId(UUID id, JsonGenerator gen) throws IOException {
+        if (id == null) {
+            gen.writeNull();
+            return;
+        }
+        char[] chars = BUFFER.get();
+        UUIDs.format(id.getMostSignificantBits(), id.getLeastSignificantBits(), chars, 0);
+        gen.writeString(chars, 0, UUIDs.LENGTH);
+    }
+
+    /**
+     * write {@code minor} in major units as a JSON number, see {@link Money#format(long, char[], int)}. Binary
+     * formats, which take no number text, get the amount as a double.
+     */
+    static void writeAmount(long minor, JsonGenerator gen) throws IOException {
+        if (!gen.canWriteFormattedNumbers()) {
+            gen.writeNumber(Money.toMajor(minor));
+            return;
+        }
+        char[] chars = BUFFER.get();
+        gen.writeRawValue(chars, 0, Money.format(minor, chars, 0));
+    }
+}
@@ -0,0 +1,88 @@
+package moolah.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Reads and writes entities in Smile, the binary encoding of the JSON data model, for clients that send or accept
+ * {@value #APPLICATION_SMILE}.
+ *
+ * Entities go through the same Jackson annotations, serializers and deserializers as JSON, so a Smile payload holds
+ * exactly the fields of the JSON one; only the encoding differs. Field names and short strings are back-referenced
+ * rather than repeated and numbers are written in binary, which makes payloads smaller and much cheaper to parse.
+ *
+ * The writer declares no media type, so that it is never picked for resource methods that do not produce Smile
+ * themselves: it only writes once Smile has been negotiated, see {@link #isWriteable}.
+ */
+@Provider
+@Consumes(SmileProvider.APPLICATION_SMILE)
+public class SmileProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE_TYPE = MediaType.valueOf(APPLICATION_SMILE);
+
+    /**
+     * short string values are back-referenced as well as field names: account ids repeat throughout batches and
+     * transfer listings. The container owns the entity streams: Jackson must not close them.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper(new SmileFactory()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+
+    /**
+     * @return the mapper reading and writing Smile, configured as this provider uses it
+     */
+    public static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isSmile(mediaType) && type != InputStream.class;
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                           MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        return MAPPER.readerFor(MAPPER.constructType(genericType)).readValue(entityStream);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isSmile(mediaType) && !StreamingOutput.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        MAPPER.writerFor(MAPPER.constructType(genericType)).writeValue(entityStream, value);
+    }
+
+    private static boolean isSmile(MediaType mediaType) {
+        return mediaType != null && APPLICATION_SMILE_TYPE.getType().equalsIgnoreCase(mediaType.getType())
+                && APPLICATION_SMILE_TYPE.getSubtype().equalsIgnoreCase(mediaType.getSubtype());
+    }
+}
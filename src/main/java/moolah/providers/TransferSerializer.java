@@ -0,0 +1,60 @@
+package moolah.providers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import moolah.model.Account;
+import moolah.model.Transfer;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Writes a Transfer as the JSON object {@code {"id", "from", "to", "amount", "name", "date"}}, field by field,
+ * without going through Jackson's reflective bean serializer: accounts are written as their ids, the amount in fixed
+ * point from its minor units and the date as epoch milliseconds.
+ */
+public class TransferSerializer extends JsonSerializer<Transfer> {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString FROM = new SerializedString("from");
+    private static final SerializableString TO = new SerializedString("to");
+    private static final SerializableString AMOUNT = new SerializedString("amount");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString DATE = new SerializedString("date");
+
+    @Override
+    public void serialize(Transfer value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(ID);
+        JsonValues.writeId(value.getId(), gen);
+        gen.writeFieldName(FROM);
+        writeAccount(value.getFrom(), gen);
+        gen.writeFieldName(TO);
+        writeAccount(value.getTo(), gen);
+        gen.writeFieldName(AMOUNT);
+        JsonValues.writeAmount(value.getAmountMinor(), gen);
+        gen.writeFieldName(NAME);
+        gen.writeString(value.getName());
+        gen.writeFieldName(DATE);
+        Date date = value.getDate();
+        if (date == null) {
+            gen.writeNull();
+        }
+        else {
+            gen.writeNumber(date.getTime());
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeAccount(Account account, JsonGenerator gen) throws IOException {
+        if (account == null) {
+            gen.writeNull();
+        }
+        else {
+            JsonValues.writeId(account.getId(), gen);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package moolah.services;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import moolah.exceptions.AccountBalanceException;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the accounts of an upload while it is read, writing the result of each to the response, see
+ * {@link AccountService#createAccountsFromLines(InputStream)}.
+ *
+ * At most {@value #BATCH_SIZE} accounts are held at a time: each batch is created, made durable with a single wait on
+ * the journal and acknowledged before the next one is read.
+ */
+class AccountImport implements StreamingOutput {
+
+    /** number of accounts created and acknowledged together */
+    static final int BATCH_SIZE = 1000;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+
+    private final AccountService service;
+
+    private final InputStream upload;
+
+    private final boolean lines;
+
+    /** line numbers of the current batch, with the account to create or the error of each */
+    private final List<Integer> batchLines = new ArrayList<>(BATCH_SIZE);
+
+    private final List<Account> batchAccounts = new ArrayList<>(BATCH_SIZE);
+
+    private final List<String> batchErrors = new ArrayList<>(BATCH_SIZE);
+
+    private final List<Account> toCreate = new ArrayList<>(BATCH_SIZE);
+
+    private JsonGenerator generator;
+
+    /**
+     * @param lines true if {@code upload} is newline-delimited JSON, false if it is a JSON array
+     */
+    AccountImport(AccountService service, InputStream upload, boolean lines) {
+        this.service = service;
+        this.upload = upload;
+        this.lines = lines;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            this.generator = generator;
+            if (lines) {
+                readLines();
+            }
+            else {
+                readArray();
+            }
+            flush();
+        }
+    }
+
+    private void readLines() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(upload, StandardCharsets.UTF_8));
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Account account;
+            try {
+                account = ACCOUNT_READER.readValue(line);
+            }
+            catch (IOException exc) {
+                writeError(number, "Malformed account");
+                continue;
+            }
+            add(number, account);
+        }
+    }
+
+    private void readArray() throws IOException {
+        JsonParser parser = MAPPER.getFactory().createParser(upload);
+        int number = 0;
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                writeError(1, "Expected a JSON array of accounts");
+                return;
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                number++;
+                add(number, ACCOUNT_READER.readValue(parser));
+            }
+        }
+        catch (IOException exc) {
+            // the rest of the array cannot be told apart from the malformed part
+            writeError(number + 1, "Malformed account, import stopped");
+        }
+    }
+
+    private void add(int number, Account account) throws IOException {
+        if (account == null) {
+            writeError(number, "Malformed account");
+            return;
+        }
+        try {
+            add(number, AccountFactory.createAccount(account), null);
+        }
+        catch (AccountBalanceException exc) {
+            writeError(number, exc.getMessage());
+        }
+    }
+
+    private void writeError(int number, String error) throws IOException {
+        add(number, null, error);
+    }
+
+    private void add(int number, Account account, String error) throws IOException {
+        batchLines.add(number);
+        batchAccounts.add(account);
+        batchErrors.add(error);
+        if (batchLines.size() == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * create the accounts of the current batch and write the results of the batch
+     */
+    private void flush() throws IOException {
+        for (Account account : batchAccounts) {
+            if (account != null) {
+                toCreate.add(account);
+            }
+        }
+        service.addAccounts(toCreate);
+        for (int i = 0; i < batchLines.size(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("line", batchLines.get(i));
+            if (batchAccounts.get(i) != null) {
+                generator.writeStringField("id", batchAccounts.get(i).getId().toString());
+            }
+            else {
+                generator.writeStringField("error", batchErrors.get(i));
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+        batchLines.clear();
+        batchAccounts.clear();
+        batchErrors.clear();
+        toCreate.clear();
+        generator.flush();
+    }
+}
@@ -1,19 +1,44 @@
 package moolah.services;
 
+import moolah.engine.LockingTransferEngine;
+import moolah.engine.TransferEngine;
 import moolah.exceptions.AccountBalanceException;
+import moolah.exceptions.IdempotencyException;
 import moolah.exceptions.TransferException;
 import moolah.exceptions.web.BadRequestException;
 import moolah.exceptions.web.NotFoundException;
+import moolah.exceptions.web.PreconditionFailedException;
+import moolah.jfr.AccountLookupEvent;
+import moolah.jfr.TransferSyncEvent;
+import moolah.journal.Journal;
 import moolah.model.Account;
+import moolah.model.AccountLocks;
 import moolah.model.AccountFactory;
 import moolah.model.Transfer;
-import moolah.model.TransferManager;
+import moolah.model.TransferPage;
+import moolah.providers.AccountStreamingOutput;
+import moolah.providers.EntityTagFilter;
+import moolah.providers.SmileProvider;
+import moolah.store.AccountStore;
+import moolah.store.IdempotencyCache;
+import moolah.store.StripedAccountStore;
 
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.InputStream;
 import java.net.URI;
+import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static moolah.services.AccountService.ACCOUNTS_ROOT;
 
@@ -31,42 +56,304 @@ public class AccountService {
     public static final String ACCOUNTS_ACCOUNT_ID = "/{id}";
     public static final String ACCOUNTS_ACCOUNT_PARAM = "/{id}/p";
     public static final String ACCOUNTS_CREATE = "/";
+    public static final String ACCOUNTS_BULK = "/bulk";
     public static final String ACCOUNTS_UPDATE = "/{id}";
     public static final String ACCOUNTS_TRANSFER = "/{fromId}/transfer/{toId}";
+    public static final String ACCOUNTS_TRANSFERS = "/{id}/transfers";
+
+    /** number of transfers in a page of history when no limit is given, and the largest limit accepted */
+    public static final int TRANSFERS_DEFAULT_LIMIT = 50;
+    public static final int TRANSFERS_MAX_LIMIT = 1000;
+
+    /** number of accounts in a page of the listing when only a cursor is given, and the largest limit accepted */
+    public static final int ACCOUNTS_DEFAULT_LIMIT = 100;
+    public static final int ACCOUNTS_MAX_LIMIT = 10000;
+
+    /** the binary wire format, offered below JSON so that JSON stays the default, see {@link SmileProvider} */
+    public static final String BINARY = SmileProvider.APPLICATION_SMILE + ";qs=0.9";
+
+    /** header carrying the idempotency key of a transfer request */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    /** transfer threads, requests that can wait for one, and seconds rejected clients are told to wait, when not configured */
+    public static final int DEFAULT_TRANSFER_THREADS = 32;
+    public static final int DEFAULT_TRANSFER_QUEUE_SIZE = 1024;
+    public static final long DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+    /** number of idempotency keys held and seconds each is held for, when not configured */
+    public static final int DEFAULT_IDEMPOTENCY_KEYS = 100000;
+    public static final long DEFAULT_IDEMPOTENCY_TTL_SECONDS = 86400;
+
+    /**
+     * identifies this run of the application in entity tags: versions start over when accounts are recovered at
+     * startup, so a tag from an earlier run must not match
+     */
+    private static final String ETAG_RUN = Long.toHexString(new SecureRandom().nextLong());
+
+    /**
+     * stores all created accounts, shared by all request threads
+     */
+    private static volatile AccountStore accounts = new StripedAccountStore();
 
     /**
-     * stores all created accounts
+     * executes the transfers requested through this service
      */
-    private static Map<UUID, Account> accounts = new HashMap<>();
+    private static volatile TransferEngine transferEngine = new LockingTransferEngine();
 
     /**
-     * stores an account in the {@code accounts} HashMap
+     * runs the requests that change balances, off the container's threads
+     */
+    private static volatile TransferExecutor transferExecutor = new TransferExecutor(DEFAULT_TRANSFER_THREADS,
+            DEFAULT_TRANSFER_QUEUE_SIZE, DEFAULT_RETRY_AFTER_SECONDS);
+
+    /**
+     * outcomes of the transfers requested with an idempotency key
+     */
+    private static volatile IdempotencyCache<Transfer> idempotency =
+            new IdempotencyCache<>(DEFAULT_IDEMPOTENCY_KEYS, TimeUnit.SECONDS.toMillis(DEFAULT_IDEMPOTENCY_TTL_SECONDS));
+
+    /**
+     * journal recording every change before it is acknowledged, null when changes are not journaled
+     */
+    private static volatile Journal journal;
+
+    /**
+     * @return the store holding all created accounts
+     */
+    public static AccountStore getAccountStore() {
+        return accounts;
+    }
+
+    /**
+     * replace the store holding all created accounts. Meant to be called once at startup, before the server accepts
+     * requests.
+     *
+     * @param store the store to use from now on
+     */
+    public static void setAccountStore(AccountStore store) {
+        accounts = store;
+    }
+
+    /**
+     * @return the engine executing the transfers requested through this service
+     */
+    public static TransferEngine getTransferEngine() {
+        return transferEngine;
+    }
+
+    /**
+     * replace the engine executing the transfers requested through this service. Meant to be called once at startup,
+     * before the server accepts requests.
+     *
+     * @param engine the engine to use from now on
+     */
+    public static void setTransferEngine(TransferEngine engine) {
+        transferEngine = engine;
+    }
+
+    /**
+     * @return the executor running the requests that change balances
+     */
+    public static TransferExecutor getTransferExecutor() {
+        return transferExecutor;
+    }
+
+    /**
+     * replace the executor running the requests that change balances. Meant to be called once at startup, before the
+     * server accepts requests.
+     *
+     * @param executor the executor to use from now on
+     */
+    public static void setTransferExecutor(TransferExecutor executor) {
+        transferExecutor = executor;
+    }
+
+    /**
+     * @return the outcomes of the transfers requested with an idempotency key
+     */
+    public static IdempotencyCache<Transfer> getIdempotencyCache() {
+        return idempotency;
+    }
+
+    /**
+     * replace the outcomes of the transfers requested with an idempotency key. Meant to be called once at startup,
+     * before the server accepts requests.
+     *
+     * @param cache the cache to use from now on
+     */
+    public static void setIdempotencyCache(IdempotencyCache<Transfer> cache) {
+        idempotency = cache;
+    }
+
+    /**
+     * @return the journal recording every change, null when changes are not journaled
+     */
+    public static Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * set the journal recording every change made through this service before it is acknowledged. Meant to be called
+     * once at startup, before the server accepts requests.
+     *
+     * @param journal the journal to use from now on, null to stop journaling
+     */
+    public static void setJournal(Journal journal) {
+        AccountService.journal = journal;
+    }
+
+    /**
+     * stores an account in the {@code accounts} store, once its creation is durable in the journal
      *
      * @param acct
      */
     public void addAccount(Account acct) {
-        accounts.put(acct.getId(), acct);
+        Journal journal = AccountService.journal;
+        if (journal == null) {
+            accounts.put(acct);
+            return;
+        }
+        // store and journal the creation under the account's lock: transfers involving the account need that lock,
+        // so their records follow the creation, and a snapshot started after the record was appended sees the account
+        long sequence;
+        AccountLocks.lock(acct);
+        try {
+            accounts.put(acct);
+            sequence = journal.accountCreated(acct);
+        }
+        finally {
+            AccountLocks.unlock(acct);
+        }
+        journal.awaitDurable(sequence);
     }
 
     /**
-     * remove the account stored in the {@code accounts} HashMap
+     * stores every account of {@code accts}, like {@link #addAccount(Account)}, waiting once for all their creations
+     * to be durable in the journal rather than once per account
+     *
+     * @param accts the accounts to store
+     */
+    public void addAccounts(List<Account> accts) {
+        Journal journal = AccountService.journal;
+        long sequence = 0;
+        for (Account acct : accts) {
+            if (journal == null) {
+                accounts.put(acct);
+                continue;
+            }
+            AccountLocks.lock(acct);
+            try {
+                accounts.put(acct);
+                sequence = journal.accountCreated(acct);
+            }
+            finally {
+                AccountLocks.unlock(acct);
+            }
+        }
+        if (journal != null && sequence > 0) {
+            journal.awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * remove the account stored in the {@code accounts} store, once its deletion is durable in the journal
      *
      * @param acct
      */
     public void removeAccount(Account acct) {
-        accounts.remove(acct.getId());
+        if (accounts.remove(acct.getId()) != null) {
+            journalDeletion(acct);
+        }
+    }
+
+    private static void journalDeletion(Account acct) {
+        Journal journal = AccountService.journal;
+        if (journal != null) {
+            journal.awaitDurable(journal.accountDeleted(acct.getId()));
+        }
     }
 
     /**
-     * GET /accounts/
+     * GET /accounts?after={after}&limit={limit}
      *
-     * @return list of all accounts
+     * Without parameters, every account is streamed as a JSON array while the store is iterated, so the listing is
+     * never held in memory. With {@code limit} or {@code after}, a page of accounts in id order is returned and, unless
+     * it is the last, a {@code Link} header with {@code rel="next"} gives the URI of the following page.
+     *
+     * @param after the id the page starts after, absent for the first page
+     * @param limit maximum number of accounts in the page, 1 to {@value #ACCOUNTS_MAX_LIMIT}, default
+     *              {@value #ACCOUNTS_DEFAULT_LIMIT} when {@code after} is given
+     * @return the accounts as a JSON array
      */
     @GET
     @Path(ACCOUNTS_ALL)
     @Produces(MediaType.APPLICATION_JSON)
-    public List<Account> getAllAccounts() {
-        return new ArrayList<>(accounts.values());
+    public Response getAllAccounts(@QueryParam("after") String after, @QueryParam("limit") Integer limit,
+                                   @Context UriInfo uriInfo) {
+        return listAccounts(after, limit, uriInfo, false);
+    }
+
+    /**
+     * GET /accounts?after={after}&limit={limit} with {@code Accept: application/x-ndjson}
+     *
+     * Same as {@link #getAllAccounts(String, Integer, UriInfo)}, one JSON account per line.
+     */
+    @GET
+    @Path(ACCOUNTS_ALL)
+    @Produces(TransferService.APPLICATION_NDJSON + ";qs=0.5")
+    public Response getAllAccountsAsLines(@QueryParam("after") String after, @QueryParam("limit") Integer limit,
+                                          @Context UriInfo uriInfo) {
+        return listAccounts(after, limit, uriInfo, true);
+    }
+
+    private Response listAccounts(String after, Integer limit, UriInfo uriInfo, boolean lines) {
+        if (after == null && limit == null) {
+            return Response.ok(new AccountStreamingOutput(accounts, lines)).build();
+        }
+        int pageSize = limit == null ? ACCOUNTS_DEFAULT_LIMIT : limit;
+        if (pageSize < 1 || pageSize > ACCOUNTS_MAX_LIMIT) {
+            throw new BadRequestException(String.format("limit must be between 1 and %d", ACCOUNTS_MAX_LIMIT));
+        }
+        UUID start = null;
+        if (after != null && !after.isEmpty()) {
+            try {
+                start = UUID.fromString(after);
+            }
+            catch (IllegalArgumentException exc) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+        List<Account> page = accounts.page(start, pageSize);
+        Response.ResponseBuilder response;
+        if (page.size() > pageSize) {
+            page = page.subList(0, pageSize);
+            URI next = uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("after", page.get(pageSize - 1).getId())
+                    .replaceQueryParam("limit", pageSize)
+                    .build();
+            response = Response.ok(new AccountStreamingOutput(page, lines)).link(next, "next");
+        }
+        else {
+            response = Response.ok(new AccountStreamingOutput(page, lines));
+        }
+        return response.build();
+    }
+
+    /**
+     * @return the account in {@code accounts} whose id is {@code id}, null if there is none. The lookup is recorded as
+     * an {@link AccountLookupEvent}.
+     */
+    private static Account lookup(UUID id) {
+        AccountLookupEvent event = new AccountLookupEvent();
+        event.begin();
+        Account account = accounts.get(id);
+        event.end();
+        if (event.shouldCommit()) {
+            event.accountId = String.valueOf(id);
+            event.found = account != null;
+            event.commit();
+        }
+        return account;
     }
 
     /**
@@ -75,35 +362,108 @@ public class AccountService {
      * @return the Account instance in {@code accounts} that has Id {@param id}
      */
     private Account getAccountPrv(UUID id) {
-        Account acct = accounts.get(id);
+        Account acct = lookup(id);
         if (acct == null) {
             throw new NotFoundException("Account not found");
         }
         return acct;
     }
 
+    /**
+     * @return the entity tag of the current state of {@code account}. Tags are weak: the JSON and Smile forms of a
+     * state share one.
+     */
+    public static EntityTag entityTag(Account account) {
+        return new EntityTag(ETAG_RUN + '-' + Long.toHexString(account.getVersion()), true);
+    }
+
+    /**
+     * @param id of the Account to be returned
+     * @return the Account object stored in the {@code accounts} store
+     * @throws NotFoundException if there is no such account
+     */
+    public Account getAccount(UUID id) {
+        return getAccountPrv(id);
+    }
+
     /**
      * GET /accounts/{id}
      *
+     * The response carries the version of the account as its ETag. A request whose {@code If-None-Match} holds the
+     * current tag gets a 304 NOT MODIFIED, without the account being serialized.
+     *
      * @param id of the Account to be returned
-     * @return the Account object stored in the {@code accounts} HashMap, null if the account is not stored in the map.
+     * @return the Account object stored in the {@code accounts} store, or a 304 without entity
      */
     @GET
     @Path(ACCOUNTS_ACCOUNT_ID)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Account getAccount(@PathParam("id") UUID id) {
-        return getAccountPrv(id);
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
+    public Response getAccount(@PathParam("id") UUID id, @Context Request request) {
+        Account account = getAccountPrv(id);
+        // tagged before the account is serialized: a change racing with the request can leave the body newer than its
+        // tag, which only costs the client a refetch, never older
+        EntityTag tag = entityTag(account);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return Response.ok(account).tag(tag).build();
     }
 
     /**
-     * GET /accounts/{id}
+     * GET /accounts/{id}/p/{attr}
+     *
+     * Tagged with the version of the account and answered with a 304 NOT MODIFIED like {@link #getAccount}, through
+     * {@link EntityTagFilter}.
      *
      * @param id of the Account to be returned
-     * @return the Account object stored in the {@code accounts} HashMap, null if the account is not stored in the map.
+     * @return the Account object stored in the {@code accounts} store, null if the account is not stored there.
      */
     @Path(ACCOUNTS_ACCOUNT_PARAM)
-    public Account getAccountParam(@PathParam("id") UUID id) {
-        return getAccountPrv(id);
+    public Account getAccountParam(@PathParam("id") UUID id, @Context ContainerRequestContext request) {
+        Account account = getAccountPrv(id);
+        request.setProperty(EntityTagFilter.TAG, entityTag(account));
+        return account;
+    }
+
+    /**
+     * GET /accounts/{id}/transfers?limit={limit}&cursor={cursor}
+     *
+     * Page through the transfers of an account, newest first. The {@code next} field of a page is the cursor of the
+     * following, older page; it is null on the last page. The cost of a page does not depend on the length of the
+     * history.
+     *
+     * @param id     the Id of the account
+     * @param limit  maximum number of transfers in the page, 1 to {@value #TRANSFERS_MAX_LIMIT}
+     * @param cursor the {@code next} field of the previous page, absent for the first page
+     * @return the page of transfers
+     */
+    @GET
+    @Path(ACCOUNTS_TRANSFERS)
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
+    public TransferPage getTransfers(@PathParam("id") UUID id,
+                                     @QueryParam("limit") @DefaultValue("" + TRANSFERS_DEFAULT_LIMIT) int limit,
+                                     @QueryParam("cursor") String cursor) {
+        if (limit < 1 || limit > TRANSFERS_MAX_LIMIT) {
+            throw new BadRequestException(String.format("limit must be between 1 and %d", TRANSFERS_MAX_LIMIT));
+        }
+        UUID before = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                before = UUID.fromString(cursor);
+            }
+            catch (IllegalArgumentException exc) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+        Account account = getAccountPrv(id);
+        TransferPage page = new TransferPage();
+        List<Transfer> transfers = new ArrayList<>(Math.min(limit, account.getHistory().size()));
+        if (account.getHistory().page(before, limit, transfers)) {
+            page.setNext(transfers.get(transfers.size() - 1).getId().toString());
+        }
+        page.setTransfers(transfers);
+        return page;
     }
 
     /**
@@ -120,8 +480,8 @@ public class AccountService {
      */
     @POST
     @Path(ACCOUNTS_CREATE)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, SmileProvider.APPLICATION_SMILE})
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
     public Response createAccount(Account account) {
         try {
             Account toAdd = AccountFactory.createAccount(account);
@@ -133,30 +493,96 @@ public class AccountService {
         }
     }
 
+    /**
+     * BULK CREATE
+     *
+     * POST /accounts/bulk
+     *
+     * Consumes newline-delimited JSON, one account per line, or a JSON array of accounts, and creates an account for
+     * each as {@link #createAccount(Account)} does. Accounts are read, created and acknowledged in batches of
+     * {@value AccountImport#BATCH_SIZE} while the upload is still arriving, so memory use does not depend on its size.
+     *
+     * The response streams one JSON result per account, in upload order: {@code {"line": n, "id": "..."}} for a
+     * created account, {@code {"line": n, "error": "..."}} for one that was not. {@code line} counts accounts from 1,
+     * it is the line number for newline-delimited JSON. The status is 200 OK even when some accounts fail.
+     *
+     * @param upload the accounts to create
+     * @return the result of every account as newline-delimited JSON
+     */
+    @POST
+    @Path(ACCOUNTS_BULK)
+    @Consumes(TransferService.APPLICATION_NDJSON)
+    @Produces(TransferService.APPLICATION_NDJSON)
+    public Response createAccountsFromLines(InputStream upload) {
+        return Response.ok(new AccountImport(this, upload, true)).build();
+    }
+
+    /**
+     * BULK CREATE
+     *
+     * POST /accounts/bulk
+     *
+     * Same as {@link #createAccountsFromLines(InputStream)} with the accounts given as a JSON array.
+     */
+    @POST
+    @Path(ACCOUNTS_BULK)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(TransferService.APPLICATION_NDJSON)
+    public Response createAccountsFromArray(InputStream upload) {
+        return Response.ok(new AccountImport(this, upload, false)).build();
+    }
+
     /**
      * UPDATE
      *
      * POST /accounts/{id}
      *
+     * With an {@code If-Match} header holding the ETag of the account, the update only applies if the account has not
+     * changed since, and gets a 412 PRECONDITION FAILED otherwise. The check and the update are one compare-and-set on
+     * the version of the account, see {@link Account#beginUpdate(long)}: concurrent updates never wait for each other
+     * or for transfers, and never overwrite each other unseen. Without the header the update applies to whatever
+     * version is current.
+     *
      * @param id the Id of the account to update.
+     * @param ifMatch the ETags the account must still have, or '*'
      * @param update Account object whose contents will be used to update existing object
      * @return HTTP Response
      */
     @POST
     @Path(ACCOUNTS_UPDATE)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response updateAccount(@PathParam("id") UUID id, Account update) {
-        Account toUpdate = accounts.get(id);
+    @Consumes({MediaType.APPLICATION_JSON, SmileProvider.APPLICATION_SMILE})
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
+    public Response updateAccount(@PathParam("id") UUID id, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                                  Account update) {
+        Account toUpdate = lookup(id);
         if (update.getId() != null && !update.getId().equals(id)) {
             throw new BadRequestException("PathParam id and JSON id do not match");
         }
         if (toUpdate == null) {
             throw new NotFoundException(String.format("Could not find account with id '%s' to update", id));
         }
-        toUpdate.setOwner(update.getOwner());
-        toUpdate.setName(update.getName());
-        return Response.ok().entity(toUpdate).build();
+        beginUpdate(toUpdate, ifMatch);
+        Journal journal = AccountService.journal;
+        long sequence = 0;
+        // updates of one account reach the journal in the order they were made: only one is in progress at a time
+        try {
+            // a delete claims the account too, an update claiming it after a delete finds it gone
+            if (lookup(id) == null) {
+                throw new NotFoundException(String.format("Could not find account with id '%s' to update", id));
+            }
+            toUpdate.setOwner(update.getOwner());
+            toUpdate.setName(update.getName());
+            if (journal != null) {
+                sequence = journal.accountUpdated(toUpdate);
+            }
+        }
+        finally {
+            toUpdate.endUpdate();
+        }
+        if (journal != null) {
+            journal.awaitDurable(sequence);
+        }
+        return Response.ok().entity(toUpdate).tag(entityTag(toUpdate)).build();
     }
 
     /**
@@ -164,47 +590,108 @@ public class AccountService {
      *
      * DELETE /accounts/{id}
      *
-     * Delete the account associated with {id}
+     * Delete the account associated with {id}. With an {@code If-Match} header, only if the account has not changed
+     * since, as for {@link #updateAccount}. The delete claims the account like an update does, so that it reaches the
+     * journal after any update in progress and before none.
      *
      * @param id the Id of the account to be deleted.
+     * @param ifMatch the ETags the account must still have, or '*'
      *
      * @return the Account that was deleted.
      */
     @DELETE
     @Path(ACCOUNTS_ACCOUNT_ID)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response deleteAccount(@PathParam("id") UUID id) {
-        Account toDelete = accounts.get(id);
-        if (toDelete == null) {
+    public Response deleteAccount(@PathParam("id") UUID id, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) {
+        Account current = lookup(id);
+        if (current == null) {
             throw new NotFoundException(String.format("Could not find account with id '%s' to delete", id));
         }
-        removeAccount(toDelete);
+        beginUpdate(current, ifMatch);
+        Journal journal = AccountService.journal;
+        long sequence = 0;
+        Account toDelete;
+        try {
+            // remove in one step so that concurrent deletes of the same account cannot both succeed
+            toDelete = accounts.remove(id);
+            if (toDelete == null) {
+                throw new NotFoundException(String.format("Could not find account with id '%s' to delete", id));
+            }
+            if (journal != null) {
+                sequence = journal.accountDeleted(id);
+            }
+        }
+        finally {
+            // updates still holding the account find it gone once they claim it
+            current.endUpdate();
+        }
+        if (journal != null) {
+            journal.awaitDurable(sequence);
+        }
         return Response.ok().entity(toDelete).build();
     }
 
+    /**
+     * start an update of {@code account}, see {@link Account#beginUpdate(long)}
+     *
+     * @param ifMatch the If-Match header of the request: absent or '*' to update whatever version is current,
+     *                otherwise the ETags of the versions the update applies to
+     * @throws PreconditionFailedException if the account has none of those versions any more
+     */
+    private static void beginUpdate(Account account, String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            account.beginUpdate();
+            return;
+        }
+        String prefix = ETAG_RUN + '-';
+        for (String tag : ifMatch.split(",")) {
+            // weak tags are accepted: the tag names a version of the account, shared by its JSON and Smile forms
+            String value = tag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.length() < prefix.length() + 3 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"'
+                    || !value.startsWith(prefix, 1)) {
+                continue;
+            }
+            try {
+                if (account.beginUpdate(Long.parseUnsignedLong(value.substring(prefix.length() + 1, value.length() - 1), 16))) {
+                    return;
+                }
+            }
+            catch (NumberFormatException exc) {
+                // not a tag of ours, matches no version
+            }
+        }
+        throw new PreconditionFailedException("Account has changed, get it again and retry", entityTag(account));
+    }
+
     /**
      * TRANSFER
      *
      * POST /accounts/{fromId}/transfer/{toId}
      *
      * Issues a money transfer from {@param fromId} to {@param toId}. The transfer details are fetched from the Transfer
-     * object {@param transferRequest}
+     * object {@param transferRequest}. The transfer runs on the {@link TransferExecutor}, and is rejected with a 503
+     * SERVICE UNAVAILABLE if too many are waiting for it already.
      *
      * @param fromId the Id of the Account to transfer from
      * @param toId the Id of the Account to transfer to
+     * @param idempotencyKey optional key of the request: a request repeating the key of an earlier one gets its
+     *                       outcome instead of being executed, see {@link IdempotencyCache}
      * @param transferRequest a Transfer object encompassing the requested transfer details.
      *                        Note that this will be different from the actual Transfer object that is generated.
-     * @throws TransferException if the transfer fails
-     *
-     * @return the Transfer object generated if the Transfer was successful.
+     * @param response resumed with the Transfer object generated if the Transfer was successful
      */
     @POST
     @Path(ACCOUNTS_TRANSFER)
-    @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
-    public Transfer transfer(@PathParam("fromId") UUID fromId, @PathParam("toId") UUID toId, Transfer transferRequest) {
-        Account from = accounts.get(fromId);
-        Account to = accounts.get(toId);
+    @Consumes({MediaType.APPLICATION_JSON, SmileProvider.APPLICATION_SMILE})
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
+    public void transfer(@PathParam("fromId") UUID fromId, @PathParam("toId") UUID toId,
+                         @HeaderParam(IDEMPOTENCY_KEY) String idempotencyKey, Transfer transferRequest,
+                         @Suspended AsyncResponse response) {
+        Account from = lookup(fromId);
+        Account to = lookup(toId);
 
         if (from == null) {
             throw new NotFoundException("From account not found.");
@@ -213,12 +700,46 @@ public class AccountService {
             throw new NotFoundException("To account not found.");
         }
 
-        try {
-            return TransferManager.doTransfer(from, to, transferRequest.getAmount(), transferRequest.getName());
-        }
-        catch (TransferException exc) {
-            throw new BadRequestException(exc.getMessage());
+        transferExecutor.submit(response, () -> {
+            try {
+                if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+                    return doTransfer(from, to, transferRequest);
+                }
+                List<Object> request = Arrays.asList(fromId, toId, transferRequest.getAmount(), transferRequest.getName());
+                return idempotency.execute(idempotencyKey, request, () -> doTransfer(from, to, transferRequest));
+            }
+            catch (TransferException exc) {
+                throw new BadRequestException(exc.getMessage());
+            }
+            catch (IdempotencyException exc) {
+                throw new BadRequestException(exc.getMessage());
+            }
+        });
+    }
+
+    private Transfer doTransfer(Account from, Account to, Transfer transferRequest) {
+        return commitTransfer(from, to, transferRequest.getAmountMinor(), transferRequest.getName());
+    }
+
+    /**
+     * transfer {@code amount} from {@code from} to {@code to} through the transfer engine, then wait for the journal
+     * to make it durable: what every transfer endpoint runs once the accounts are found
+     *
+     * @param amountMinor amount to transfer, in minor units
+     * @return the Transfer object recording the transfer
+     * @throws TransferException if the transfer is not valid
+     */
+    public static Transfer commitTransfer(Account from, Account to, long amountMinor, String name) {
+        Transfer transfer = transferEngine.transfer(from, to, amountMinor, name);
+        // the transfer was journaled as it was applied, wait for its record, not for those appended since
+        Journal journal = AccountService.journal;
+        if (journal != null) {
+            TransferSyncEvent event = new TransferSyncEvent();
+            event.begin();
+            journal.awaitDurable(transfer.getJournalSequence());
+            event.end(from.getId(), to.getId());
         }
+        return transfer;
     }
 
 }
@@ -0,0 +1,229 @@
+package moolah.services;
+
+import moolah.exceptions.TransferException;
+import moolah.model.Account;
+import moolah.model.Money;
+import moolah.model.Transfer;
+import moolah.model.UUIDs;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.Header;
+import org.glassfish.grizzly.http.util.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Transfers and balance reads served straight by Grizzly, next to the Jersey application, for internal callers for
+ * which resource matching, injection and entity providers cost more than the transfer itself.
+ *
+ * The protocol is narrow and fixed, plain text both ways, and parsed by hand:
+ * <pre>
+ * GET  /fast/balance/{id}             -&gt; 200, the balance, e.g. 1234.56
+ * POST /fast/transfer/{fromId}/{toId} -&gt; 200, the id of the transfer
+ *      body: the amount, e.g. 12.5, optionally followed by a space and the name of the transfer
+ * </pre>
+ * Errors are answered with the status the JSON endpoints use (400, 404, 503 with Retry-After) and the message as body.
+ * Transfers run exactly as {@link AccountService#transfer} runs them: on the {@link TransferExecutor}, through the
+ * transfer engine, acknowledged once durable in the journal. Idempotency keys, content negotiation and the HTTP
+ * metrics of {@link moolah.providers.MetricsFilter} are not supported here; callers needing them use the JSON
+ * endpoints.
+ *
+ * Enabled by the {@link moolah.Configuration#FASTPATH_ENABLED} property.
+ */
+public class FastPathHandler extends HttpHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FastPathHandler.class);
+
+    /** context path the handler is registered at */
+    public static final String CONTEXT = "/fast";
+
+    public static final String BALANCE = "/balance/";
+
+    public static final String TRANSFER = "/transfer/";
+
+    /** largest transfer body accepted, in bytes */
+    static final int MAX_BODY = 256;
+
+    private static final String TEXT = "text/plain";
+
+    /** per-thread buffers the path, body and response are decoded and encoded in */
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private static final class Buffers {
+        final char[] chars = new char[MAX_BODY];
+        final byte[] bytes = new byte[MAX_BODY + 1];
+    }
+
+    @Override
+    public void service(Request request, Response response) throws IOException {
+        Buffers buffers = BUFFERS.get();
+        String path = request.getPathInfo();
+        if (path == null || path.length() > buffers.chars.length) {
+            reply(response, HttpStatus.NOT_FOUND_404, "Not found");
+            return;
+        }
+        char[] chars = buffers.chars;
+        path.getChars(0, path.length(), chars, 0);
+
+        if (path.length() == BALANCE.length() + UUIDs.LENGTH && path.startsWith(BALANCE)) {
+            if (request.getMethod() != Method.GET) {
+                notAllowed(response, Method.GET);
+                return;
+            }
+            Account account = find(chars, BALANCE.length(), response, "Account not found");
+            if (account != null) {
+                int length = Money.format(account.getBalanceMinor(), chars, 0);
+                reply(response, HttpStatus.OK_200, chars, length);
+            }
+        }
+        else if (path.length() == TRANSFER.length() + 2 * UUIDs.LENGTH + 1 && path.startsWith(TRANSFER)
+                && chars[TRANSFER.length() + UUIDs.LENGTH] == '/') {
+            if (request.getMethod() != Method.POST) {
+                notAllowed(response, Method.POST);
+                return;
+            }
+            Account from = find(chars, TRANSFER.length(), response, "From account not found.");
+            if (from == null) {
+                return;
+            }
+            Account to = find(chars, TRANSFER.length() + UUIDs.LENGTH + 1, response, "To account not found.");
+            if (to != null) {
+                transfer(from, to, request, response, buffers);
+            }
+        }
+        else {
+            reply(response, HttpStatus.NOT_FOUND_404, "Not found");
+        }
+    }
+
+    private static void transfer(Account from, Account to, Request request, Response response, Buffers buffers)
+            throws IOException {
+        byte[] bytes = buffers.bytes;
+        int length = readBody(request.getInputStream(), bytes);
+        if (length > MAX_BODY) {
+            reply(response, HttpStatus.BAD_REQUEST_400, "Transfer body must be at most " + MAX_BODY + " bytes");
+            return;
+        }
+        while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == '\r')) {
+            length--;
+        }
+        int space = 0;
+        while (space < length && bytes[space] != ' ') {
+            buffers.chars[space] = (char) bytes[space];
+            space++;
+        }
+        long amount;
+        try {
+            amount = Money.parse(buffers.chars, 0, space);
+        }
+        catch (NumberFormatException exc) {
+            reply(response, HttpStatus.BAD_REQUEST_400, "Malformed amount: " + exc.getMessage());
+            return;
+        }
+        String name = space < length ? new String(bytes, space + 1, length - space - 1, StandardCharsets.UTF_8) : null;
+
+        TransferExecutor executor = AccountService.getTransferExecutor();
+        response.suspend();
+        boolean accepted = executor.execute(() -> {
+            try {
+                Transfer transfer = AccountService.commitTransfer(from, to, amount, name);
+                char[] chars = BUFFERS.get().chars;
+                UUIDs.format(transfer.getId().getMostSignificantBits(), transfer.getId().getLeastSignificantBits(),
+                        chars, 0);
+                reply(response, HttpStatus.OK_200, chars, UUIDs.LENGTH);
+            }
+            catch (TransferException exc) {
+                replyQuietly(response, HttpStatus.BAD_REQUEST_400, exc.getMessage());
+            }
+            catch (RuntimeException | IOException exc) {
+                logger.error("Fast-path transfer failed", exc);
+                replyQuietly(response, HttpStatus.INTERNAL_SERVER_ERROR_500, "Transfer failed");
+            }
+            finally {
+                response.resume();
+            }
+        });
+        if (!accepted) {
+            response.setHeader(Header.RetryAfter, Long.toString(executor.getRetryAfterSeconds()));
+            replyQuietly(response, HttpStatus.SERVICE_UNAVAILABLE_503, "Too many transfers in progress, retry later");
+            response.resume();
+        }
+    }
+
+    /**
+     * @return the account whose id is written at {@code offset} of {@code chars}, or null once {@code response} has
+     * been answered with a 400 if the id is malformed, or a 404 with {@code notFound} if there is no such account
+     */
+    private static Account find(char[] chars, int offset, Response response, String notFound) throws IOException {
+        Account account;
+        try {
+            account = AccountService.getAccountStore().get(UUIDs.mostSignificantBits(chars, offset),
+                    UUIDs.leastSignificantBits(chars, offset));
+        }
+        catch (IllegalArgumentException exc) {
+            reply(response, HttpStatus.BAD_REQUEST_400, "Malformed account id");
+            return null;
+        }
+        if (account == null) {
+            reply(response, HttpStatus.NOT_FOUND_404, notFound);
+        }
+        return account;
+    }
+
+    /**
+     * read the body into {@code bytes}, stopping once it holds one byte more than {@link #MAX_BODY}
+     *
+     * @return the number of bytes read, more than {@link #MAX_BODY} if the body is too large
+     */
+    private static int readBody(InputStream body, byte[] bytes) throws IOException {
+        int length = 0;
+        int read;
+        while (length < bytes.length && (read = body.read(bytes, length, bytes.length - length)) > 0) {
+            length += read;
+        }
+        return length;
+    }
+
+    private static void notAllowed(Response response, Method allowed) throws IOException {
+        response.setHeader(Header.Allow, allowed.getMethodString());
+        reply(response, HttpStatus.METHOD_NOT_ALLOWED_405, "Method not allowed");
+    }
+
+    /**
+     * answer with the ASCII text of the first {@code length} characters of the per-thread buffer {@code chars}
+     */
+    private static void reply(Response response, HttpStatus status, char[] chars, int length) throws IOException {
+        byte[] bytes = BUFFERS.get().bytes;
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) chars[i];
+        }
+        response.setStatus(status);
+        response.setContentType(TEXT);
+        response.setContentLength(length);
+        response.getOutputStream().write(bytes, 0, length);
+    }
+
+    private static void reply(Response response, HttpStatus status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        response.setStatus(status);
+        response.setContentType(TEXT);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    private static void replyQuietly(Response response, HttpStatus status, String message) {
+        try {
+            reply(response, status, message);
+        }
+        catch (IOException exc) {
+            logger.debug("Could not answer fast-path request", exc);
+        }
+    }
+}
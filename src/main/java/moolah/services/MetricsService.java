@@ -0,0 +1,96 @@
+package moolah.services;
+
+import moolah.exceptions.TransferException;
+import moolah.journal.Journal;
+import moolah.metrics.HttpMetrics;
+import moolah.metrics.PrometheusWriter;
+import moolah.metrics.RouteMetrics;
+import moolah.model.TransferManager;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+
+import static moolah.services.MetricsService.METRICS_ROOT;
+
+/**
+ * Metrics REST API
+ *
+ * Exposes the request, transfer, account and journal metrics in the Prometheus text format, to be scraped. Everything
+ * is counted as it happens, off this service; a scrape only reads the counters.
+ */
+@Path(METRICS_ROOT)
+public class MetricsService {
+
+    /* API PATHS */
+    public static final String METRICS_ROOT = "/metrics";
+
+    /**
+     * GET /metrics
+     *
+     * @return every metric, in the Prometheus text exposition format
+     */
+    @GET
+    @Produces(PrometheusWriter.CONTENT_TYPE)
+    public StreamingOutput getMetrics() {
+        return output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            write(new PrometheusWriter(writer));
+            writer.flush();
+        };
+    }
+
+    private static void write(PrometheusWriter out) throws IOException {
+        Collection<RouteMetrics> routes = HttpMetrics.getRoutes();
+        out.declare("moolah_http_request_duration_seconds", "histogram",
+                "Time from the arrival of a request to its response, by route.");
+        for (RouteMetrics route : routes) {
+            out.histogram("moolah_http_request_duration_seconds", route.getLatencies(),
+                    "method", route.getMethod(), "route", route.getRoute());
+        }
+        out.declare("moolah_http_responses_total", "counter", "Responses sent, by route and status.");
+        for (RouteMetrics route : routes) {
+            for (int status = 0; status <= RouteMetrics.maxStatus(); status++) {
+                long count = route.getCount(status);
+                if (count > 0) {
+                    out.sample("moolah_http_responses_total", count, "method", route.getMethod(),
+                            "route", route.getRoute(), "status", Integer.toString(status));
+                }
+            }
+        }
+
+        out.declare("moolah_transfers_committed_total", "counter", "Transfers committed, batched ones included.");
+        out.sample("moolah_transfers_committed_total", TransferManager.getCommittedCount());
+        out.declare("moolah_transfers_rejected_total", "counter", "Transfers rejected, by reason.");
+        for (TransferException.Reason reason : TransferException.Reason.values()) {
+            out.sample("moolah_transfers_rejected_total", TransferManager.getRejectedCount(reason),
+                    "reason", reason.name().toLowerCase(Locale.ROOT));
+        }
+
+        TransferExecutor executor = AccountService.getTransferExecutor();
+        out.declare("moolah_transfer_queue_length", "gauge", "Transfer requests waiting for a transfer thread.");
+        out.sample("moolah_transfer_queue_length", executor.getQueued());
+        out.declare("moolah_transfer_shed_total", "counter", "Transfer requests rejected with a 503, queue full.");
+        out.sample("moolah_transfer_shed_total", executor.getRejectedCount());
+
+        out.declare("moolah_accounts", "gauge", "Accounts in the store.");
+        out.sample("moolah_accounts", AccountService.getAccountStore().size());
+
+        Journal journal = AccountService.getJournal();
+        if (journal != null) {
+            long appended = journal.getLastAppended();
+            out.declare("moolah_journal_appended_records", "counter", "Sequence of the last record appended.");
+            out.sample("moolah_journal_appended_records", appended);
+            out.declare("moolah_journal_lag_records", "gauge", "Records appended but not yet durable.");
+            out.sample("moolah_journal_lag_records", Math.max(0, appended - journal.getLastDurable()));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package moolah.services;
+
+import moolah.exceptions.web.InternalServerErrorException;
+import moolah.exceptions.web.ServiceUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs the requests that change balances on a dedicated, bounded pool of threads, off the container's worker threads.
+ *
+ * Request threads hand a suspended request over and go back to serving other requests at once, so a burst of
+ * transfers waiting on locks and on the journal cannot take all of the container's workers from cheap reads. Requests
+ * wait in a bounded queue for a transfer thread; once it is full, requests are rejected at once with a 503 and a
+ * Retry-After header rather than queued without limit, telling clients to back off.
+ */
+public class TransferExecutor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    private final long retryAfterSeconds;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param threads           number of transfer threads
+     * @param queueSize         number of requests that can wait for a transfer thread
+     * @param retryAfterSeconds value of the Retry-After header of rejected requests
+     */
+    public TransferExecutor(int threads, int queueSize, long retryAfterSeconds) {
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Transfer threads and queue size must be strictly positive");
+        }
+        AtomicInteger created = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "moolah-transfer-" + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * run {@code request} on a transfer thread, then resume {@code response} with its result, or with the exception
+     * it threw, or with a 500 if it threw an error, which is then rethrown. If no transfer thread is free and the
+     * queue is full, {@code response} is resumed at once with a 503.
+     *
+     * @param response the suspended response of the request
+     * @param request  executes the request and returns the entity of the response
+     */
+    public void submit(AsyncResponse response, Supplier<?> request) {
+        boolean accepted = execute(() -> {
+            try {
+                response.resume(request.get());
+            }
+            catch (RuntimeException exc) {
+                response.resume(exc);
+            }
+            catch (Throwable exc) {
+                logger.error("Transfer request failed", exc);
+                response.resume(new InternalServerErrorException("Transfer failed"));
+                throw exc;
+            }
+        });
+        if (!accepted) {
+            response.resume(new ServiceUnavailableException("Too many transfers in progress, retry later",
+                    retryAfterSeconds));
+        }
+    }
+
+    /**
+     * run {@code task} on a transfer thread, for callers answering requests outside of JAX-RS
+     *
+     * @return false if no transfer thread is free and the queue is full, in which case {@code task} will not run and
+     * the caller should answer with a 503 and a Retry-After of {@link #getRetryAfterSeconds()}
+     */
+    public boolean execute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        }
+        catch (RejectedExecutionException exc) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of seconds rejected clients are told to wait before retrying
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * @return the number of requests waiting for a transfer thread
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of requests rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * stop accepting requests and wait for those accepted to finish
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
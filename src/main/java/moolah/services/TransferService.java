@@ -0,0 +1,240 @@
+package moolah.services;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import moolah.exceptions.web.BadRequestException;
+import moolah.exceptions.web.NotFoundException;
+import moolah.journal.Journal;
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferBatch;
+import moolah.model.TransferBatchResult;
+import moolah.model.TransferManager;
+import moolah.model.TransferRequest;
+import moolah.providers.SmileProvider;
+import moolah.store.AccountStore;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import static moolah.services.AccountService.BINARY;
+import static moolah.services.TransferService.TRANSFERS_ROOT;
+
+/**
+ * Transfer Service REST API
+ *
+ * This class handles HTTP requests on Transfer resources, whatever the accounts involved
+ */
+@Path(TRANSFERS_ROOT)
+public class TransferService {
+
+    /* API PATHS */
+    public static final String TRANSFERS_ROOT = "/transfers";
+    public static final String TRANSFERS_TRANSFER_ID = "/{id}";
+    public static final String TRANSFERS_BATCH = "/batch";
+
+    /** newline-delimited JSON: one JSON value per line */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /** largest number of transfers accepted in one batch when not configured */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10000;
+
+    private static final ObjectReader REQUEST_READER = new ObjectMapper().readerFor(TransferRequest.class);
+
+    /**
+     * largest number of transfers accepted in one batch
+     */
+    private static volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * @return the largest number of transfers accepted in one batch
+     */
+    public static int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * set the largest number of transfers accepted in one batch
+     *
+     * @param size the new limit, strictly positive
+     */
+    public static void setMaxBatchSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Batch size limit must be strictly positive, was " + size);
+        }
+        maxBatchSize = size;
+    }
+
+    /**
+     * GET /transfers/{id}
+     *
+     * @param id the Id of the transfer to be returned
+     * @return the committed transfer whose Id is {@param id}, looked up in constant time
+     */
+    @GET
+    @Path(TRANSFERS_TRANSFER_ID)
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
+    public Transfer getTransfer(@PathParam("id") UUID id) {
+        Transfer transfer = TransferManager.getIndex().get(id);
+        if (transfer == null) {
+            throw new NotFoundException("Transfer not found");
+        }
+        return transfer;
+    }
+
+    /**
+     * POST /transfers/batch?mode={mode}
+     *
+     * Issues the transfers of a JSON (or Smile) array of {@link TransferRequest} in one request, in order. With
+     * {@code mode=atomic} either all of them are committed or none is; with {@code mode=independent}, the default,
+     * each is committed or rejected on its own. See {@link TransferManager#doBatch(TransferBatch)}.
+     *
+     * The request is read on the container's thread and applied on the {@link TransferExecutor}, which rejects it
+     * with a 503 SERVICE UNAVAILABLE if too many requests are waiting for it already.
+     *
+     * @param mode     atomic or independent, case insensitive
+     * @param requests the transfers to issue, at most {@link #getMaxBatchSize()}
+     * @param response resumed with a 200 OK response with the result of every transfer, or a 400 BAD REQUEST one with
+     *                 the same body when an atomic batch was not applied
+     */
+    @POST
+    @Path(TRANSFERS_BATCH)
+    @Consumes({MediaType.APPLICATION_JSON, SmileProvider.APPLICATION_SMILE})
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
+    public void batch(@QueryParam("mode") @DefaultValue("independent") String mode, List<TransferRequest> requests,
+                      @Suspended AsyncResponse response) {
+        TransferBatch.Mode batchMode = parseMode(mode);
+        if (requests == null || requests.isEmpty()) {
+            throw new BadRequestException("Batch must contain at least one transfer");
+        }
+        checkBatchSize(requests.size());
+        TransferBatch batch = new TransferBatch(batchMode);
+        for (TransferRequest request : requests) {
+            add(batch, request);
+        }
+        AccountService.getTransferExecutor().submit(response, () -> apply(batch));
+    }
+
+    /**
+     * POST /transfers/batch?mode={mode}
+     *
+     * Same as {@link #batch(String, List, AsyncResponse)} with the transfers given as newline-delimited JSON, one
+     * {@link TransferRequest} per line. A malformed line rejects only its own transfer; blank lines are skipped.
+     */
+    @POST
+    @Path(TRANSFERS_BATCH)
+    @Consumes(APPLICATION_NDJSON)
+    @Produces({MediaType.APPLICATION_JSON, BINARY})
+    public void batchStream(@QueryParam("mode") @DefaultValue("independent") String mode, InputStream body,
+                            @Suspended AsyncResponse response) throws IOException {
+        TransferBatch.Mode batchMode = parseMode(mode);
+        TransferBatch batch = new TransferBatch(batchMode);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            checkBatchSize(batch.size() + 1);
+            TransferRequest request;
+            try {
+                request = REQUEST_READER.readValue(line);
+            }
+            catch (IOException exc) {
+                batch.addRejected("Malformed transfer");
+                continue;
+            }
+            add(batch, request);
+        }
+        if (batch.size() == 0) {
+            throw new BadRequestException("Batch must contain at least one transfer");
+        }
+        AccountService.getTransferExecutor().submit(response, () -> apply(batch));
+    }
+
+    private static TransferBatch.Mode parseMode(String mode) {
+        try {
+            return TransferBatch.Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException exc) {
+            throw new BadRequestException("mode must be atomic or independent");
+        }
+    }
+
+    private static void checkBatchSize(int size) {
+        if (size > maxBatchSize) {
+            throw new BadRequestException(String.format("Batch cannot contain more than %d transfers", maxBatchSize));
+        }
+    }
+
+    /**
+     * add {@code request} to {@code batch}, already rejected if one of its accounts cannot be found
+     */
+    private static void add(TransferBatch batch, TransferRequest request) {
+        if (request == null) {
+            batch.addRejected("Malformed transfer");
+            return;
+        }
+        AccountStore accounts = AccountService.getAccountStore();
+        Account from = findAccount(accounts, request.getFrom());
+        if (from == null) {
+            batch.addRejected("From account not found.");
+            return;
+        }
+        Account to = findAccount(accounts, request.getTo());
+        if (to == null) {
+            batch.addRejected("To account not found.");
+            return;
+        }
+        batch.add(from, to, request.getAmount(), request.getName());
+    }
+
+    private static Account findAccount(AccountStore accounts, String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return accounts.get(UUID.fromString(id));
+        }
+        catch (IllegalArgumentException exc) {
+            return null;
+        }
+    }
+
+    private static Response apply(TransferBatch batch) {
+        boolean committed = TransferManager.doBatch(batch);
+        // the transfers were journaled as they were applied, one wait for the last of them covers the whole batch
+        Journal journal = AccountService.getJournal();
+        if (journal != null) {
+            long last = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                Transfer transfer = batch.getTransfer(i);
+                if (transfer != null) {
+                    last = Math.max(last, transfer.getJournalSequence());
+                }
+            }
+            journal.awaitDurable(last);
+        }
+        Response.Status status = committed || batch.getMode() == TransferBatch.Mode.INDEPENDENT
+                ? Response.Status.OK : Response.Status.BAD_REQUEST;
+        return Response.status(status).entity(TransferBatchResult.of(batch)).build();
+    }
+}
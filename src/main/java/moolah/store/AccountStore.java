@@ -0,0 +1,119 @@
+package moolah.store;
+
+import moolah.model.Account;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Holds the Accounts served by the application, keyed by their id.
+ *
+ * Implementations must be safe for use by many request threads at once. Lookups and iteration must not block
+ * writers; iteration is weakly consistent and never throws {@link java.util.ConcurrentModificationException}.
+ *
+ * An implementation may copy the state of the accounts it is given and hand out views of that state, see
+ * {@link PrimitiveAccountStore}. Changes must therefore be made on the accounts returned by the store, not on those
+ * passed to it.
+ */
+public interface AccountStore extends Iterable<Account> {
+
+    /**
+     * how accounts are laid out in memory
+     */
+    enum Mode {
+        /** one Account object per account, in a {@link StripedAccountStore} */
+        OBJECTS,
+        /** primitive arrays and views, in a {@link PrimitiveAccountStore} */
+        PRIMITIVE
+    }
+
+    /**
+     * @param id the id of the account
+     * @return the stored account whose id is {@code id}, null if there is none
+     */
+    Account get(UUID id);
+
+    /**
+     * look up an account by the two halves of its id, for callers that parsed the id themselves and would otherwise
+     * build a {@link UUID} only to look it up
+     *
+     * @param msb most significant bits of the id
+     * @param lsb least significant bits of the id
+     * @return the stored account with that id, null if there is none
+     */
+    default Account get(long msb, long lsb) {
+        return get(new UUID(msb, lsb));
+    }
+
+    /**
+     * store {@code account} under its id, replacing any account stored with the same id
+     *
+     * @param account account to store, its id must be set
+     * @return the account that was replaced, null if there was none
+     */
+    Account put(Account account);
+
+    /**
+     * store {@code account} under its id unless an account with the same id is already stored
+     *
+     * @param account account to store, its id must be set
+     * @return the account already stored, null if {@code account} was stored
+     */
+    Account putIfAbsent(Account account);
+
+    /**
+     * @param id the id of the account to remove
+     * @return the account that was removed, null if there was none
+     */
+    Account remove(UUID id);
+
+    /**
+     * @return the number of stored accounts
+     */
+    int size();
+
+    /**
+     * @return a weakly consistent iterator over the stored accounts
+     */
+    @Override
+    Iterator<Account> iterator();
+
+    /**
+     * a page of the stored accounts in id order, as given by {@link UUID#compareTo(UUID)}, for keyset pagination: the
+     * next page starts after the id of the last account of this one, so pages neither skip nor repeat accounts when
+     * others are added or removed in between.
+     *
+     * The default implementation makes one pass over the store, keeping only the {@code limit + 1} smallest ids seen,
+     * i.e. it takes time proportional to the number of accounts but memory proportional to {@code limit} only. The
+     * stores of this package keep their ids in order instead, and find a page in O(log n + limit).
+     *
+     * @param after id the page starts after, exclusive, null to start from the smallest id
+     * @param limit maximum number of accounts in the page
+     * @return up to {@code limit + 1} accounts in ascending id order; the extra account, if any, only tells that
+     * another page follows
+     */
+    default List<Account> page(UUID after, int limit) {
+        // max-heap of the smallest ids seen so far, its head is the first to drop
+        PriorityQueue<Account> smallest = new PriorityQueue<>(limit + 1,
+                Comparator.comparing(Account::getId).reversed());
+        for (Account account : this) {
+            if (after != null && account.getId().compareTo(after) <= 0) {
+                continue;
+            }
+            if (smallest.size() <= limit) {
+                smallest.add(account);
+            }
+            else if (account.getId().compareTo(smallest.peek().getId()) < 0) {
+                smallest.poll();
+                smallest.add(account);
+            }
+        }
+        List<Account> page = new ArrayList<>(smallest);
+        page.sort(Comparator.comparing(Account::getId));
+        return page;
+    }
+}
@@ -0,0 +1,217 @@
+package moolah.store;
+
+import moolah.exceptions.IdempotencyException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Outcomes of requests by idempotency key, so that a retried request gets the outcome of its first execution rather
+ * than being executed again.
+ *
+ * The cache is bounded both ways: keys expire a fixed time after they were first used, and once a segment is full
+ * its oldest key is evicted. A retry arriving after its key was expired or evicted is executed again. The key of a
+ * request still executing is neither expired nor evicted, since a retry would then execute it a second time: a
+ * segment holds more keys than its share while that many of its requests execute.
+ *
+ * Keys are spread over independently locked segments, each an insertion-ordered map in which the oldest key, i.e.
+ * the first to expire, is always at the head: expiring and evicting look at the head, and past it only at keys of
+ * requests still executing. The locks are only held to look up or insert a key, never while a request executes.
+ *
+ * @param <V> the outcome of a request
+ */
+public class IdempotencyCache<V> {
+
+    /** number of segments, a power of two */
+    private static final int SEGMENTS = 64;
+
+    private final Segment<V>[] segments;
+
+    private final long ttlNanos;
+
+    /**
+     * @param maxKeys   maximum number of keys held, approximately: each segment holds up to its share
+     * @param ttlMillis milliseconds a key is held after its first use
+     */
+    @SuppressWarnings("unchecked")
+    public IdempotencyCache(int maxKeys, long ttlMillis) {
+        if (maxKeys < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("Idempotency cache size and time to live must be strictly positive");
+        }
+        int maxKeysPerSegment = Math.max(1, maxKeys / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(maxKeysPerSegment);
+        }
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * run {@code action} the first time {@code key} is seen, and return its outcome for this and every later use of
+     * {@code key} until the key expires or is evicted. Uses of {@code key} while the first one runs wait for it to
+     * finish. A runtime exception thrown by {@code action} is the outcome too, and thrown to every use of the key. An
+     * {@link Error} is not kept: the key is dropped so that a retry runs {@code action} again.
+     *
+     * @param key     the idempotency key
+     * @param request what is requested, compared with {@link Object#equals(Object)} to the request the key was
+     *                first used for
+     * @param action  executes the request
+     * @return the outcome of the first execution
+     * @throws IdempotencyException if {@code key} was first used for a different request
+     */
+    public V execute(String key, Object request, Supplier<V> action) {
+        Segment<V> segment = segments[segment(key)];
+        Entry<V> entry;
+        boolean first = false;
+        synchronized (segment) {
+            long now = System.nanoTime();
+            segment.expire(now);
+            entry = segment.get(key);
+            if (entry == null) {
+                entry = new Entry<>(request, now + ttlNanos);
+                segment.put(key, entry);
+                first = true;
+            }
+        }
+        if (!Objects.equals(entry.request, request)) {
+            throw new IdempotencyException("Idempotency key was already used for a different request");
+        }
+        if (first) {
+            try {
+                entry.outcome.complete(action.get());
+            }
+            catch (RuntimeException exc) {
+                entry.outcome.completeExceptionally(exc);
+            }
+            catch (Error exc) {
+                entry.outcome.completeExceptionally(exc);
+                remove(key, entry);
+                throw exc;
+            }
+        }
+        try {
+            return entry.outcome.join();
+        }
+        catch (CompletionException exc) {
+            Throwable cause = exc.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * @return the number of keys held, including expired keys not dropped yet
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private void remove(String key, Entry<V> entry) {
+        Segment<V> segment = segments[segment(key)];
+        synchronized (segment) {
+            segment.remove(key, entry);
+        }
+    }
+
+    private static int segment(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x7feb352d;
+        h ^= h >>> 15;
+        return h & (SEGMENTS - 1);
+    }
+
+    private static final class Entry<V> {
+
+        final Object request;
+
+        /** {@link System#nanoTime()} the key expires at */
+        final long expiresAt;
+
+        final CompletableFuture<V> outcome = new CompletableFuture<>();
+
+        Entry(Object request, long expiresAt) {
+            this.request = request;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * keys in the order they were first used, which, with a single time to live, is also the order they expire in
+     */
+    private static final class Segment<V> extends LinkedHashMap<String, Entry<V>> {
+
+        private final int maxKeys;
+
+        /** expiry of the oldest key, so that most calls to {@link #expire(long)} need not look at the map at all */
+        private long nextExpiry;
+
+        Segment(int maxKeys) {
+            super(Math.min(maxKeys, 1 << 16) * 4 / 3 + 1);
+            this.maxKeys = maxKeys;
+        }
+
+        void expire(long now) {
+            if (isEmpty() || nextExpiry - now > 0) {
+                return;
+            }
+            // an expired key whose request still executes is kept, and looked at again on the next call
+            boolean executing = false;
+            Iterator<Entry<V>> oldest = values().iterator();
+            while (oldest.hasNext()) {
+                Entry<V> entry = oldest.next();
+                if (entry.expiresAt - now > 0) {
+                    if (!executing) {
+                        nextExpiry = entry.expiresAt;
+                    }
+                    return;
+                }
+                if (entry.outcome.isDone()) {
+                    oldest.remove();
+                }
+                else {
+                    executing = true;
+                }
+            }
+        }
+
+        @Override
+        public Entry<V> put(String key, Entry<V> value) {
+            if (isEmpty()) {
+                nextExpiry = value.expiresAt;
+            }
+            return super.put(key, value);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+            if (size() <= maxKeys) {
+                return false;
+            }
+            // evict the oldest key whose request is done, if there is one, then the head expires next
+            Iterator<Entry<V>> oldest = values().iterator();
+            while (oldest.hasNext()) {
+                if (oldest.next().outcome.isDone()) {
+                    oldest.remove();
+                    break;
+                }
+            }
+            nextExpiry = values().iterator().next().expiresAt;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package moolah.store;
+
+import moolah.model.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The ids of the accounts of a store in {@link UUID#compareTo(UUID)} order, so that a page of the store starts with
+ * a skip list search instead of a pass over every account: {@link #page(AccountStore, UUID, int)} costs
+ * O(log n + limit).
+ *
+ * The store adds an id once its account can be found and removes it once the account is gone. Adds, removes and
+ * pages never block each other. An id whose account is gone by the time the page reaches it is skipped.
+ */
+final class OrderedIds {
+
+    private final ConcurrentSkipListSet<UUID> ids = new ConcurrentSkipListSet<>();
+
+    void add(UUID id) {
+        ids.add(id);
+    }
+
+    void remove(UUID id) {
+        ids.remove(id);
+    }
+
+    /**
+     * @see AccountStore#page(UUID, int)
+     */
+    List<Account> page(AccountStore store, UUID after, int limit) {
+        NavigableSet<UUID> tail = after == null ? ids : ids.tailSet(after, false);
+        List<Account> page = new ArrayList<>(Math.min(limit + 1, 1024));
+        for (UUID id : tail) {
+            Account account = store.get(id);
+            if (account == null) {
+                continue;
+            }
+            page.add(account);
+            if (page.size() > limit) {
+                break;
+            }
+        }
+        return page;
+    }
+}
@@ -0,0 +1,657 @@
+package moolah.store;
+
+import moolah.exceptions.AccountBalanceException;
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferHistory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link AccountStore} keeping the hot fields of accounts in primitive arrays, for tables of tens of millions of
+ * accounts.
+ *
+ * Each account occupies a slot. The id of the slot is kept as two longs and its balance and version as two longs of an
+ * {@link AtomicLongArray}, in chunks of {@value #CHUNK_SIZE} slots that are allocated as the table grows and never
+ * move. The cold fields live apart: name and owner are encoded as UTF-8 in an append-only byte arena the slot points
+ * into, and the transfer list is only created with the first transfer. Ids are found through an open-addressing index
+ * of slot numbers with linear probing. The garbage collector thus sees a handful of large arrays instead of an Account,
+ * a UUID, two Strings, a list and their headers per account.
+ *
+ * {@link #get(UUID)} returns a view of the slot: an {@link Account} whose balance, version and details are read and
+ * written in the table, so callers use it exactly like a stored Account. Views are cheap, short-lived objects.
+ *
+ * Reads never lock. Inserts, removals and changes of name or owner take a single lock, and the index is rebuilt when it
+ * is half full. The ids are also kept in order, at the cost of a skip list entry per account, so that a page costs
+ * O(log n + limit). A removed account's slot is never reused, so a view held across a removal can never alias another
+ * account. The space of removed slots and of replaced names is reclaimed when the table is rebuilt at startup.
+ */
+public class PrimitiveAccountStore implements AccountStore {
+
+    static final int CHUNK_BITS = 16;
+
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int MAX_INDEX_CAPACITY = 1 << 30;
+
+    /** index entry of a never used position */
+    private static final int EMPTY = 0;
+
+    /** index entry of a removed account, probes continue past it */
+    private static final int TOMBSTONE = -1;
+
+    /** details pointer of a removed account */
+    private static final long REMOVED = -1;
+
+    private static final int ARENA_CHUNK_SIZE = 1 << 20;
+
+    /** per slot: most then least significant bits of the id */
+    private volatile long[][] ids = new long[0][];
+
+    /** per slot: balance in minor units then version */
+    private volatile AtomicLongArray[] hot = new AtomicLongArray[0];
+
+    /** per slot: position of the name and owner in the arena, see {@link #pointer(int, int)} */
+    private volatile AtomicLongArray[] details = new AtomicLongArray[0];
+
+    /** per slot: transfers, null until the first one */
+    private volatile AtomicReferenceArray<TransferHistory>[] transfers = newTransferChunks(0);
+
+    /** name then owner of every slot, each as an int byte length (-1 for null) followed by UTF-8 bytes */
+    private volatile byte[][] arena = new byte[0][];
+
+    /** write position in the last arena chunk, guarded by the lock */
+    private int arenaPosition = ARENA_CHUNK_SIZE;
+
+    /** slot number + 1 of the account at each position, or EMPTY or TOMBSTONE */
+    private volatile AtomicIntegerArray index;
+
+    /** guards slot allocation, index writes and rebuilds */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** number of allocated slots, written once a new slot is filled */
+    private volatile int slots;
+
+    /** number of index positions that are not EMPTY */
+    private int used;
+
+    private volatile int size;
+
+    /** ids in order for {@link #page(UUID, int)}, changed with the lock held */
+    private final OrderedIds order = new OrderedIds();
+
+    public PrimitiveAccountStore() {
+        this(0);
+    }
+
+    /**
+     * @param expectedAccounts number of accounts to size the index for, so that loading them needs no rebuild
+     */
+    public PrimitiveAccountStore(int expectedAccounts) {
+        index = new AtomicIntegerArray(indexCapacity(expectedAccounts));
+    }
+
+    @Override
+    public Account get(UUID id) {
+        return get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb most significant bits of the id
+     * @param lsb least significant bits of the id
+     * @return a view of the account with that id, null if there is none
+     */
+    @Override
+    public Account get(long msb, long lsb) {
+        int slot = find(index, msb, lsb);
+        if (slot < 0 || isRemoved(slot)) {
+            return null;
+        }
+        return new View(slot);
+    }
+
+    @Override
+    public Account put(Account account) {
+        lock.lock();
+        try {
+            return store(account, true);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Account putIfAbsent(Account account) {
+        lock.lock();
+        try {
+            return store(account, false);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Account remove(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        lock.lock();
+        try {
+            AtomicIntegerArray table = index;
+            int position = position(table, msb, lsb);
+            if (position < 0) {
+                return null;
+            }
+            int slot = table.get(position) - 1;
+            Account removed = copy(slot);
+            table.set(position, TOMBSTONE);
+            detailsChunk(slot).set(slot & CHUNK_MASK, REMOVED);
+            transferChunk(slot).set(slot & CHUNK_MASK, null);
+            order.remove(id);
+            size--;
+            return removed;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a weakly consistent iterator over views of the stored accounts, in insertion order
+     */
+    @Override
+    public Iterator<Account> iterator() {
+        return new Iterator<Account>() {
+
+            private final int end = allocatedSlots();
+
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < end && isRemoved(from)) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public Account next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                Account account = new View(next);
+                next = advance(next + 1);
+                return account;
+            }
+        };
+    }
+
+    @Override
+    public List<Account> page(UUID after, int limit) {
+        return order.page(this, after, limit);
+    }
+
+    /**
+     * @return the number of allocated slots, including those of removed accounts
+     */
+    int allocatedSlots() {
+        return slots;
+    }
+
+    /**
+     * must be called with the lock held
+     */
+    private Account store(Account account, boolean replace) {
+        long msb = account.getId().getMostSignificantBits();
+        long lsb = account.getId().getLeastSignificantBits();
+        int position = position(index, msb, lsb);
+        if (position >= 0) {
+            int slot = index.get(position) - 1;
+            Account previous = copy(slot);
+            if (replace) {
+                AtomicLongArray chunk = hotChunk(slot);
+                int offset = (slot & CHUNK_MASK) << 1;
+                chunk.set(offset, account.getBalanceMinor());
+                detailsChunk(slot).set(slot & CHUNK_MASK, writeDetails(account.getName(), account.getOwner()));
+                transferChunk(slot).set(slot & CHUNK_MASK, transfersOf(account));
+                chunk.addAndGet(offset + 1, Account.VERSION_STEP);
+            }
+            return previous;
+        }
+        if (used + 1 > index.length() >> 1) {
+            rebuild(indexCapacity(size + 1));
+        }
+        int slot = allocate(msb, lsb, account);
+        AtomicIntegerArray table = index;
+        int mask = table.length() - 1;
+        int i = hash(msb, lsb) & mask;
+        while (table.get(i) != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        // publishing the index entry makes the slot visible to readers
+        table.set(i, slot + 1);
+        order.add(account.getId());
+        used++;
+        size++;
+        return null;
+    }
+
+    /**
+     * fill a new slot. Must be called with the lock held.
+     */
+    private int allocate(long msb, long lsb, Account account) {
+        int slot = slots;
+        if (slot == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Account table is full.");
+        }
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk == ids.length) {
+            long[][] idChunks = Arrays.copyOf(ids, chunk + 1);
+            idChunks[chunk] = new long[CHUNK_SIZE << 1];
+            AtomicLongArray[] hotChunks = Arrays.copyOf(hot, chunk + 1);
+            hotChunks[chunk] = new AtomicLongArray(CHUNK_SIZE << 1);
+            AtomicLongArray[] detailsChunks = Arrays.copyOf(details, chunk + 1);
+            detailsChunks[chunk] = new AtomicLongArray(CHUNK_SIZE);
+            AtomicReferenceArray<TransferHistory>[] transferChunks = Arrays.copyOf(transfers, chunk + 1);
+            transferChunks[chunk] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            ids = idChunks;
+            hot = hotChunks;
+            details = detailsChunks;
+            transfers = transferChunks;
+        }
+        int offset = (slot & CHUNK_MASK) << 1;
+        long[] idChunk = ids[chunk];
+        idChunk[offset] = msb;
+        idChunk[offset + 1] = lsb;
+        hot[chunk].set(offset, account.getBalanceMinor());
+        details[chunk].set(slot & CHUNK_MASK, writeDetails(account.getName(), account.getOwner()));
+        transfers[chunk].set(slot & CHUNK_MASK, transfersOf(account));
+        slots = slot + 1;
+        return slot;
+    }
+
+    /**
+     * replace the index by one of {@code capacity} positions holding the live accounts only. Must be called with the
+     * lock held. Readers keep using the old index until the new one is published, which is safe since slots never move.
+     */
+    private void rebuild(int capacity) {
+        AtomicIntegerArray old = index;
+        if (capacity == old.length() && used - size == 0) {
+            throw new IllegalStateException("Account table is full.");
+        }
+        AtomicIntegerArray table = new AtomicIntegerArray(capacity);
+        int mask = capacity - 1;
+        for (int p = 0; p < old.length(); p++) {
+            int entry = old.get(p);
+            if (entry > 0) {
+                int slot = entry - 1;
+                long[] idChunk = ids[slot >>> CHUNK_BITS];
+                int offset = (slot & CHUNK_MASK) << 1;
+                int i = hash(idChunk[offset], idChunk[offset + 1]) & mask;
+                while (table.get(i) != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table.set(i, entry);
+            }
+        }
+        used = size;
+        index = table;
+    }
+
+    /**
+     * @return the slot of the account whose id is msb/lsb in {@code table}, -1 if there is none
+     */
+    private int find(AtomicIntegerArray table, long msb, long lsb) {
+        int position = position(table, msb, lsb);
+        return position < 0 ? -1 : table.get(position) - 1;
+    }
+
+    /**
+     * @return the position of the id msb/lsb in {@code table}, -1 if it is not there
+     */
+    private int position(AtomicIntegerArray table, long msb, long lsb) {
+        int mask = table.length() - 1;
+        int i = hash(msb, lsb) & mask;
+        // bounded so that a reader racing a rebuild of a full index cannot loop forever
+        for (int probes = 0; probes <= mask; probes++) {
+            int entry = table.get(i);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry != TOMBSTONE) {
+                int slot = entry - 1;
+                long[] idChunk = ids[slot >>> CHUNK_BITS];
+                int offset = (slot & CHUNK_MASK) << 1;
+                if (idChunk[offset] == msb && idChunk[offset + 1] == lsb) {
+                    return i;
+                }
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private AtomicLongArray hotChunk(int slot) {
+        return hot[slot >>> CHUNK_BITS];
+    }
+
+    private AtomicLongArray detailsChunk(int slot) {
+        return details[slot >>> CHUNK_BITS];
+    }
+
+    private AtomicReferenceArray<TransferHistory> transferChunk(int slot) {
+        return transfers[slot >>> CHUNK_BITS];
+    }
+
+    private boolean isRemoved(int slot) {
+        return detailsChunk(slot).get(slot & CHUNK_MASK) == REMOVED;
+    }
+
+    /**
+     * @return the transfers of {@code account} to keep in its slot, null if it has none
+     */
+    private static TransferHistory transfersOf(Account account) {
+        TransferHistory history = account.getHistory();
+        return history.size() == 0 ? null : history;
+    }
+
+    /**
+     * @return the arena position of an entry, chunk in the high int and offset in the low int
+     */
+    private static long pointer(int chunk, int offset) {
+        return ((long) chunk << 32) | offset;
+    }
+
+    /**
+     * append {@code name} and {@code owner} to the arena. Must be called with the lock held.
+     *
+     * @return the position of the entry, to publish in the slot
+     */
+    private long writeDetails(String name, String owner) {
+        byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        byte[] ownerBytes = owner == null ? null : owner.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + (nameBytes == null ? 0 : nameBytes.length) + (ownerBytes == null ? 0 : ownerBytes.length);
+        byte[][] chunks = arena;
+        if (arenaPosition + length > ARENA_CHUNK_SIZE || chunks.length == 0) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            // a larger entry gets a chunk of its own
+            chunks[chunks.length - 1] = new byte[Math.max(ARENA_CHUNK_SIZE, length)];
+            arena = chunks;
+            arenaPosition = 0;
+        }
+        int chunk = chunks.length - 1;
+        int offset = arenaPosition;
+        byte[] bytes = chunks[chunk];
+        int position = putBytes(bytes, offset, nameBytes);
+        arenaPosition = putBytes(bytes, position, ownerBytes);
+        return pointer(chunk, offset);
+    }
+
+    private static int putBytes(byte[] target, int position, byte[] bytes) {
+        int length = bytes == null ? -1 : bytes.length;
+        target[position] = (byte) (length >>> 24);
+        target[position + 1] = (byte) (length >>> 16);
+        target[position + 2] = (byte) (length >>> 8);
+        target[position + 3] = (byte) length;
+        if (bytes != null) {
+            System.arraycopy(bytes, 0, target, position + 4, bytes.length);
+            return position + 4 + bytes.length;
+        }
+        return position + 4;
+    }
+
+    /**
+     * @param field 0 for the name, 1 for the owner
+     * @return the field of the account in {@code slot}, null if it is not set or the account was removed
+     */
+    private String readDetail(int slot, int field) {
+        long pointer = detailsChunk(slot).get(slot & CHUNK_MASK);
+        if (pointer == REMOVED) {
+            return null;
+        }
+        byte[] bytes = arena[(int) (pointer >>> 32)];
+        int position = (int) pointer;
+        for (int i = 0; ; i++) {
+            int length = ((bytes[position] & 0xff) << 24) | ((bytes[position + 1] & 0xff) << 16)
+                    | ((bytes[position + 2] & 0xff) << 8) | (bytes[position + 3] & 0xff);
+            if (i == field) {
+                return length < 0 ? null : new String(bytes, position + 4, length, StandardCharsets.UTF_8);
+            }
+            position += 4 + Math.max(0, length);
+        }
+    }
+
+    /**
+     * replace the name or owner of the account in {@code slot}, unless it was removed
+     */
+    private void writeDetail(int slot, int field, String value) {
+        lock.lock();
+        try {
+            AtomicLongArray chunk = detailsChunk(slot);
+            if (chunk.get(slot & CHUNK_MASK) == REMOVED) {
+                return;
+            }
+            String name = field == 0 ? value : readDetail(slot, 0);
+            String owner = field == 1 ? value : readDetail(slot, 1);
+            chunk.set(slot & CHUNK_MASK, writeDetails(name, owner));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a plain Account holding the current state of {@code slot}
+     */
+    private Account copy(int slot) {
+        Account account = new Account();
+        long[] idChunk = ids[slot >>> CHUNK_BITS];
+        int offset = (slot & CHUNK_MASK) << 1;
+        account.setId(new UUID(idChunk[offset], idChunk[offset + 1]));
+        account.setName(readDetail(slot, 0));
+        account.setOwner(readDetail(slot, 1));
+        account.setBalanceMinor(hotChunk(slot).get(offset));
+        TransferHistory history = transferChunk(slot).get(slot & CHUNK_MASK);
+        if (history != null) {
+            for (Transfer transfer : history.toList()) {
+                account.addTransfer(transfer);
+            }
+        }
+        return account;
+    }
+
+    static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int indexCapacity(int accounts) {
+        long capacity = Long.highestOneBit(Math.max(16L, (long) accounts * 2) - 1) << 1;
+        return (int) Math.min(MAX_INDEX_CAPACITY, capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<TransferHistory>[] newTransferChunks(int length) {
+        return (AtomicReferenceArray<TransferHistory>[]) new AtomicReferenceArray[length];
+    }
+
+    /**
+     * An account stored in a slot of the table. Every accessor reads or writes the table, so changes made through
+     * any view of the slot are seen by all others.
+     *
+     * Public so that Jersey can serve it as a sub-resource.
+     */
+    public final class View extends Account {
+
+        private final int slot;
+
+        private final AtomicLongArray chunk;
+
+        private final int offset;
+
+        private UUID id;
+
+        View(int slot) {
+            this.slot = slot;
+            this.chunk = hotChunk(slot);
+            this.offset = (slot & CHUNK_MASK) << 1;
+        }
+
+        @Override
+        public UUID getId() {
+            if (id == null) {
+                long[] idChunk = ids[slot >>> CHUNK_BITS];
+                id = new UUID(idChunk[offset], idChunk[offset + 1]);
+            }
+            return id;
+        }
+
+        @Override
+        public void setId(UUID id) {
+            throw new UnsupportedOperationException("The id of a stored account cannot change.");
+        }
+
+        @Override
+        public String getName() {
+            return readDetail(slot, 0);
+        }
+
+        @Override
+        public void setName(String name) {
+            writeDetail(slot, 0, name);
+            chunk.addAndGet(offset + 1, Account.VERSION_STEP);
+        }
+
+        @Override
+        public String getOwner() {
+            return readDetail(slot, 1);
+        }
+
+        @Override
+        public void setOwner(String owner) {
+            writeDetail(slot, 1, owner);
+            chunk.addAndGet(offset + 1, Account.VERSION_STEP);
+        }
+
+        @Override
+        public List<Transfer> getTransfers() {
+            return getHistory().toList();
+        }
+
+        @Override
+        public TransferHistory getHistory() {
+            TransferHistory history = transferChunk(slot).get(slot & CHUNK_MASK);
+            return history == null ? TransferHistory.EMPTY : history;
+        }
+
+        /**
+         * transfers are added with the account locked, so the history is created by one thread only
+         */
+        @Override
+        public void addTransfer(Transfer transfer) {
+            AtomicReferenceArray<TransferHistory> chunk = transferChunk(slot);
+            TransferHistory history = chunk.get(slot & CHUNK_MASK);
+            if (history == null) {
+                history = new TransferHistory();
+                history.add(transfer);
+                chunk.set(slot & CHUNK_MASK, history);
+            }
+            else {
+                history.add(transfer);
+            }
+        }
+
+        @Override
+        public void removeTransfer(Transfer transfer) {
+            getHistory().remove(transfer);
+        }
+
+        @Override
+        public long getBalanceMinor() {
+            return chunk.get(offset);
+        }
+
+        @Override
+        public void setBalanceMinor(long balance) {
+            chunk.set(offset, balance);
+            chunk.addAndGet(offset + 1, Account.VERSION_STEP);
+        }
+
+        @Override
+        public long getVersion() {
+            return chunk.get(offset + 1);
+        }
+
+        @Override
+        public boolean beginUpdate(long expected) {
+            return (expected & 1) == 0 && chunk.compareAndSet(offset + 1, expected, expected + 1);
+        }
+
+        @Override
+        public void endUpdate() {
+            chunk.incrementAndGet(offset + 1);
+        }
+
+        @Override
+        public void depositMinor(long amount) {
+            if (amount < 0) {
+                throw new AccountBalanceException("Amount to deposit cannot be negative.");
+            }
+            long current;
+            do {
+                current = chunk.get(offset);
+            } while (!chunk.compareAndSet(offset, current, add(current, amount)));
+            chunk.addAndGet(offset + 1, Account.VERSION_STEP);
+        }
+
+        @Override
+        public void withdrawMinor(long amount) {
+            if (amount < 0) {
+                throw new AccountBalanceException("Amount to withdraw cannot be negative.");
+            }
+            long current;
+            do {
+                current = chunk.get(offset);
+            } while (!chunk.compareAndSet(offset, current, add(current, -amount)));
+            chunk.addAndGet(offset + 1, Account.VERSION_STEP);
+        }
+
+        @Override
+        public boolean tryWithdrawMinor(long amount) {
+            if (amount < 0) {
+                throw new AccountBalanceException("Amount to withdraw cannot be negative.");
+            }
+            long current;
+            do {
+                current = chunk.get(offset);
+                if (current < amount) {
+                    return false;
+                }
+            } while (!chunk.compareAndSet(offset, current, current - amount));
+            chunk.addAndGet(offset + 1, Account.VERSION_STEP);
+            return true;
+        }
+    }
+}
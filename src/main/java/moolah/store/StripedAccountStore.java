@@ -0,0 +1,86 @@
+package moolah.store;
+
+import moolah.model.Account;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Default {@link AccountStore}, backed by a lock-striped {@link StripedUUIDMap}.
+ *
+ * Writes only lock the stripe the account's id hashes to and reads never lock. The ids are also kept in order, so
+ * that a page costs O(log n + limit).
+ */
+public class StripedAccountStore implements AccountStore {
+
+    private final StripedUUIDMap<Account> accounts;
+
+    private final OrderedIds order = new OrderedIds();
+
+    public StripedAccountStore() {
+        accounts = new StripedUUIDMap<>();
+    }
+
+    /**
+     * @param concurrencyLevel estimated number of concurrently writing threads
+     * @param initialCapacity  expected number of accounts
+     */
+    public StripedAccountStore(int concurrencyLevel, int initialCapacity) {
+        accounts = new StripedUUIDMap<>(concurrencyLevel, initialCapacity);
+    }
+
+    @Override
+    public Account get(UUID id) {
+        return accounts.get(id);
+    }
+
+    @Override
+    public Account get(long msb, long lsb) {
+        return accounts.get(msb, lsb);
+    }
+
+    @Override
+    public Account put(Account account) {
+        Account previous = accounts.put(account.getId(), account);
+        order.add(account.getId());
+        return previous;
+    }
+
+    @Override
+    public Account putIfAbsent(Account account) {
+        Account previous = accounts.putIfAbsent(account.getId(), account);
+        if (previous == null) {
+            order.add(account.getId());
+        }
+        return previous;
+    }
+
+    @Override
+    public Account remove(UUID id) {
+        Account removed = accounts.remove(id);
+        if (removed != null) {
+            order.remove(id);
+            // the id may have been stored again before it was removed from the order
+            if (accounts.get(id) != null) {
+                order.add(id);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return accounts.size();
+    }
+
+    @Override
+    public Iterator<Account> iterator() {
+        return accounts.iterator();
+    }
+
+    @Override
+    public List<Account> page(UUID after, int limit) {
+        return order.page(this, after, limit);
+    }
+}
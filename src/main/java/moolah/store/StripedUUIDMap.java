@@ -0,0 +1,344 @@
+package moolah.store;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent hash map keyed by UUID and split into independently locked segments.
+ *
+ * Writers only lock the segment their key hashes to, so writes to different segments never contend. Readers never
+ * lock: bucket heads are read through an {@link AtomicReferenceArray}, chain links are immutable and values are
+ * volatile, so lookups and iteration see a consistent (possibly slightly stale) view while writers carry on.
+ *
+ * Keys are stored as the two long halves of the UUID so that callers holding the raw bits of an id can look it up
+ * without creating a UUID object.
+ *
+ * @param <V> type of the stored values
+ */
+public class StripedUUIDMap<V> implements Iterable<V> {
+
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment<V>[] segments;
+
+    /** shift applied to a hash to select its segment from the high bits */
+    private final int segmentShift;
+
+    /**
+     * create a map whose segment count is sized from the number of available processors
+     */
+    public StripedUUIDMap() {
+        this(Runtime.getRuntime().availableProcessors() * 4, 0);
+    }
+
+    /**
+     * @param concurrencyLevel estimated number of concurrently writing threads, rounded up to a power of two
+     * @param initialCapacity  expected number of entries
+     */
+    @SuppressWarnings("unchecked")
+    public StripedUUIDMap(int concurrencyLevel, int initialCapacity) {
+        int segmentCount = ceilingPowerOfTwo(Math.max(1, Math.min(concurrencyLevel, MAX_SEGMENTS)));
+        int perSegment = ceilingPowerOfTwo(Math.max(MIN_SEGMENT_CAPACITY,
+                (int) Math.min(MAX_SEGMENT_CAPACITY, (long) (initialCapacity / LOAD_FACTOR) / segmentCount + 1)));
+        segments = (Segment<V>[]) new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+        segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+    }
+
+    /**
+     * @return the value mapped to {@code id}, or null if there is none
+     */
+    public V get(UUID id) {
+        return get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb most significant bits of the id
+     * @param lsb least significant bits of the id
+     * @return the value mapped to the id, or null if there is none
+     */
+    public V get(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).get(msb, lsb, hash);
+    }
+
+    /**
+     * map {@code id} to {@code value}, replacing any existing mapping
+     *
+     * @return the previous value, or null if there was none
+     */
+    public V put(UUID id, V value) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).put(msb, lsb, hash, value, false);
+    }
+
+    /**
+     * map {@code id} to {@code value} unless it is already mapped
+     *
+     * @return the existing value, or null if {@code value} was inserted
+     */
+    public V putIfAbsent(UUID id, V value) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).put(msb, lsb, hash, value, true);
+    }
+
+    /**
+     * @return the removed value, or null if {@code id} was not mapped
+     */
+    public V remove(UUID id) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).remove(msb, lsb, hash, null);
+    }
+
+    /**
+     * remove the mapping for {@code id} only if it is currently mapped to {@code expected}
+     *
+     * @return true if the mapping was removed
+     */
+    public boolean remove(UUID id, V expected) {
+        long msb = id.getMostSignificantBits(), lsb = id.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        return expected != null && segmentFor(hash).remove(msb, lsb, hash, expected) != null;
+    }
+
+    /**
+     * @return the number of mappings. Concurrent writes may or may not be reflected.
+     */
+    public int size() {
+        long sum = 0;
+        for (Segment<V> segment : segments) {
+            sum += segment.count;
+        }
+        return (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return a weakly consistent iterator over the values that never blocks writers. It reflects every mapping that
+     * existed when it was created and was not removed since, and may or may not reflect later writes.
+     */
+    @Override
+    public Iterator<V> iterator() {
+        return new ValueIterator();
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[segmentShift == 32 ? 0 : hash >>> segmentShift];
+    }
+
+    /**
+     * Same as {@link UUID#hashCode()} followed by a finalising mix, so that ids with structured bits (e.g. time
+     * ordered ids) still spread over segments and buckets.
+     */
+    static int hash(long msb, long lsb) {
+        long hilo = msb ^ lsb;
+        int h = ((int) (hilo >> 32)) ^ (int) hilo;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int ceilingPowerOfTwo(int n) {
+        int p = Integer.highestOneBit(n);
+        return p == n ? n : p << 1;
+    }
+
+    /**
+     * Chain entry. Everything except the value is immutable; removal and resizing copy the entries they would
+     * otherwise have to relink so that readers traversing an old chain are never misdirected.
+     */
+    private static final class Node<V> {
+        final long msb;
+        final long lsb;
+        final int hash;
+        final Node<V> next;
+        volatile V value;
+
+        Node(long msb, long lsb, int hash, V value, Node<V> next) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment<V> extends ReentrantLock {
+
+        volatile AtomicReferenceArray<Node<V>> table;
+
+        volatile int count;
+
+        /** resize when {@code count} exceeds this; only accessed with the lock held */
+        private int threshold;
+
+        Segment(int capacity) {
+            table = new AtomicReferenceArray<>(capacity);
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        V get(long msb, long lsb, int hash) {
+            AtomicReferenceArray<Node<V>> tab = table;
+            for (Node<V> e = tab.get(hash & (tab.length() - 1)); e != null; e = e.next) {
+                if (e.hash == hash && e.msb == msb && e.lsb == lsb) {
+                    return e.value;
+                }
+            }
+            return null;
+        }
+
+        V put(long msb, long lsb, int hash, V value, boolean onlyIfAbsent) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+            lock();
+            try {
+                AtomicReferenceArray<Node<V>> tab = table;
+                int index = hash & (tab.length() - 1);
+                Node<V> first = tab.get(index);
+                for (Node<V> e = first; e != null; e = e.next) {
+                    if (e.hash == hash && e.msb == msb && e.lsb == lsb) {
+                        V old = e.value;
+                        if (!onlyIfAbsent) {
+                            e.value = value;
+                        }
+                        return old;
+                    }
+                }
+                if (count + 1 > threshold && tab.length() < MAX_SEGMENT_CAPACITY) {
+                    tab = rehash(tab);
+                    index = hash & (tab.length() - 1);
+                    first = tab.get(index);
+                }
+                tab.set(index, new Node<>(msb, lsb, hash, value, first));
+                count = count + 1;
+                return null;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        V remove(long msb, long lsb, int hash, Object expected) {
+            lock();
+            try {
+                AtomicReferenceArray<Node<V>> tab = table;
+                int index = hash & (tab.length() - 1);
+                Node<V> first = tab.get(index);
+                Node<V> e = first;
+                while (e != null && !(e.hash == hash && e.msb == msb && e.lsb == lsb)) {
+                    e = e.next;
+                }
+                if (e == null) {
+                    return null;
+                }
+                V old = e.value;
+                if (expected != null && expected != old) {
+                    return null;
+                }
+                // copy the entries ahead of the removed one onto its successor
+                Node<V> head = e.next;
+                for (Node<V> p = first; p != e; p = p.next) {
+                    head = new Node<>(p.msb, p.lsb, p.hash, p.value, head);
+                }
+                tab.set(index, head);
+                count = count - 1;
+                return old;
+            }
+            finally {
+                unlock();
+            }
+        }
+
+        /**
+         * double the table. The old table is left untouched so concurrent readers of it stay correct.
+         */
+        private AtomicReferenceArray<Node<V>> rehash(AtomicReferenceArray<Node<V>> old) {
+            int capacity = old.length() << 1;
+            AtomicReferenceArray<Node<V>> tab = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < old.length(); i++) {
+                for (Node<V> e = old.get(i); e != null; e = e.next) {
+                    int index = e.hash & (capacity - 1);
+                    tab.lazySet(index, new Node<>(e.msb, e.lsb, e.hash, e.value, tab.get(index)));
+                }
+            }
+            threshold = (int) (capacity * LOAD_FACTOR);
+            table = tab;
+            return tab;
+        }
+    }
+
+    private final class ValueIterator implements Iterator<V> {
+
+        private int segmentIndex = 0;
+
+        private AtomicReferenceArray<Node<V>> tab;
+
+        private int bucket = 0;
+
+        private Node<V> node;
+
+        private V nextValue;
+
+        ValueIterator() {
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextValue != null;
+        }
+
+        @Override
+        public V next() {
+            V value = nextValue;
+            if (value == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return value;
+        }
+
+        private void advance() {
+            nextValue = null;
+            while (true) {
+                if (node != null) {
+                    node = node.next;
+                }
+                while (node == null) {
+                    if (tab != null && bucket < tab.length()) {
+                        node = tab.get(bucket++);
+                    }
+                    else if (segmentIndex < segments.length) {
+                        tab = segments[segmentIndex++].table;
+                        bucket = 0;
+                    }
+                    else {
+                        return;
+                    }
+                }
+                V value = node.value;
+                if (value != null) {
+                    nextValue = value;
+                    return;
+                }
+            }
+        }
+    }
+}
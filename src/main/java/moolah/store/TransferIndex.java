@@ -0,0 +1,68 @@
+package moolah.store;
+
+import moolah.model.Transfer;
+
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * Every committed transfer, keyed by its id, for constant-time lookups.
+ *
+ * Backed by a {@link StripedUUIDMap}: adding a transfer only locks the stripe its id hashes to and lookups never
+ * lock. The index holds references to the transfers already kept in account histories, so it only costs a map entry
+ * per transfer.
+ */
+public class TransferIndex implements Iterable<Transfer> {
+
+    private final StripedUUIDMap<Transfer> transfers;
+
+    public TransferIndex() {
+        transfers = new StripedUUIDMap<>();
+    }
+
+    /**
+     * @param concurrencyLevel estimated number of concurrently writing threads
+     * @param initialCapacity  expected number of transfers
+     */
+    public TransferIndex(int concurrencyLevel, int initialCapacity) {
+        transfers = new StripedUUIDMap<>(concurrencyLevel, initialCapacity);
+    }
+
+    /**
+     * @param transfer committed transfer, its id must be set
+     */
+    public void add(Transfer transfer) {
+        transfers.put(transfer.getId(), transfer);
+    }
+
+    /**
+     * @return the transfer whose id is {@code id}, null if there is none
+     */
+    public Transfer get(UUID id) {
+        return transfers.get(id);
+    }
+
+    /**
+     * @param msb most significant bits of the id
+     * @param lsb least significant bits of the id
+     * @return the transfer with that id, null if there is none
+     */
+    public Transfer get(long msb, long lsb) {
+        return transfers.get(msb, lsb);
+    }
+
+    /**
+     * @return a weakly consistent iterator over the indexed transfers, in no particular order, that never blocks adds
+     */
+    @Override
+    public Iterator<Transfer> iterator() {
+        return transfers.iterator();
+    }
+
+    /**
+     * @return the number of indexed transfers
+     */
+    public int size() {
+        return transfers.size();
+    }
+}
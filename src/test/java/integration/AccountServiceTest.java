@@ -8,18 +8,28 @@ import moolah.model.Account;
 import moolah.model.AccountFactory;
 import moolah.model.Transfer;
 import moolah.model.TransferManager;
+import moolah.model.TransferPage;
+import moolah.providers.SmileProvider;
 import moolah.services.AccountService;
+import moolah.services.TransferExecutor;
+import moolah.services.TransferService;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.test.JerseyTest;
 import org.junit.Assert;
 import org.junit.Test;
 
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Application;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Integration test class for AccountService
@@ -63,6 +73,88 @@ public class AccountServiceTest extends JerseyTest {
         Assert.assertEquals(testAccount, fetchedAccount);
     }
 
+    /**
+     * GET /accounts/{id}
+     *
+     * Check that a client accepting Smile gets the account in Smile, and that JSON stays the default.
+     */
+    @Test
+    public void testGETSingleAccountAsSmile() throws IOException {
+        Account testAccount = testAccounts.get(1);
+        final String URI = AccountService.ACCOUNTS_ROOT + "/" + testAccount.getId().toString();
+        Response response = target(URI).request(SmileProvider.APPLICATION_SMILE).get();
+        Assert.assertEquals(SmileProvider.APPLICATION_SMILE_TYPE, response.getMediaType());
+        byte[] body = response.readEntity(byte[].class);
+        Assert.assertEquals(testAccount, SmileProvider.getMapper().readValue(body, Account.class));
+
+        response = target(URI).request(MediaType.APPLICATION_JSON, SmileProvider.APPLICATION_SMILE).get();
+        Assert.assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMediaType());
+        response = target(URI).request().get();
+        Assert.assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMediaType());
+    }
+
+    /**
+     * GET /accounts/{id}
+     *
+     * Check that the account is tagged with its version, that polling with the current tag gets a 304 NOT MODIFIED
+     * without a body, and that any change to the account makes the tag stale.
+     */
+    @Test
+    public void testGETSingleAccountConditionally() {
+        Account account = AccountFactory.createAccount("Checking", "Poller", 50.0);
+        accountService.addAccount(account);
+        final String URI = AccountService.ACCOUNTS_ROOT + "/" + account.getId().toString();
+
+        Response response = target(URI).request().get();
+        Assert.assertEquals(200, response.getStatus());
+        EntityTag tag = response.getEntityTag();
+        Assert.assertNotNull(tag);
+        Assert.assertTrue(response.readEntity(byte[].class).length > 0);
+        Assert.assertEquals(tag, target(URI).request(SmileProvider.APPLICATION_SMILE).get().getEntityTag());
+
+        response = target(URI).request().header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        Assert.assertEquals(tag, response.getEntityTag());
+        Assert.assertEquals(0, response.readEntity(byte[].class).length);
+
+        account.deposit(1.0);
+        response = target(URI).request().header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertNotEquals(tag, response.getEntityTag());
+        Assert.assertEquals(51.0, response.readEntity(Account.class).getBalance(), 0.0);
+
+        account.setName("Renamed");
+        Assert.assertEquals(200, target(URI).request().header(HttpHeaders.IF_NONE_MATCH, response.getEntityTag())
+                .get().getStatus());
+    }
+
+    /**
+     * GET /accounts/{id}/p/balance
+     *
+     * Check that attributes are tagged and answered with a 304 NOT MODIFIED like the whole account.
+     */
+    @Test
+    public void testGETAccountAttributeConditionally() {
+        Account account = AccountFactory.createAccount("Checking", "Poller", 20.0);
+        accountService.addAccount(account);
+        final String URI = AccountService.ACCOUNTS_ROOT + "/" + account.getId().toString() + "/p/balance";
+
+        Response response = target(URI).request().get();
+        Assert.assertEquals(200, response.getStatus());
+        EntityTag tag = response.getEntityTag();
+        Assert.assertNotNull(tag);
+        Assert.assertEquals("20.0", response.readEntity(String.class));
+
+        response = target(URI).request().header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        Assert.assertEquals(0, response.readEntity(byte[].class).length);
+
+        account.withdraw(5.0);
+        response = target(URI).request().header(HttpHeaders.IF_NONE_MATCH, tag).get();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("15.0", response.readEntity(String.class));
+    }
+
     /**
      * GET /accounts/{id}
      *
@@ -220,6 +312,109 @@ public class AccountServiceTest extends JerseyTest {
         Assert.assertEquals(UPDATED_NAME, accountFromResponse.getName());
     }
 
+    /**
+     * UPDATE
+     *
+     * POST /accounts/{id}
+     *
+     * Check that an update with If-Match applies only while the account still has the tag, and that any change in
+     * between, a transfer included, gets a 412 PRECONDITION FAILED and leaves the account as it is.
+     */
+    @Test
+    public void testUpdateAccountIfMatch() {
+        Account account = AccountFactory.createAccount("Checking", "Optimist", 100.0);
+        Account other = AccountFactory.createAccount("Saving", "Optimist", 0.0);
+        accountService.addAccount(account);
+        accountService.addAccount(other);
+        final String URI = AccountService.ACCOUNTS_ROOT + "/" + account.getId();
+        EntityTag tag = target(URI).request().get().getEntityTag();
+
+        Account update = new Account();
+        update.setName("First");
+        update.setOwner("Optimist");
+        Response response = target(URI).request().header(HttpHeaders.IF_MATCH, tag)
+                .post(Entity.entity(update, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(200, response.getStatus());
+        EntityTag updated = response.getEntityTag();
+        Assert.assertNotEquals(tag, updated);
+        Assert.assertEquals("First", account.getName());
+
+        update.setName("Second");
+        response = target(URI).request().header(HttpHeaders.IF_MATCH, tag)
+                .post(Entity.entity(update, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+        Assert.assertEquals(updated, response.getEntityTag());
+        Assert.assertEquals("First", account.getName());
+
+        TransferManager.doTransfer(account, other, 1.0, null);
+        response = target(URI).request().header(HttpHeaders.IF_MATCH, updated)
+                .post(Entity.entity(update, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+        response = target(URI).request().header(HttpHeaders.IF_MATCH, "\"0-0\", " + response.getEntityTag())
+                .post(Entity.entity(update, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("Second", account.getName());
+
+        update.setName("Third");
+        Assert.assertEquals(200, target(URI).request().header(HttpHeaders.IF_MATCH, "*")
+                .post(Entity.entity(update, MediaType.APPLICATION_JSON)).getStatus());
+        Assert.assertEquals(Response.Status.PRECONDITION_FAILED.getStatusCode(), target(URI).request()
+                .header(HttpHeaders.IF_MATCH, "\"not-ours\"").post(Entity.entity(update, MediaType.APPLICATION_JSON))
+                .getStatus());
+        Assert.assertEquals("Third", account.getName());
+    }
+
+    /**
+     * DELETE
+     *
+     * DELETE /accounts/{id}
+     *
+     * Check that a delete with a stale If-Match gets a 412 PRECONDITION FAILED and keeps the account.
+     */
+    @Test
+    public void testDeleteAccountIfMatch() {
+        Account account = AccountFactory.createAccount("Checking", "Optimist", 10.0);
+        accountService.addAccount(account);
+        final String URI = AccountService.ACCOUNTS_ROOT + "/" + account.getId();
+        EntityTag tag = target(URI).request().get().getEntityTag();
+
+        account.deposit(1.0);
+        Response response = target(URI).request().header(HttpHeaders.IF_MATCH, tag).delete();
+        Assert.assertEquals(Response.Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+        Assert.assertNotNull(AccountService.getAccountStore().get(account.getId()));
+
+        response = target(URI).request().header(HttpHeaders.IF_MATCH, response.getEntityTag()).delete();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertNull(AccountService.getAccountStore().get(account.getId()));
+        Assert.assertEquals(404, target(URI).request().header(HttpHeaders.IF_MATCH, tag).delete().getStatus());
+    }
+
+    /**
+     * DELETE
+     *
+     * DELETE /accounts/{id}
+     *
+     * Check that a delete without If-Match waits for an update in progress, and ends its own claim on the account.
+     */
+    @Test(timeout = 10000)
+    public void testDeleteAccountWaitsForUpdate() throws Exception {
+        Account account = AccountFactory.createAccount("Checking", "Patient", 10.0);
+        accountService.addAccount(account);
+        final String URI = AccountService.ACCOUNTS_ROOT + "/" + account.getId();
+        Account stored = AccountService.getAccountStore().get(account.getId());
+
+        stored.beginUpdate();
+        CompletableFuture<Response> delete = CompletableFuture.supplyAsync(() -> target(URI).request().delete());
+        Thread.sleep(100);
+        Assert.assertFalse(delete.isDone());
+        Assert.assertNotNull(AccountService.getAccountStore().get(account.getId()));
+        stored.endUpdate();
+
+        Assert.assertEquals(200, delete.get().getStatus());
+        Assert.assertNull(AccountService.getAccountStore().get(account.getId()));
+        Assert.assertEquals(0, stored.getVersion() & 1);
+    }
+
     /**
      * UPDATE
      *
@@ -356,6 +551,28 @@ public class AccountServiceTest extends JerseyTest {
         Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response1.getStatus());
     }
 
+    /**
+     * CREATE, TRANSFER
+     *
+     * POST /accounts, POST /accounts/{id1}/transfer/{id2}
+     *
+     * Check that amounts too large for a balance get a 400 BAD REQUEST rather than wrapping around.
+     */
+    @Test
+    public void testAmountsTooLargeReturnBadRequest() {
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), target(AccountService.ACCOUNTS_ROOT).request()
+                .post(Entity.entity("{\"name\":\"Huge\",\"owner\":\"Owner\",\"balance\":1e300}",
+                        MediaType.APPLICATION_JSON)).getStatus());
+
+        final Account fromAccount = testAccounts.get(0);
+        final Account toAccount = testAccounts.get(1);
+        final long balance = fromAccount.getBalanceMinor();
+        final String URI = String.format("/accounts/%s/transfer/%s", fromAccount.getId(), toAccount.getId());
+        Response response = target(URI).request().post(Entity.entity("{\"amount\":1e300}", MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        Assert.assertEquals(balance, fromAccount.getBalanceMinor());
+    }
+
     /**
      * TRANSFER
      *
@@ -527,6 +744,26 @@ public class AccountServiceTest extends JerseyTest {
         Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
     }
 
+    /**
+     * TRANSFER
+     *
+     * POST /accounts/{id1}/transfer/{id2}
+     *
+     * Check that 400 Bad Request is returned when the body refers to an account that does not exist.
+     */
+    @Test
+    public void testTransferReturnsBadRequestWhenBodyRefersToUnknownAccount() {
+        Assert.assertTrue(testAccounts.size() > 1);
+        final Account fromAccount = testAccounts.get(0);
+        final Account toAccount = testAccounts.get(1);
+
+        final String URI = String.format("/accounts/%s/transfer/%s", fromAccount.getId(), toAccount.getId());
+        String body = String.format("{\"from\":\"%s\",\"amount\":1.0}", UUID.randomUUID());
+        Response response = target(URI).request().post(Entity.entity(body, MediaType.APPLICATION_JSON));
+
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
     /**
      * TRANSFER
      *
@@ -629,4 +866,276 @@ public class AccountServiceTest extends JerseyTest {
         Response response = target(URI).request().get();
         Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
     }
+
+    /**
+     * TRANSFER
+     *
+     * GET /accounts/{id}/transfers?limit={limit}&cursor={cursor}
+     *
+     * Check that following the cursors returns every transfer of the account once, newest first.
+     */
+    @Test
+    public void testPageThroughTransfers() {
+        Account account1 = AccountFactory.createAccount("Checking", "Pager", 1000.0);
+        Account account2 = AccountFactory.createAccount("Saving", "Pager", 1000.0);
+        accountService.addAccount(account1);
+        accountService.addAccount(account2);
+        List<Transfer> made = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            made.add(i % 2 == 0 ? TransferManager.doTransfer(account1, account2, 1.0, "T" + i)
+                    : TransferManager.doTransfer(account2, account1, 1.0, "T" + i));
+        }
+
+        List<Transfer> fetched = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            WebTarget target = target(String.format("/accounts/%s/transfers", account1.getId())).queryParam("limit", 3);
+            if (cursor != null) {
+                target = target.queryParam("cursor", cursor);
+            }
+            TransferPage page = target.request().get(TransferPage.class);
+            Assert.assertTrue(page.getTransfers().size() <= 3);
+            fetched.addAll(page.getTransfers());
+            cursor = page.getNext();
+            pages++;
+        } while (cursor != null);
+
+        Assert.assertEquals(3, pages);
+        Collections.reverse(made);
+        Assert.assertEquals(made, fetched);
+        Assert.assertEquals("T6", fetched.get(0).getName());
+    }
+
+    /**
+     * Check that the account resource no longer embeds its transfers
+     */
+    @Test
+    public void testAccountJSONDoesNotEmbedTransfers() {
+        Account account1 = AccountFactory.createAccount("Checking", "Embed", 1000.0);
+        Account account2 = AccountFactory.createAccount("Saving", "Embed", 1000.0);
+        accountService.addAccount(account1);
+        accountService.addAccount(account2);
+        TransferManager.doTransfer(account1, account2, 1.0, null);
+
+        JsonNode json = target(AccountService.ACCOUNTS_ROOT + "/" + account1.getId()).request().get(JsonNode.class);
+        Assert.assertFalse(json.has("transfers"));
+        Assert.assertEquals(999.0, json.get("balance").asDouble(), 0.0);
+    }
+
+    /**
+     * Check that invalid limits and cursors get a 400 Bad Request, and unknown accounts a 404 Not Found
+     */
+    @Test
+    public void testPageThroughTransfersInvalidRequests() {
+        final String URI = String.format("/accounts/%s/transfers", testAccounts.get(0).getId());
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                target(URI).queryParam("limit", 0).request().get().getStatus());
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                target(URI).queryParam("limit", AccountService.TRANSFERS_MAX_LIMIT + 1).request().get().getStatus());
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                target(URI).queryParam("cursor", "not-a-cursor").request().get().getStatus());
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(),
+                target(String.format("/accounts/%s/transfers", UUID.randomUUID())).request().get().getStatus());
+    }
+
+    /**
+     * GET /accounts?limit={limit}
+     *
+     * Check that following the next links visits every account once, in id order.
+     */
+    @Test
+    public void testPageThroughAccounts() {
+        for (int i = 0; i < 5; i++) {
+            accountService.addAccount(AccountFactory.createAccount("Checking", "Paged", 1.0));
+        }
+        int total = target(AccountService.ACCOUNTS_ROOT).request().get(new GenericType<List<Account>>(){}).size();
+
+        List<UUID> ids = new ArrayList<>();
+        WebTarget page = target(AccountService.ACCOUNTS_ROOT).queryParam("limit", 2);
+        while (page != null) {
+            Response response = page.request().get();
+            Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            Link next = response.getLink("next");
+            List<Account> accounts = response.readEntity(new GenericType<List<Account>>(){});
+            Assert.assertTrue(accounts.size() == 2 || next == null);
+            for (Account account : accounts) {
+                ids.add(account.getId());
+            }
+            page = next == null ? null : client().target(next);
+        }
+
+        List<UUID> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        Assert.assertEquals(sorted, ids);
+        Assert.assertEquals(new HashSet<>(ids).size(), ids.size());
+        // other tests may add or delete accounts in between
+        Assert.assertTrue(Math.abs(total - ids.size()) <= 5);
+    }
+
+    /**
+     * GET /accounts with Accept: application/x-ndjson
+     *
+     * Check that accounts can be listed one JSON object per line.
+     */
+    @Test
+    public void testGETAccountsAsNDJSON() throws IOException {
+        Account account = testAccounts.get(0);
+        String body = target(AccountService.ACCOUNTS_ROOT).request(TransferService.APPLICATION_NDJSON).get(String.class);
+        ObjectMapper mapper = new ObjectMapper();
+        boolean found = false;
+        for (String line : body.split("\n")) {
+            JsonNode json = mapper.readTree(line);
+            Assert.assertTrue(json.isObject());
+            found |= account.getId().toString().equals(json.get("id").asText());
+        }
+        Assert.assertTrue(found);
+    }
+
+    /**
+     * GET /accounts?after={after} with Accept: application/x-ndjson
+     *
+     * Check that a page past the last account is an empty body, and an empty array in JSON.
+     */
+    @Test
+    public void testGETEmptyPageAsNDJSON() {
+        // ids compare as signed numbers
+        final String LAST = new UUID(Long.MAX_VALUE, Long.MAX_VALUE).toString();
+        Response response = target(AccountService.ACCOUNTS_ROOT).queryParam("after", LAST)
+                .request(TransferService.APPLICATION_NDJSON).get();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("", response.readEntity(String.class));
+        Assert.assertEquals("[]", target(AccountService.ACCOUNTS_ROOT).queryParam("after", LAST)
+                .request(MediaType.APPLICATION_JSON).get(String.class));
+    }
+
+    /**
+     * GET /accounts?after={after}&limit={limit}
+     *
+     * Check that invalid limits and cursors get a 400 BAD REQUEST.
+     */
+    @Test
+    public void testPageThroughAccountsInvalidRequests() {
+        final String URI = AccountService.ACCOUNTS_ROOT;
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                target(URI).queryParam("limit", 0).request().get().getStatus());
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                target(URI).queryParam("limit", AccountService.ACCOUNTS_MAX_LIMIT + 1).request().get().getStatus());
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(),
+                target(URI).queryParam("after", "not-a-cursor").request().get().getStatus());
+    }
+
+    /**
+     * POST /accounts/bulk
+     *
+     * Check that every line of a newline-delimited upload gets a result, in order, across several batches.
+     */
+    @Test
+    public void testBulkCreateFromNDJSON() throws IOException {
+        final int ACCOUNTS = 2500;
+        StringBuilder upload = new StringBuilder();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            upload.append(String.format("{\"name\":\"Bulk\",\"owner\":\"Owner %d\",\"balance\":%d.0}\n", i, i));
+        }
+        upload.append("not json\n");
+        upload.append("{\"name\":\"Bulk\",\"owner\":\"Negative\",\"balance\":-1.0}\n");
+
+        Response response = target(AccountService.ACCOUNTS_ROOT + AccountService.ACCOUNTS_BULK).request()
+                .post(Entity.entity(upload.toString(), TransferService.APPLICATION_NDJSON));
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        String[] lines = response.readEntity(String.class).split("\n");
+        Assert.assertEquals(ACCOUNTS + 2, lines.length);
+
+        ObjectMapper mapper = new ObjectMapper();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            JsonNode result = mapper.readTree(lines[i]);
+            Assert.assertEquals(i + 1, result.get("line").asInt());
+            Account created = accountService.getAccount(UUID.fromString(result.get("id").asText()));
+            Assert.assertEquals("Owner " + i, created.getOwner());
+            Assert.assertEquals(i, created.getBalance(), 0.0);
+        }
+        Assert.assertEquals(ACCOUNTS + 1, mapper.readTree(lines[ACCOUNTS]).get("line").asInt());
+        Assert.assertNotNull(mapper.readTree(lines[ACCOUNTS]).get("error"));
+        Assert.assertNotNull(mapper.readTree(lines[ACCOUNTS + 1]).get("error"));
+    }
+
+    /**
+     * POST /accounts/bulk
+     *
+     * Check that accounts can be uploaded as a JSON array.
+     */
+    @Test
+    public void testBulkCreateFromJSONArray() throws IOException {
+        String upload = "[{\"name\":\"Array\",\"owner\":\"One\",\"balance\":1.0},"
+                + "{\"name\":\"Array\",\"owner\":\"Two\",\"balance\":2.0}]";
+        Response response = target(AccountService.ACCOUNTS_ROOT + AccountService.ACCOUNTS_BULK).request()
+                .post(Entity.entity(upload, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        String[] lines = response.readEntity(String.class).split("\n");
+        Assert.assertEquals(2, lines.length);
+        JsonNode second = new ObjectMapper().readTree(lines[1]);
+        Assert.assertEquals(2, second.get("line").asInt());
+        Assert.assertEquals("Two", accountService.getAccount(UUID.fromString(second.get("id").asText())).getOwner());
+    }
+
+    /**
+     * POST /accounts/{fromId}/transfer/{toId} with an Idempotency-Key header
+     *
+     * Check that a retried transfer gets the first transfer back and moves the money once, and that reusing the key
+     * for another transfer gets a 400 BAD REQUEST.
+     */
+    @Test
+    public void testTransferWithIdempotencyKey() {
+        Account from = AccountFactory.createAccount("Checking", "Retry", 100.0);
+        Account to = AccountFactory.createAccount("Saving", "Retry", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+        final String URI = String.format("/accounts/%s/transfer/%s", from.getId(), to.getId());
+        final String KEY = UUID.randomUUID().toString();
+        Transfer request = new Transfer();
+        request.setAmount(30.0);
+
+        JsonNode first = target(URI).request().header(AccountService.IDEMPOTENCY_KEY, KEY)
+                .post(Entity.entity(request, MediaType.APPLICATION_JSON), JsonNode.class);
+        JsonNode retry = target(URI).request().header(AccountService.IDEMPOTENCY_KEY, KEY)
+                .post(Entity.entity(request, MediaType.APPLICATION_JSON), JsonNode.class);
+        Assert.assertEquals(first.get("id").asText(), retry.get("id").asText());
+        Assert.assertEquals(70.0, from.getBalance(), 0.0);
+
+        request.setAmount(40.0);
+        Response response = target(URI).request().header(AccountService.IDEMPOTENCY_KEY, KEY)
+                .post(Entity.entity(request, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        Assert.assertEquals(70.0, from.getBalance(), 0.0);
+    }
+
+    /**
+     * POST /accounts/{fromId}/transfer/{toId}
+     *
+     * Check that a transfer the executor cannot take gets a 503 SERVICE UNAVAILABLE with a Retry-After header, and
+     * moves no money.
+     */
+    @Test
+    public void testTransferRejectedWhenExecutorIsFull() {
+        Account from = testAccounts.get(0);
+        Account to = testAccounts.get(1);
+        double balance = from.getBalance();
+        Transfer request = new Transfer();
+        request.setAmount(1.0);
+
+        TransferExecutor executor = AccountService.getTransferExecutor();
+        TransferExecutor closed = new TransferExecutor(1, 1, 5);
+        closed.close();
+        AccountService.setTransferExecutor(closed);
+        try {
+            Response response = target(String.format("/accounts/%s/transfer/%s", from.getId(), to.getId())).request()
+                    .post(Entity.entity(request, MediaType.APPLICATION_JSON));
+            Assert.assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+            Assert.assertEquals("5", response.getHeaderString("Retry-After"));
+        }
+        finally {
+            AccountService.setTransferExecutor(executor);
+        }
+        Assert.assertEquals(balance, from.getBalance(), 0.0);
+    }
 }
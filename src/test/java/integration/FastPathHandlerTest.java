@@ -0,0 +1,166 @@
+package integration;
+
+import moolah.Configuration;
+import moolah.Main;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.TransferManager;
+import moolah.services.AccountService;
+import moolah.services.FastPathHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.UUID;
+
+/**
+ * Integration test class for FastPathHandler, served next to the Jersey application as {@link Main} sets it up
+ */
+public class FastPathHandlerTest {
+
+    private static HttpServer server;
+
+    private static Client client;
+
+    private static WebTarget target;
+
+    private static AccountService accountService = new AccountService();
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        System.setProperty(Configuration.SERVER_PORT, Integer.toString(port));
+        System.setProperty(Configuration.FASTPATH_ENABLED, "true");
+        try {
+            server = Main.startServer();
+        }
+        finally {
+            System.clearProperty(Configuration.SERVER_PORT);
+            System.clearProperty(Configuration.FASTPATH_ENABLED);
+        }
+        client = ClientBuilder.newClient();
+        target = client.target("http://localhost:" + port);
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        client.close();
+        server.shutdownNow();
+    }
+
+    /**
+     * GET /fast/balance/{id}
+     *
+     * Check that the balance is returned as plain text, and that unknown and malformed ids get a 404 and a 400.
+     */
+    @Test
+    public void testGETBalance() {
+        Account account = AccountFactory.createAccount("Checking", "Fast", 1234.5);
+        accountService.addAccount(account);
+
+        Response response = balance(account.getId().toString()).request().get();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals("1234.5", response.readEntity(String.class));
+        Assert.assertEquals(404, balance(UUID.randomUUID().toString()).request().get().getStatus());
+        Assert.assertEquals(400, balance(account.getId().toString().replace('-', 'x')).request().get().getStatus());
+        Assert.assertEquals(405, balance(account.getId().toString()).request().post(Entity.text("1")).getStatus());
+        Assert.assertEquals(404, target.path(FastPathHandler.CONTEXT + "/nowhere").request().get().getStatus());
+    }
+
+    /**
+     * POST /fast/transfer/{fromId}/{toId}
+     *
+     * Check that a transfer is committed through the same engine as the JSON endpoint, named after the body, and that
+     * its id is returned.
+     */
+    @Test
+    public void testPOSTTransfer() {
+        Account from = AccountFactory.createAccount("Checking", "Fast", 100.0);
+        Account to = AccountFactory.createAccount("Saving", "Fast", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+
+        Response response = transfer(from.getId(), to.getId()).request().post(Entity.text("12.5 rent \u00e9t\u00e9\n"));
+        Assert.assertEquals(200, response.getStatus());
+        UUID id = UUID.fromString(response.readEntity(String.class));
+        Assert.assertEquals("rent \u00e9t\u00e9", TransferManager.getIndex().get(id).getName());
+        Assert.assertEquals(87.5, from.getBalance(), 0.0);
+        Assert.assertEquals(12.5, to.getBalance(), 0.0);
+
+        response = transfer(from.getId(), to.getId()).request().post(Entity.text("80"));
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertNull(TransferManager.getIndex().get(UUID.fromString(response.readEntity(String.class))).getName());
+        Assert.assertEquals(7.5, from.getBalance(), 0.0);
+    }
+
+    /**
+     * POST /fast/transfer/{fromId}/{toId}
+     *
+     * Check that the amount is transferred exactly as written, even beyond what a double holds to the minor unit.
+     */
+    @Test
+    public void testPOSTTransferIsExact() {
+        Account from = AccountFactory.createAccount("Checking", "Fast", 0.0);
+        Account to = AccountFactory.createAccount("Saving", "Fast", 0.0);
+        from.setBalanceMinor(Long.MAX_VALUE);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+
+        Response response = transfer(from.getId(), to.getId()).request().post(Entity.text("92233720368547758.07"));
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(Long.MAX_VALUE, to.getBalanceMinor());
+        Assert.assertEquals(0, from.getBalanceMinor());
+
+        response = transfer(to.getId(), from.getId()).request().post(Entity.text("90071992547409.93"));
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(9007199254740993L, from.getBalanceMinor());
+    }
+
+    /**
+     * POST /fast/transfer/{fromId}/{toId}
+     *
+     * Check that invalid transfers, malformed amounts and unknown accounts get a 400 or a 404 and change nothing,
+     * while the JSON endpoints stay served next to the handler.
+     */
+    @Test
+    public void testPOSTInvalidTransfers() {
+        Account from = AccountFactory.createAccount("Checking", "Fast", 10.0);
+        Account to = AccountFactory.createAccount("Saving", "Fast", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+
+        Assert.assertEquals(400, transfer(from.getId(), to.getId()).request().post(Entity.text("10.01")).getStatus());
+        Assert.assertEquals(400, transfer(from.getId(), from.getId()).request().post(Entity.text("1")).getStatus());
+        Assert.assertEquals(400, transfer(from.getId(), to.getId()).request().post(Entity.text("1.234")).getStatus());
+        Assert.assertEquals(400, transfer(from.getId(), to.getId()).request().post(Entity.text("")).getStatus());
+        Response response = transfer(UUID.randomUUID(), to.getId()).request().post(Entity.text("1"));
+        Assert.assertEquals(404, response.getStatus());
+        Assert.assertEquals("From account not found.", response.readEntity(String.class));
+        Assert.assertEquals(404, transfer(from.getId(), UUID.randomUUID()).request().post(Entity.text("1")).getStatus());
+        Assert.assertEquals(10.0, from.getBalance(), 0.0);
+
+        response = target.path(AccountService.ACCOUNTS_ROOT + "/" + from.getId()).request(MediaType.APPLICATION_JSON).get();
+        Assert.assertEquals(200, response.getStatus());
+    }
+
+    private static WebTarget balance(String id) {
+        return target.path(FastPathHandler.CONTEXT + FastPathHandler.BALANCE + id);
+    }
+
+    private static WebTarget transfer(UUID from, UUID to) {
+        return target.path(FastPathHandler.CONTEXT + FastPathHandler.TRANSFER + from + "/" + to);
+    }
+}
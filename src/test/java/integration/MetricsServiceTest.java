@@ -0,0 +1,82 @@
+package integration;
+
+import moolah.metrics.PrometheusWriter;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.services.AccountService;
+import moolah.services.MetricsService;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.UUID;
+
+/**
+ * Integration test class for MetricsService
+ */
+public class MetricsServiceTest extends JerseyTest {
+
+    private static AccountService accountService = new AccountService();
+
+    @Override
+    protected Application configure() {
+        return new ResourceConfig(MetricsService.class).packages("moolah");
+    }
+
+    /**
+     * GET /metrics
+     *
+     * Check that requests are counted under their route template and status, matched or not.
+     */
+    @Test
+    public void testGETMetricsCountsRequestsByRoute() {
+        Account account = AccountFactory.createAccount("Checking", "Metrics", 10.0);
+        accountService.addAccount(account);
+        Assert.assertEquals(200, target(AccountService.ACCOUNTS_ROOT + "/" + account.getId()).request().get().getStatus());
+        Assert.assertEquals(404, target(AccountService.ACCOUNTS_ROOT + "/" + UUID.randomUUID()).request().get().getStatus());
+        Assert.assertEquals(404, target("/nowhere").request().get().getStatus());
+
+        Response response = target(MetricsService.METRICS_ROOT).request().get();
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(MediaType.valueOf(PrometheusWriter.CONTENT_TYPE).withCharset(null).toString(),
+                response.getMediaType().withCharset(null).toString());
+        String text = response.readEntity(String.class);
+        Assert.assertTrue(text.contains("# TYPE moolah_http_request_duration_seconds histogram\n"));
+        Assert.assertTrue(text.contains(
+                "moolah_http_responses_total{method=\"GET\",route=\"/accounts/{id}\",status=\"200\"} "));
+        Assert.assertTrue(text.contains(
+                "moolah_http_responses_total{method=\"GET\",route=\"/accounts/{id}\",status=\"404\"} "));
+        Assert.assertTrue(text.contains(
+                "moolah_http_responses_total{method=\"GET\",route=\"unmatched\",status=\"404\"} "));
+        Assert.assertTrue(text.contains(
+                "moolah_http_request_duration_seconds_bucket{method=\"GET\",route=\"/accounts/{id}\",le=\"+Inf\"} "));
+        Assert.assertTrue(text.contains("\nmoolah_accounts "));
+    }
+
+    /**
+     * GET /metrics
+     *
+     * Check that transfers run asynchronously are timed, and that rejected ones are counted by reason.
+     */
+    @Test
+    public void testGETMetricsCountsTransfers() {
+        Account from = AccountFactory.createAccount("Checking", "Metrics", 10.0);
+        Account to = AccountFactory.createAccount("Saving", "Metrics", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+        String path = AccountService.ACCOUNTS_ROOT + "/" + from.getId() + "/transfer/" + to.getId();
+        Assert.assertEquals(400, target(path).request()
+                .post(Entity.entity("{\"amount\":100.0}", MediaType.APPLICATION_JSON)).getStatus());
+
+        String text = target(MetricsService.METRICS_ROOT).request().get(String.class);
+        Assert.assertTrue(text.contains("moolah_http_responses_total{method=\"POST\","
+                + "route=\"/accounts/{fromId}/transfer/{toId}\",status=\"400\"} "));
+        Assert.assertTrue(text.contains("moolah_transfers_rejected_total{reason=\"insufficient_funds\"} "));
+        Assert.assertFalse(text.contains("moolah_transfers_rejected_total{reason=\"insufficient_funds\"} 0\n"));
+    }
+}
@@ -0,0 +1,284 @@
+package integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import moolah.journal.FsyncPolicy;
+import moolah.journal.Journal;
+import moolah.journal.Snapshotter;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+import moolah.model.TransferRequest;
+import moolah.providers.SmileProvider;
+import moolah.services.AccountService;
+import moolah.services.TransferService;
+import moolah.store.AccountStore;
+import moolah.store.StripedAccountStore;
+import moolah.store.TransferIndex;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.test.JerseyTest;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Integration test class for TransferService
+ */
+public class TransferServiceTest extends JerseyTest {
+
+    private static final String BATCH = TransferService.TRANSFERS_ROOT + TransferService.TRANSFERS_BATCH;
+
+    private static AccountService accountService = new AccountService();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected Application configure() {
+        return new ResourceConfig(TransferService.class).packages("moolah");
+    }
+
+    /**
+     * GET /transfers/{id}
+     *
+     * Check that a committed transfer is returned with the ids of its accounts.
+     */
+    @Test
+    public void testGETTransfer() {
+        Account from = AccountFactory.createAccount("Checking", "Lookup", 100.0);
+        Account to = AccountFactory.createAccount("Saving", "Lookup", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+        Transfer transfer = TransferManager.doTransfer(from, to, 12.5, "rent");
+
+        JsonNode json = target(TransferService.TRANSFERS_ROOT + "/" + transfer.getId()).request().get(JsonNode.class);
+        Assert.assertEquals(transfer.getId().toString(), json.get("id").asText());
+        Assert.assertEquals(from.getId().toString(), json.get("from").asText());
+        Assert.assertEquals(to.getId().toString(), json.get("to").asText());
+        Assert.assertEquals(12.5, json.get("amount").asDouble(), 0.0);
+        Assert.assertEquals("rent", json.get("name").asText());
+    }
+
+    /**
+     * GET /transfers/{id}
+     *
+     * Check that an unknown transfer gets a 404 NOT FOUND.
+     */
+    @Test
+    public void testGETTransferWhenAbsent() {
+        Response response = target(TransferService.TRANSFERS_ROOT + "/" + UUID.randomUUID()).request().get();
+        Assert.assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * GET /transfers/{id}
+     *
+     * Check that transfers committed before a snapshot are still found after a restart, although the journal records
+     * they were committed with are gone, and that so are the account histories.
+     */
+    @Test
+    public void testGETTransferAfterSnapshotAndRestart() throws IOException {
+        // snapshot only the accounts and transfers of the test
+        AccountStore store = AccountService.getAccountStore();
+        TransferIndex index = TransferManager.getIndex();
+        AccountService.setAccountStore(new StripedAccountStore());
+        TransferManager.setIndex(new TransferIndex());
+        Path directory = folder.getRoot().toPath();
+        Journal journal = new Journal(directory, FsyncPolicy.GROUP, 5);
+        journal.start();
+        TransferManager.addListener(journal);
+        AccountService.setJournal(journal);
+        try {
+            Account from = AccountFactory.createAccount("Checking", "Restart", 100.0);
+            Account to = AccountFactory.createAccount("Saving", "Restart", 0.0);
+            accountService.addAccount(from);
+            accountService.addAccount(to);
+            Transfer before = TransferManager.doTransfer(from, to, 12.5, "before");
+            journal.sync();
+            new Snapshotter(directory, journal, AccountService.getAccountStore(), null).snapshot();
+            Transfer after = TransferManager.doTransfer(from, to, 2.5, "after");
+            journal.sync();
+
+            // restart
+            TransferManager.removeListener(journal);
+            AccountService.setJournal(null);
+            journal.close();
+            AccountStore recovered = new StripedAccountStore();
+            AccountService.setAccountStore(recovered);
+            TransferManager.setIndex(new TransferIndex());
+            journal = new Journal(directory, FsyncPolicy.GROUP, 5);
+            journal.replay(recovered, new Snapshotter(directory, journal, recovered, null).load(recovered));
+
+            JsonNode json = target(TransferService.TRANSFERS_ROOT + "/" + before.getId()).request().get(JsonNode.class);
+            Assert.assertEquals("before", json.get("name").asText());
+            Assert.assertEquals(from.getId().toString(), json.get("from").asText());
+            Assert.assertEquals(to.getId().toString(), json.get("to").asText());
+            json = target(TransferService.TRANSFERS_ROOT + "/" + after.getId()).request().get(JsonNode.class);
+            Assert.assertEquals("after", json.get("name").asText());
+
+            json = target(AccountService.ACCOUNTS_ROOT + "/" + from.getId() + "/transfers").request()
+                    .get(JsonNode.class);
+            Assert.assertEquals(2, json.get("transfers").size());
+            Assert.assertEquals(after.getId().toString(), json.get("transfers").get(0).get("id").asText());
+            Assert.assertEquals(before.getId().toString(), json.get("transfers").get(1).get("id").asText());
+        }
+        finally {
+            TransferManager.removeListener(journal);
+            AccountService.setJournal(null);
+            journal.close();
+            AccountService.setAccountStore(store);
+            TransferManager.setIndex(index);
+        }
+    }
+
+    /**
+     * POST /transfers/batch
+     *
+     * Check that every transfer of an independent batch gets its own result, in order.
+     */
+    @Test
+    public void testPOSTBatch() {
+        Account from = AccountFactory.createAccount("Checking", "Batch", 100.0);
+        Account to = AccountFactory.createAccount("Saving", "Batch", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+        List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest(from.getId().toString(), to.getId().toString(), 30.0, "one"),
+                new TransferRequest(UUID.randomUUID().toString(), to.getId().toString(), 30.0, "unknown"),
+                new TransferRequest(from.getId().toString(), to.getId().toString(), 80.0, "too much"),
+                new TransferRequest(from.getId().toString(), to.getId().toString(), 30.0, "two"));
+
+        Response response = target(BATCH).request().post(Entity.entity(requests, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        Assert.assertFalse(json.get("committed").asBoolean());
+        JsonNode results = json.get("results");
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals("one", results.get(0).get("transfer").get("name").asText());
+        Assert.assertEquals("From account not found.", results.get(1).get("error").asText());
+        Assert.assertTrue(results.get(2).get("transfer").isNull());
+        String id = results.get(3).get("transfer").get("id").asText();
+        Assert.assertEquals("two", TransferManager.getIndex().get(UUID.fromString(id)).getName());
+        Assert.assertEquals(40.0, from.getBalance(), 0.0);
+    }
+
+    /**
+     * POST /transfers/batch?mode=atomic
+     *
+     * Check that an atomic batch with one failing transfer applies none and gets a 400 BAD REQUEST.
+     */
+    @Test
+    public void testPOSTAtomicBatch() {
+        Account from = AccountFactory.createAccount("Checking", "Atomic", 100.0);
+        Account to = AccountFactory.createAccount("Saving", "Atomic", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+        List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest(from.getId().toString(), to.getId().toString(), 60.0, null),
+                new TransferRequest(from.getId().toString(), to.getId().toString(), 60.0, null));
+
+        Response response = target(BATCH).queryParam("mode", "atomic").request()
+                .post(Entity.entity(requests, MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        JsonNode results = response.readEntity(JsonNode.class).get("results");
+        Assert.assertTrue(results.get(0).get("transfer").isNull());
+        Assert.assertFalse(results.get(1).get("error").isNull());
+        Assert.assertEquals(100.0, from.getBalance(), 0.0);
+
+        response = target(BATCH).queryParam("mode", "atomic").request()
+                .post(Entity.entity(requests.subList(0, 1), MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertEquals(40.0, from.getBalance(), 0.0);
+    }
+
+    /**
+     * POST /transfers/batch
+     *
+     * Check that a batch can be streamed as newline-delimited JSON, a malformed line rejecting only its transfer.
+     */
+    @Test
+    public void testPOSTBatchAsNDJSON() {
+        Account from = AccountFactory.createAccount("Checking", "Stream", 100.0);
+        Account to = AccountFactory.createAccount("Saving", "Stream", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+        String line = String.format("{\"from\":\"%s\",\"to\":\"%s\",\"amount\":10.0}\n", from.getId(), to.getId());
+        String body = line + "not json\n\n" + line;
+
+        Response response = target(BATCH).request()
+                .post(Entity.entity(body, TransferService.APPLICATION_NDJSON));
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        JsonNode results = response.readEntity(JsonNode.class).get("results");
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("Malformed transfer", results.get(1).get("error").asText());
+        Assert.assertEquals(80.0, from.getBalance(), 0.0);
+    }
+
+    /**
+     * POST /transfers/batch
+     *
+     * Check that a batch can be sent and its results received in Smile.
+     */
+    @Test
+    public void testPOSTBatchAsSmile() throws IOException {
+        Account from = AccountFactory.createAccount("Checking", "Smile", 100.0);
+        Account to = AccountFactory.createAccount("Saving", "Smile", 0.0);
+        accountService.addAccount(from);
+        accountService.addAccount(to);
+        List<TransferRequest> requests = Arrays.asList(
+                new TransferRequest(from.getId().toString(), to.getId().toString(), 25.5, "one"),
+                new TransferRequest(from.getId().toString(), to.getId().toString(), 200.0, "too much"));
+        byte[] body = SmileProvider.getMapper().writeValueAsBytes(requests);
+
+        Response response = target(BATCH).request(SmileProvider.APPLICATION_SMILE)
+                .post(Entity.entity(body, SmileProvider.APPLICATION_SMILE));
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertEquals(SmileProvider.APPLICATION_SMILE_TYPE, response.getMediaType());
+        JsonNode results = SmileProvider.getMapper().readTree(response.readEntity(byte[].class)).get("results");
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(25.5, results.get(0).get("transfer").get("amount").asDouble(), 0.0);
+        Assert.assertEquals(to.getId().toString(), results.get(0).get("transfer").get("to").asText());
+        Assert.assertFalse(results.get(1).get("error").isNull());
+        Assert.assertEquals(74.5, from.getBalance(), 0.0);
+    }
+
+    /**
+     * POST /transfers/batch
+     *
+     * Check that empty batches, batches over the size limit and unknown modes get a 400 BAD REQUEST.
+     */
+    @Test
+    public void testPOSTBatchInvalidRequests() {
+        TransferRequest request = new TransferRequest(UUID.randomUUID().toString(), UUID.randomUUID().toString(), 1.0, null);
+        Response response = target(BATCH).request()
+                .post(Entity.entity(Collections.emptyList(), MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+
+        response = target(BATCH).queryParam("mode", "sometimes").request()
+                .post(Entity.entity(Collections.singletonList(request), MediaType.APPLICATION_JSON));
+        Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+
+        int limit = TransferService.getMaxBatchSize();
+        TransferService.setMaxBatchSize(1);
+        try {
+            response = target(BATCH).request()
+                    .post(Entity.entity(Arrays.asList(request, request), MediaType.APPLICATION_JSON));
+            Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        }
+        finally {
+            TransferService.setMaxBatchSize(limit);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import moolah.exceptions.UnknownAccountException;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Transfer;
+import moolah.providers.AccountResolver;
+import moolah.services.AccountService;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.UUID;
+
+public class AccountJSONDeserializerTest {
+
+    private final ObjectReader reader = new ObjectMapper().readerFor(Transfer.class);
+
+    @Test
+    public void testResolvesAccountsFromTheStore() throws IOException {
+        Account from = AccountFactory.createAccount("Checking", "Json", 10.0);
+        Account to = AccountFactory.createAccount("Saving", "Json", 0.0);
+        AccountService.getAccountStore().put(from);
+        AccountService.getAccountStore().put(to);
+
+        Transfer transfer = reader.readValue(String.format("{\"from\":\"%s\",\"to\":\"%s\",\"amount\":1.5}",
+                from.getId(), to.getId().toString().toUpperCase()));
+        Assert.assertSame(from, transfer.getFrom());
+        Assert.assertSame(to, transfer.getTo());
+    }
+
+    @Test
+    public void testResolverCanBeInjected() throws IOException {
+        Account account = AccountFactory.createAccount("Checking", "Injected", 10.0);
+        AccountResolver resolver = (msb, lsb) -> new UUID(msb, lsb).equals(account.getId()) ? account : null;
+
+        Transfer transfer = reader.withAttribute(AccountResolver.class, resolver)
+                .readValue(String.format("{\"from\":\"%s\"}", account.getId()));
+        Assert.assertSame(account, transfer.getFrom());
+    }
+
+    @Test
+    public void testUnknownAccountIsStackless() throws IOException {
+        UUID unknown = UUID.randomUUID();
+        try {
+            reader.readValue(String.format("{\"from\":\"%s\"}", unknown));
+            Assert.fail();
+        }
+        catch (UnknownAccountException exc) {
+            Assert.assertTrue(exc.getMessage().contains(unknown.toString()));
+            Assert.assertEquals(0, exc.getStackTrace().length);
+        }
+        try {
+            reader.readValue("{\"to\":\"not-an-id\"}");
+            Assert.fail();
+        }
+        catch (UnknownAccountException exc) {
+            Assert.assertTrue(exc.getMessage().contains("Invalid account id"));
+        }
+    }
+}
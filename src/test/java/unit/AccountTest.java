@@ -7,8 +7,10 @@ import moolah.model.Transfer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AccountTest {
 
@@ -66,6 +68,38 @@ public class AccountTest {
         account.deposit(NEGATIVE_AMOUNT);
     }
 
+    /**
+     * a deposit or withdrawal the balance cannot hold is rejected and leaves the balance as it is
+     */
+    @Test
+    public void testBalanceDoesNotWrapAround() {
+        Account account = getAccount(0.0);
+        account.setBalanceMinor(Long.MAX_VALUE - 1);
+        account.depositMinor(1);
+        try {
+            account.depositMinor(1);
+            Assert.fail();
+        }
+        catch (AccountBalanceException exc) {
+            Assert.assertEquals(Long.MAX_VALUE, account.getBalanceMinor());
+        }
+        try {
+            account.deposit(Double.POSITIVE_INFINITY);
+            Assert.fail();
+        }
+        catch (AccountBalanceException exc) {
+            Assert.assertEquals(Long.MAX_VALUE, account.getBalanceMinor());
+        }
+        account.setBalanceMinor(Long.MIN_VALUE + 1);
+        try {
+            account.withdrawMinor(2);
+            Assert.fail();
+        }
+        catch (AccountBalanceException exc) {
+            Assert.assertEquals(Long.MIN_VALUE + 1, account.getBalanceMinor());
+        }
+    }
+
     @Test(expected = AccountBalanceException.class)
     public void testWithdrawNegativeAmountThrowsException() {
         final Double INITIAL = 1000.0;
@@ -148,4 +182,107 @@ public class AccountTest {
         account.setId(UUID.randomUUID());
         Assert.assertEquals(account.hashCode(), account.getId().hashCode());
     }
+
+    /**
+     * 0.1 cannot be represented exactly as a double, repeated deposits must still add up exactly
+     */
+    @Test
+    public void testDepositsDoNotDrift() {
+        Account account = getAccount(0.0);
+        for (int i = 0; i < 10; i++) {
+            account.deposit(0.1);
+        }
+        Assert.assertEquals(Double.valueOf(1.0), account.getBalance());
+        Assert.assertEquals(100L, account.getBalanceMinor());
+    }
+
+    @Test
+    public void testTryWithdrawMinorWhenBalanceIsEnough() {
+        Account account = getAccount(10.0);
+        Assert.assertTrue(account.tryWithdrawMinor(1000));
+        Assert.assertEquals(0L, account.getBalanceMinor());
+    }
+
+    @Test
+    public void testTryWithdrawMinorWhenBalanceIsTooLowLeavesBalanceUnchanged() {
+        Account account = getAccount(10.0);
+        Assert.assertFalse(account.tryWithdrawMinor(1001));
+        Assert.assertEquals(1000L, account.getBalanceMinor());
+    }
+
+    @Test(expected = AccountBalanceException.class)
+    public void testTryWithdrawMinorNegativeAmountThrowsException() {
+        getAccount(10.0).tryWithdrawMinor(-1);
+    }
+
+    /**
+     * an update starts only from the current version, excludes other updates until it ends, and leaves a version
+     * newer than any read while it was in progress, transfers included
+     */
+    @Test
+    public void testBeginUpdateComparesAndSetsTheVersion() {
+        Account account = getAccount(10.0);
+        long version = account.getVersion();
+        Assert.assertEquals(0, version & 1);
+        Assert.assertFalse(account.beginUpdate(version - Account.VERSION_STEP));
+
+        Assert.assertTrue(account.beginUpdate(version));
+        Assert.assertFalse(account.beginUpdate(version));
+        account.depositMinor(100);
+        long during = account.getVersion();
+        Assert.assertEquals(1, during & 1);
+        Assert.assertFalse(account.beginUpdate(during));
+        account.setName("Renamed");
+        account.endUpdate();
+
+        Assert.assertEquals(0, account.getVersion() & 1);
+        Assert.assertTrue(account.getVersion() > during);
+        Assert.assertFalse(account.beginUpdate(version));
+        Assert.assertEquals(account.getVersion(), account.beginUpdate());
+        account.endUpdate();
+    }
+
+    /**
+     * read-modify-write cycles checked against the version lose no update, while transfers change the balance
+     */
+    @Test
+    public void testVersionCheckedUpdatesLoseNothing() throws InterruptedException {
+        final Account account = getAccount(1000.0);
+        account.setOwner("0");
+        final int threads = 4;
+        final int updates = 2000;
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread transfers = new Thread(() -> {
+            while (!done.get()) {
+                account.depositMinor(1);
+                account.withdrawMinor(1);
+            }
+        });
+        transfers.start();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < updates; i++) {
+                    while (true) {
+                        long version = account.getVersion();
+                        int owner = Integer.parseInt(account.getOwner());
+                        if (account.beginUpdate(version)) {
+                            account.setOwner(Integer.toString(owner + 1));
+                            account.endUpdate();
+                            break;
+                        }
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        done.set(true);
+        transfers.join();
+        Assert.assertEquals(Integer.toString(threads * updates), account.getOwner());
+        Assert.assertEquals(100000L, account.getBalanceMinor());
+    }
 }
@@ -0,0 +1,170 @@
+package unit;
+
+import moolah.exceptions.IdempotencyException;
+import moolah.exceptions.TransferException;
+import moolah.store.IdempotencyCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IdempotencyCacheTest {
+
+    @Test
+    public void testRepeatedKeyReturnsFirstOutcome() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(100, 60000);
+        AtomicInteger runs = new AtomicInteger();
+
+        Assert.assertEquals("1", cache.execute("key", "request", () -> "" + runs.incrementAndGet()));
+        Assert.assertEquals("1", cache.execute("key", "request", () -> "" + runs.incrementAndGet()));
+        Assert.assertEquals("2", cache.execute("other", "request", () -> "" + runs.incrementAndGet()));
+        Assert.assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void testExceptionIsTheOutcome() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(100, 60000);
+        AtomicInteger runs = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.execute("key", "request", () -> {
+                    runs.incrementAndGet();
+                    throw new TransferException("rejected");
+                });
+                Assert.fail();
+            }
+            catch (TransferException exc) {
+                Assert.assertEquals("rejected", exc.getMessage());
+            }
+        }
+        Assert.assertEquals(1, runs.get());
+    }
+
+    @Test(expected = IdempotencyException.class)
+    public void testKeyReusedForAnotherRequest() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(100, 60000);
+        cache.execute("key", "request", () -> "done");
+        cache.execute("key", "another request", () -> "done");
+    }
+
+    @Test
+    public void testExpiredKeyRunsAgain() throws InterruptedException {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(100, 20);
+        AtomicInteger runs = new AtomicInteger();
+        cache.execute("key", "request", () -> "" + runs.incrementAndGet());
+        Thread.sleep(50);
+        Assert.assertEquals("2", cache.execute("key", "request", () -> "" + runs.incrementAndGet()));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(1600, 60000);
+        for (int i = 0; i < 100000; i++) {
+            cache.execute("key-" + i, "request", () -> "done");
+        }
+        Assert.assertTrue(cache.size() <= 1600);
+        // the newest keys are kept, the oldest evicted
+        Assert.assertEquals("done", cache.execute("key-99999", "request", () -> "again"));
+        Assert.assertEquals("again", cache.execute("key-0", "request", () -> "again"));
+    }
+
+    /**
+     * a key whose request still executes is not evicted however many keys follow it, nor expired
+     */
+    @Test(timeout = 10000)
+    public void testExecutingKeyIsKept() throws InterruptedException {
+        final IdempotencyCache<String> cache = new IdempotencyCache<>(1, 20);
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Thread first = new Thread(() -> cache.execute("key", "request", () -> {
+            runs.incrementAndGet();
+            running.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException ignored) { }
+            return "first";
+        }));
+        first.start();
+        running.await();
+
+        Thread.sleep(50);
+        for (int i = 0; i < 1000; i++) {
+            cache.execute("key-" + i, "request", () -> "done");
+        }
+        final List<String> outcomes = new ArrayList<>();
+        Thread duplicate = new Thread(() -> {
+            String outcome = cache.execute("key", "request", () -> "" + runs.incrementAndGet());
+            synchronized (outcomes) {
+                outcomes.add(outcome);
+            }
+        });
+        duplicate.start();
+        Thread.sleep(50);
+        release.countDown();
+        first.join();
+        duplicate.join();
+
+        Assert.assertEquals(1, runs.get());
+        Assert.assertEquals("first", outcomes.get(0));
+        Assert.assertTrue(cache.size() <= 64 + 1);
+    }
+
+    /**
+     * duplicates arriving while the first execution runs wait for its outcome instead of running again
+     */
+    @Test(timeout = 10000)
+    public void testConcurrentDuplicatesWaitForFirstExecution() throws InterruptedException {
+        final IdempotencyCache<String> cache = new IdempotencyCache<>(100, 60000);
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> outcomes = new ArrayList<>();
+
+        Thread first = new Thread(() -> {
+            String outcome = cache.execute("key", "request", () -> {
+                runs.incrementAndGet();
+                running.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ignored) { }
+                return "first";
+            });
+            synchronized (outcomes) {
+                outcomes.add(outcome);
+            }
+        });
+        first.start();
+        running.await();
+
+        List<Thread> duplicates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread duplicate = new Thread(() -> {
+                String outcome = cache.execute("key", "request", () -> "" + runs.incrementAndGet());
+                synchronized (outcomes) {
+                    outcomes.add(outcome);
+                }
+            });
+            duplicate.start();
+            duplicates.add(duplicate);
+        }
+        Thread.sleep(50);
+        release.countDown();
+        first.join();
+        for (Thread duplicate : duplicates) {
+            duplicate.join();
+        }
+
+        Assert.assertEquals(1, runs.get());
+        Assert.assertEquals(5, outcomes.size());
+        for (String outcome : outcomes) {
+            Assert.assertEquals("first", outcome);
+        }
+    }
+}
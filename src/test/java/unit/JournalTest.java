@@ -0,0 +1,291 @@
+package unit;
+
+import moolah.exceptions.JournalException;
+import moolah.journal.FsyncPolicy;
+import moolah.journal.Journal;
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferManager;
+import moolah.store.AccountStore;
+import moolah.store.StripedAccountStore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class JournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    private Journal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (journal != null) {
+            TransferManager.removeListener(journal);
+            journal.close();
+        }
+    }
+
+    private Journal open(FsyncPolicy policy) throws IOException {
+        journal = new Journal(directory, policy, 5);
+        journal.start();
+        TransferManager.addListener(journal);
+        return journal;
+    }
+
+    /**
+     * @return the last journal segment
+     */
+    private Path segment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("journal-"))
+                    .max(Comparator.naturalOrder()).orElseThrow(IllegalStateException::new);
+        }
+    }
+
+    private AccountStore replay() throws IOException {
+        TransferManager.removeListener(journal);
+        journal.close();
+        journal = null;
+        AccountStore store = new StripedAccountStore();
+        new Journal(directory, FsyncPolicy.GROUP, 5).replay(store);
+        return store;
+    }
+
+    private void testReplayRestoresState(FsyncPolicy policy) throws IOException {
+        open(policy);
+        Account a = AccountTest.getAccount(100.0);
+        Account b = AccountTest.getAccount(50.0);
+        Account c = AccountTest.getAccount(10.0);
+        journal.awaitDurable(journal.accountCreated(a));
+        journal.awaitDurable(journal.accountCreated(b));
+        journal.awaitDurable(journal.accountCreated(c));
+
+        Transfer transfer = TransferManager.doTransfer(a, b, 30.25, "rent");
+        TransferManager.doTransfer(b, c, 5.0, null);
+        a.setName("Savings");
+        a.setOwner("Zulu");
+        journal.accountUpdated(a);
+        journal.accountDeleted(c.getId());
+        journal.sync();
+
+        AccountStore store = replay();
+        Assert.assertNull(store.get(c.getId()));
+        Account restoredA = store.get(a.getId());
+        Account restoredB = store.get(b.getId());
+        Assert.assertEquals(a.getBalanceMinor(), restoredA.getBalanceMinor());
+        Assert.assertEquals(b.getBalanceMinor(), restoredB.getBalanceMinor());
+        Assert.assertEquals("Savings", restoredA.getName());
+        Assert.assertEquals("Zulu", restoredA.getOwner());
+        Assert.assertEquals(b.getOwner(), restoredB.getOwner());
+        Assert.assertEquals(1, restoredA.getTransfers().size());
+        Assert.assertEquals(2, restoredB.getTransfers().size());
+        Transfer restored = restoredA.getTransfers().get(0);
+        Assert.assertEquals(transfer.getId(), restored.getId());
+        Assert.assertEquals(transfer.getAmountMinor(), restored.getAmountMinor());
+        Assert.assertEquals(transfer.getDate(), restored.getDate());
+        Assert.assertEquals("rent", restored.getName());
+    }
+
+    @Test
+    public void testReplayAlways() throws IOException {
+        testReplayRestoresState(FsyncPolicy.ALWAYS);
+    }
+
+    @Test
+    public void testReplayGroup() throws IOException {
+        testReplayRestoresState(FsyncPolicy.GROUP);
+    }
+
+    @Test
+    public void testReplayInterval() throws IOException {
+        testReplayRestoresState(FsyncPolicy.INTERVAL);
+    }
+
+    /**
+     * a record cut short by a crash is dropped, and the journal is truncated so that new records follow the last
+     * complete one
+     */
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        open(FsyncPolicy.GROUP);
+        Account a = AccountTest.getAccount(100.0);
+        Account b = AccountTest.getAccount(0.0);
+        journal.awaitDurable(journal.accountCreated(a));
+        journal.awaitDurable(journal.accountCreated(b));
+        TransferManager.doTransfer(a, b, 10.0, null);
+        journal.sync();
+        long complete = Files.size(segment());
+        TransferManager.doTransfer(a, b, 20.0, null);
+        journal.sync();
+        TransferManager.removeListener(journal);
+        journal.close();
+        journal = null;
+
+        // cut the last record in half
+        long size = Files.size(segment());
+        try (RandomAccessFile file = new RandomAccessFile(segment().toFile(), "rw")) {
+            file.setLength(complete + (size - complete) / 2);
+        }
+
+        AccountStore store = new StripedAccountStore();
+        Assert.assertEquals(3, new Journal(directory, FsyncPolicy.GROUP, 5).replay(store));
+        Assert.assertEquals(9000, store.get(a.getId()).getBalanceMinor());
+        Assert.assertEquals(1000, store.get(b.getId()).getBalanceMinor());
+        Assert.assertEquals(complete, Files.size(segment()));
+    }
+
+    @Test
+    public void testCorruptRecordEndsJournal() throws IOException {
+        open(FsyncPolicy.GROUP);
+        Account a = AccountTest.getAccount(100.0);
+        journal.awaitDurable(journal.accountCreated(a));
+        long complete = Files.size(segment());
+        a.setName("Renamed");
+        journal.awaitDurable(journal.accountUpdated(a));
+        TransferManager.removeListener(journal);
+        journal.close();
+        journal = null;
+
+        // flip the last byte of the update record
+        try (RandomAccessFile file = new RandomAccessFile(segment().toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        }
+
+        AccountStore store = new StripedAccountStore();
+        Assert.assertEquals(1, new Journal(directory, FsyncPolicy.GROUP, 5).replay(store));
+        Assert.assertNotEquals("Renamed", store.get(a.getId()).getName());
+        Assert.assertEquals(complete, Files.size(segment()));
+    }
+
+    /**
+     * records keep their sequence across segments and restarts, and removed segments are not replayed
+     */
+    @Test
+    public void testRolloverStartsNewSegment() throws IOException {
+        open(FsyncPolicy.GROUP);
+        Account a = AccountTest.getAccount(100.0);
+        Account b = AccountTest.getAccount(0.0);
+        journal.awaitDurable(journal.accountCreated(a));
+        journal.awaitDurable(journal.accountCreated(b));
+        Assert.assertEquals(2, journal.rollover());
+        TransferManager.doTransfer(a, b, 10.0, null);
+        journal.sync();
+        Assert.assertEquals(3, journal.getLastDurable());
+
+        AccountStore store = replay();
+        Assert.assertEquals(9000, store.get(a.getId()).getBalanceMinor());
+
+        // a restarted journal carries on numbering after the last record
+        journal = new Journal(directory, FsyncPolicy.GROUP, 5);
+        journal.replay(new StripedAccountStore());
+        journal.start();
+        Assert.assertEquals(4, journal.accountDeleted(b.getId()));
+        journal.sync();
+        Assert.assertEquals(1, journal.removeSegmentsBefore(2, null));
+        // only the records after 2 are left
+        AccountStore tail = new StripedAccountStore();
+        tail.put(a);
+        tail.put(b);
+        journal.close();
+        journal = null;
+        Assert.assertEquals(2, new Journal(directory, FsyncPolicy.GROUP, 5).replay(tail, 2));
+        Assert.assertNull(tail.get(b.getId()));
+    }
+
+    /**
+     * records appended while a rollover is in progress go to the new segment, so segments keep following each other
+     */
+    @Test
+    public void testRolloverDuringAppends() throws Exception {
+        open(FsyncPolicy.INTERVAL);
+        Account account = AccountTest.getAccount(100.0);
+        journal.awaitDurable(journal.accountCreated(account));
+        final int threads = 4;
+        final int appends = 2000;
+        List<Thread> appenders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread appender = new Thread(() -> {
+                for (int i = 0; i < appends; i++) {
+                    journal.accountUpdated(account);
+                }
+            });
+            appenders.add(appender);
+            appender.start();
+        }
+        long rolled = 0;
+        for (Thread appender : appenders) {
+            do {
+                rolled = journal.rollover();
+            } while (appender.isAlive());
+            appender.join();
+        }
+        journal.sync();
+        long last = journal.getLastAppended();
+        Assert.assertEquals(1 + threads * appends, last);
+
+        Assert.assertEquals(1, replay().size());
+        Assert.assertEquals(last, new Journal(directory, FsyncPolicy.GROUP, 5).replay(new StripedAccountStore()));
+        journal = new Journal(directory, FsyncPolicy.GROUP, 5);
+        Assert.assertTrue(journal.removeSegmentsBefore(rolled, null) > 0);
+        AccountStore tail = new StripedAccountStore();
+        tail.put(account);
+        Assert.assertEquals(last - rolled, journal.replay(tail, rolled));
+        journal = null;
+    }
+
+    @Test(expected = JournalException.class)
+    public void testClosedJournalRejectsWaiters() throws IOException {
+        open(FsyncPolicy.GROUP);
+        journal.close();
+        long sequence = journal.accountCreated(AccountTest.getAccount(1.0));
+        journal.awaitDurable(sequence);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAppendBeforeStartIsRejected() throws IOException {
+        new Journal(directory, FsyncPolicy.GROUP, 5).accountCreated(AccountTest.getAccount(1.0));
+    }
+
+    /**
+     * a transfer knows the sequence of its own record, so its request waits for no record appended after it
+     */
+    @Test
+    public void testTransferKnowsItsRecord() throws IOException {
+        open(FsyncPolicy.GROUP);
+        Account a = AccountTest.getAccount(100.0);
+        Account b = AccountTest.getAccount(0.0);
+        journal.awaitDurable(journal.accountCreated(a));
+        journal.awaitDurable(journal.accountCreated(b));
+
+        Transfer transfer = TransferManager.doTransfer(a, b, 1.0, null);
+        Assert.assertEquals(3, transfer.getJournalSequence());
+        journal.accountUpdated(a);
+        Assert.assertEquals(4, journal.getLastAppended());
+        journal.awaitDurable(transfer.getJournalSequence());
+        Assert.assertTrue(journal.getLastDurable() >= 3);
+    }
+}
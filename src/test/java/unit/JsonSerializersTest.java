@@ -0,0 +1,63 @@
+package unit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import moolah.model.Account;
+import moolah.model.AccountFactory;
+import moolah.model.Money;
+import moolah.model.Transfer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+
+public class JsonSerializersTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testAccountJson() throws IOException {
+        Account account = AccountFactory.createAccount("Checking", "Zulu \"Z\"", 15000.0);
+        account.setId(UUID.fromString("263afea3-3843-4880-b1d5-cce977be06c1"));
+        Assert.assertEquals("{\"id\":\"263afea3-3843-4880-b1d5-cce977be06c1\",\"name\":\"Checking\","
+                + "\"owner\":\"Zulu \\\"Z\\\"\",\"balance\":15000.0}", mapper.writeValueAsString(account));
+
+        account.setOwner(null);
+        account.setBalanceMinor(-5);
+        Assert.assertEquals("{\"id\":\"263afea3-3843-4880-b1d5-cce977be06c1\",\"name\":\"Checking\","
+                + "\"owner\":null,\"balance\":-0.05}", mapper.writeValueAsString(account));
+        Assert.assertEquals(-0.05, mapper.readValue(mapper.writeValueAsString(account), Account.class).getBalance(), 0.0);
+    }
+
+    @Test
+    public void testTransferJson() throws IOException {
+        Account from = AccountFactory.createAccount("Checking", "From", 10.0);
+        from.setId(UUID.fromString("263afea3-3843-4880-b1d5-cce977be06c1"));
+        Transfer transfer = new Transfer();
+        transfer.setId(UUID.fromString("01a14836-ab89-7000-8656-f9faa7705943"));
+        transfer.setFrom(from);
+        transfer.setAmountMinor(1230);
+        transfer.setName(null);
+        transfer.setDate(new Date(1792212904841L));
+        Assert.assertEquals("{\"id\":\"01a14836-ab89-7000-8656-f9faa7705943\","
+                + "\"from\":\"263afea3-3843-4880-b1d5-cce977be06c1\",\"to\":null,\"amount\":12.3,\"name\":null,"
+                + "\"date\":1792212904841}", mapper.writeValueAsString(transfer));
+        Assert.assertEquals("{\"id\":null,\"from\":null,\"to\":null,\"amount\":0.0,\"name\":\"\",\"date\":null}",
+                mapper.writeValueAsString(new Transfer()));
+    }
+
+    @Test
+    public void testMoneyFormatMatchesDouble() {
+        char[] chars = new char[24];
+        long[] amounts = {0, 1, 10, 99, 100, 150, 123456, -1, -100, -123456, 99999999};
+        for (long minor : amounts) {
+            String expected = Double.toString(Money.toMajor(minor));
+            Assert.assertEquals(expected, new String(chars, 0, Money.format(minor, chars, 0)));
+        }
+        // where Double.toString switches to an exponent, the plain notation is kept
+        Assert.assertEquals("10000000.0", new String(chars, 0, Money.format(1000000000, chars, 0)));
+        Assert.assertEquals("-92233720368547758.08", new String(chars, 0, Money.format(Long.MIN_VALUE, chars, 0)));
+        Assert.assertEquals("92233720368547758.07", new String(chars, 0, Money.format(Long.MAX_VALUE, chars, 0)));
+    }
+}
@@ -0,0 +1,53 @@
+package unit;
+
+import moolah.metrics.LatencyHistogram;
+import moolah.metrics.PrometheusWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreCumulative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(50));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+
+        Assert.assertEquals(0.0001, histogram.getBound(0), 0.0);
+        Assert.assertEquals(1, histogram.getCount(0));
+        // a latency equal to a bound is counted in that bound's bucket
+        Assert.assertEquals(0.001, histogram.getBound(3), 0.0);
+        Assert.assertEquals(2, histogram.getCount(3));
+        Assert.assertEquals(3, histogram.getCount(5));
+        Assert.assertEquals(3, histogram.getCount(histogram.getBuckets() - 2));
+        Assert.assertEquals(Double.POSITIVE_INFINITY, histogram.getBound(histogram.getBuckets() - 1), 0.0);
+        Assert.assertEquals(4, histogram.getCount());
+        Assert.assertEquals(60.00405, histogram.getSumSeconds(), 1e-9);
+    }
+
+    @Test
+    public void testPrometheusFormat() throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+        StringWriter out = new StringWriter();
+        new PrometheusWriter(out)
+                .declare("latency_seconds", "histogram", "Latency.")
+                .histogram("latency_seconds", histogram, "route", "/a\"b")
+                .sample("count_total", 3);
+
+        String text = out.toString();
+        Assert.assertTrue(text.startsWith("# HELP latency_seconds Latency.\n# TYPE latency_seconds histogram\n"));
+        Assert.assertTrue(text.contains("latency_seconds_bucket{route=\"/a\\\"b\",le=\"0.001\"} 0\n"));
+        Assert.assertTrue(text.contains("latency_seconds_bucket{route=\"/a\\\"b\",le=\"0.0025\"} 1\n"));
+        Assert.assertTrue(text.contains("latency_seconds_bucket{route=\"/a\\\"b\",le=\"+Inf\"} 1\n"));
+        Assert.assertTrue(text.contains("latency_seconds_sum{route=\"/a\\\"b\"} 0.002\n"));
+        Assert.assertTrue(text.contains("latency_seconds_count{route=\"/a\\\"b\"} 1\n"));
+        Assert.assertTrue(text.endsWith("count_total 3\n"));
+    }
+}
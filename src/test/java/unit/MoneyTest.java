@@ -0,0 +1,58 @@
+package unit;
+
+import moolah.model.Money;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MoneyTest {
+
+    private static long parse(String text) {
+        char[] chars = ("  " + text + "  ").toCharArray();
+        return Money.parse(chars, 2, text.length());
+    }
+
+    @Test
+    public void testParsesPlainDecimals() {
+        Assert.assertEquals(1200, parse("12"));
+        Assert.assertEquals(1250, parse("12.5"));
+        Assert.assertEquals(1205, parse("12.05"));
+        Assert.assertEquals(0, parse("0.00"));
+        Assert.assertEquals(-1, parse("-0.01"));
+        Assert.assertEquals(Long.MAX_VALUE, parse("92233720368547758.07"));
+
+        char[] chars = new char[24];
+        for (long minor : new long[] {1, 10, 100, 123456, -987654321}) {
+            Assert.assertEquals(minor, Money.parse(chars, 0, Money.format(minor, chars, 0)));
+        }
+    }
+
+    @Test
+    public void testRejectsOtherNotations() {
+        String[] malformed = {"", "-", ".5", "12.", "12.345", "1e3", "+1", " 1", "1,5", "92233720368547758.08"};
+        for (String text : malformed) {
+            try {
+                parse(text);
+                Assert.fail(text);
+            }
+            catch (NumberFormatException exc) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testToMinorRejectsWhatALongCannotHold() {
+        Assert.assertEquals(1235, Money.toMinor(12.345));
+        Assert.assertEquals(-1, Money.toMinor(-0.01));
+        for (double major : new double[] {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e17, -1e17,
+                Double.MAX_VALUE}) {
+            try {
+                Money.toMinor(major);
+                Assert.fail(Double.toString(major));
+            }
+            catch (ArithmeticException exc) {
+                // expected
+            }
+        }
+    }
+}
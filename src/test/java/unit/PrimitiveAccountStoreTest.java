@@ -0,0 +1,266 @@
+package unit;
+
+import moolah.exceptions.TransferException;
+import moolah.model.Account;
+import moolah.model.TransferManager;
+import moolah.store.AccountStore;
+import moolah.store.PrimitiveAccountStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+public class PrimitiveAccountStoreTest {
+
+    private static void assertSameState(Account expected, Account actual) {
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getOwner(), actual.getOwner());
+        Assert.assertEquals(expected.getBalanceMinor(), actual.getBalanceMinor());
+    }
+
+    @Test
+    public void testPutThenGetReturnsView() {
+        AccountStore store = new PrimitiveAccountStore();
+        Account account = AccountTest.getAccount(100.0);
+
+        Assert.assertNull(store.put(account));
+        Account view = store.get(account.getId());
+        assertSameState(account, view);
+        Assert.assertEquals(account, view);
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testGetWhenAbsentReturnsNull() {
+        AccountStore store = new PrimitiveAccountStore();
+        Assert.assertNull(store.get(UUID.randomUUID()));
+    }
+
+    /**
+     * an update started through one view excludes updates through every other view
+     */
+    @Test
+    public void testViewsShareUpdates() {
+        AccountStore store = new PrimitiveAccountStore();
+        Account account = AccountTest.getAccount(100.0);
+        store.put(account);
+        Account first = store.get(account.getId());
+        Account second = store.get(account.getId());
+        long version = second.getVersion();
+
+        Assert.assertTrue(first.beginUpdate(version));
+        Assert.assertFalse(second.beginUpdate(version));
+        second.depositMinor(1);
+        first.setOwner("Someone");
+        first.endUpdate();
+
+        Assert.assertEquals(0, second.getVersion() & 1);
+        Assert.assertEquals(version + 1 + 2 * Account.VERSION_STEP + 1, second.getVersion());
+        Assert.assertTrue(second.beginUpdate(second.getVersion()));
+        second.endUpdate();
+    }
+
+    /**
+     * changes made through one view are seen by every other view of the account
+     */
+    @Test
+    public void testViewsShareState() {
+        AccountStore store = new PrimitiveAccountStore();
+        Account account = AccountTest.getAccount(100.0);
+        store.put(account);
+        Account first = store.get(account.getId());
+        Account second = store.get(account.getId());
+        long version = second.getVersion();
+
+        first.depositMinor(500);
+        Assert.assertTrue(first.tryWithdrawMinor(200));
+        Assert.assertFalse(first.tryWithdrawMinor(1000000));
+        first.setName("Renamed");
+        first.setOwner("Someone");
+
+        Assert.assertEquals(10300, second.getBalanceMinor());
+        Assert.assertEquals(Double.valueOf(103.0), second.getBalance());
+        Assert.assertEquals("Renamed", second.getName());
+        Assert.assertEquals("Someone", second.getOwner());
+        Assert.assertEquals(version + 4 * Account.VERSION_STEP, second.getVersion());
+    }
+
+    @Test
+    public void testPutReplacesAndReturnsCopyOfPrevious() {
+        AccountStore store = new PrimitiveAccountStore();
+        Account original = AccountTest.getAccount(100.0);
+        Account replacement = AccountTest.getAccount(200.0);
+        replacement.setId(original.getId());
+        replacement.setName("Replacement");
+
+        store.put(original);
+        assertSameState(original, store.put(replacement));
+        assertSameState(replacement, store.get(original.getId()));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsExistingAccount() {
+        AccountStore store = new PrimitiveAccountStore();
+        Account original = AccountTest.getAccount(100.0);
+        Account duplicate = AccountTest.getAccount(200.0);
+        duplicate.setId(original.getId());
+
+        Assert.assertNull(store.putIfAbsent(original));
+        assertSameState(original, store.putIfAbsent(duplicate));
+        assertSameState(original, store.get(original.getId()));
+    }
+
+    @Test
+    public void testRemove() {
+        AccountStore store = new PrimitiveAccountStore();
+        Account account = AccountTest.getAccount(100.0);
+        store.put(account);
+        Account view = store.get(account.getId());
+
+        assertSameState(account, store.remove(account.getId()));
+        Assert.assertNull(store.get(account.getId()));
+        Assert.assertNull(store.remove(account.getId()));
+        Assert.assertEquals(0, store.size());
+        Assert.assertFalse(store.iterator().hasNext());
+
+        // the removed slot is not reused, so the stale view cannot change a new account
+        Account other = AccountTest.getAccount(5.0);
+        store.put(other);
+        view.depositMinor(100);
+        Assert.assertEquals(500, store.get(other.getId()).getBalanceMinor());
+    }
+
+    /**
+     * pages are views in id order, without removed accounts
+     */
+    @Test
+    public void testPageReturnsViewsInIdOrder() {
+        AccountStore store = new PrimitiveAccountStore();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            Account account = AccountTest.getAccount(1.0);
+            store.put(account);
+            ids.add(account.getId());
+        }
+        for (int i = 0; i < 250; i += 2) {
+            store.remove(ids.get(i));
+        }
+        List<UUID> kept = new ArrayList<>();
+        for (int i = 1; i < 250; i += 2) {
+            kept.add(ids.get(i));
+        }
+        Collections.sort(kept);
+
+        List<Account> page = store.page(null, 100);
+        Assert.assertEquals(101, page.size());
+        List<UUID> paged = new ArrayList<>();
+        for (Account account : page.subList(0, 100)) {
+            paged.add(account.getId());
+        }
+        page = store.page(paged.get(99), 100);
+        Assert.assertEquals(25, page.size());
+        for (Account account : page) {
+            paged.add(account.getId());
+        }
+        Assert.assertEquals(kept, paged);
+    }
+
+    /**
+     * store enough accounts to span several chunks and rebuild the index a few times, then remove half of them
+     */
+    @Test
+    public void testManyAccountsSurviveRebuildAndRemoval() {
+        AccountStore store = new PrimitiveAccountStore();
+        List<Account> added = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            Account account = AccountTest.getAccount((double) i);
+            store.put(account);
+            added.add(account);
+        }
+        for (int i = 0; i < added.size(); i += 2) {
+            store.remove(added.get(i).getId());
+        }
+        for (int i = 0; i < 1000; i++) {
+            Account account = AccountTest.getAccount(1.0);
+            store.put(account);
+            added.add(account);
+        }
+
+        Assert.assertEquals(100000 + 1000, store.size());
+        for (int i = 0; i < added.size(); i++) {
+            Account found = store.get(added.get(i).getId());
+            if (i < 200000 && i % 2 == 0) {
+                Assert.assertNull(found);
+            }
+            else {
+                assertSameState(added.get(i), found);
+            }
+        }
+    }
+
+    @Test
+    public void testIteratorReturnsEveryAccountOnce() {
+        AccountStore store = new PrimitiveAccountStore();
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            Account account = AccountTest.getAccount(1.0);
+            store.put(account);
+            ids.add(account.getId());
+        }
+
+        Set<UUID> seen = new HashSet<>();
+        for (Account account : store) {
+            Assert.assertTrue(seen.add(account.getId()));
+        }
+        Assert.assertEquals(ids, seen);
+    }
+
+    /**
+     * transfers between views, from several threads, move money exactly as they do between plain accounts
+     */
+    @Test(timeout = 60000)
+    public void testConcurrentTransfersBetweenViews() throws InterruptedException {
+        final AccountStore store = new PrimitiveAccountStore();
+        final List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Account account = AccountTest.getAccount(1000.0);
+            store.put(account);
+            ids.add(account.getId());
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                Random random = new Random();
+                for (int i = 0; i < 20000; i++) {
+                    try {
+                        TransferManager.doTransfer(store.get(ids.get(random.nextInt(ids.size()))),
+                                store.get(ids.get(random.nextInt(ids.size()))), 1.0 + random.nextInt(50), null);
+                    }
+                    catch (TransferException exc) {
+                        // same account or not enough funds
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = 0;
+        for (Account account : store) {
+            Assert.assertTrue(account.getBalanceMinor() >= 0);
+            total += account.getBalanceMinor();
+        }
+        Assert.assertEquals(16 * 100000, total);
+    }
+}
@@ -0,0 +1,140 @@
+package unit;
+
+import moolah.engine.SequencedTransferEngine;
+import moolah.exceptions.TransferException;
+import moolah.model.Account;
+import moolah.model.AccountLocks;
+import moolah.model.Transfer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SequencedTransferEngineTest {
+
+    private SequencedTransferEngine engine;
+
+    @Before
+    public void setUp() {
+        // a small ring so that publishers regularly wait for the writer to free slots
+        engine = new SequencedTransferEngine(8);
+    }
+
+    @After
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    public void testTransferIsApplied() {
+        Account from = AccountTest.getAccount(100.0);
+        Account to = AccountTest.getAccount(0.0);
+
+        Transfer transfer = engine.transfer(from, to, 40.0, "T1");
+
+        Assert.assertEquals(Double.valueOf(60.0), from.getBalance());
+        Assert.assertEquals(Double.valueOf(40.0), to.getBalance());
+        Assert.assertEquals("T1", transfer.getName());
+    }
+
+    /**
+     * exceptions raised on the writer thread are rethrown on the calling thread
+     */
+    @Test(expected = TransferException.class)
+    public void testRejectedTransferThrowsOnCallingThread() {
+        Account from = AccountTest.getAccount(10.0);
+        Account to = AccountTest.getAccount(0.0);
+        engine.transfer(from, to, 20.0, null);
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentTransfersConserveMoney() throws InterruptedException {
+        final int THREADS = 8;
+        final int PER_THREAD = 20000;
+        final List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            accounts.add(AccountTest.getAccount(500.0));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < PER_THREAD; i++) {
+                    Account from = accounts.get(random.nextInt(accounts.size()));
+                    Account to = accounts.get(random.nextInt(accounts.size()));
+                    try {
+                        engine.transfer(from, to, (double) (1 + random.nextInt(100)), null);
+                    }
+                    catch (TransferException ignored) { }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = 0;
+        for (Account account : accounts) {
+            Assert.assertTrue(account.getBalanceMinor() >= 0);
+            total += account.getBalanceMinor();
+        }
+        Assert.assertEquals(4 * 50000L, total);
+    }
+
+    /**
+     * closing the engine while request threads wait for a free slot applies the transfers they claimed, and none of
+     * them waits forever
+     */
+    @Test(timeout = 60000)
+    public void testCloseWhileRingIsFull() throws InterruptedException {
+        final int THREADS = 6;
+        SequencedTransferEngine small = new SequencedTransferEngine(2);
+        Account from = AccountTest.getAccount(100.0);
+        Account to = AccountTest.getAccount(0.0);
+        AtomicInteger committed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        Thread closer = new Thread(small::close);
+        // the writer blocks on the first transfer, so the ring fills up
+        AccountLocks.lock(from);
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        small.transfer(from, to, 1.0, null);
+                        committed.incrementAndGet();
+                    }
+                    catch (IllegalStateException ignored) { }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            Thread.sleep(200);
+            closer.start();
+            Thread.sleep(200);
+        }
+        finally {
+            AccountLocks.unlock(from);
+        }
+        closer.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(committed.get() > 0);
+        Assert.assertEquals(100L * committed.get(), to.getBalanceMinor());
+        Assert.assertEquals(10000L, from.getBalanceMinor() + to.getBalanceMinor());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTransferAfterCloseThrowsException() {
+        engine.close();
+        engine.transfer(AccountTest.getAccount(10.0), AccountTest.getAccount(0.0), 1.0, null);
+    }
+}
@@ -0,0 +1,243 @@
+package unit;
+
+import moolah.exceptions.TransferException;
+import moolah.journal.FsyncPolicy;
+import moolah.journal.Journal;
+import moolah.journal.Snapshotter;
+import moolah.model.Account;
+import moolah.model.Transfer;
+import moolah.model.TransferListener;
+import moolah.model.TransferManager;
+import moolah.store.AccountStore;
+import moolah.store.StripedAccountStore;
+import moolah.store.TransferIndex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+public class SnapshotterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    private AccountStore store;
+
+    private Journal journal;
+
+    private Snapshotter snapshotter;
+
+    private TransferIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        // snapshot only the transfers of the test
+        index = TransferManager.getIndex();
+        TransferManager.setIndex(new TransferIndex());
+        directory = folder.getRoot().toPath();
+        store = new StripedAccountStore();
+        journal = new Journal(directory, FsyncPolicy.GROUP, 5);
+        journal.start();
+        TransferManager.addListener(journal);
+        snapshotter = new Snapshotter(directory, journal, store, null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        snapshotter.close();
+        TransferManager.removeListener(journal);
+        journal.close();
+        TransferManager.setIndex(index);
+    }
+
+    private Account create(double balance) {
+        Account account = AccountTest.getAccount(balance);
+        store.put(account);
+        journal.awaitDurable(journal.accountCreated(account));
+        return account;
+    }
+
+    private AccountStore recover() throws IOException {
+        TransferManager.removeListener(journal);
+        journal.close();
+        // a restart starts with an empty index
+        TransferManager.setIndex(new TransferIndex());
+        AccountStore recovered = new StripedAccountStore();
+        long sequence = new Snapshotter(directory, journal, recovered, null).load(recovered);
+        new Journal(directory, FsyncPolicy.GROUP, 5).replay(recovered, sequence);
+        return recovered;
+    }
+
+    private long count(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    @Test
+    public void testSnapshotThenTail() throws IOException {
+        Account a = create(100.0);
+        Account b = create(0.0);
+        TransferManager.doTransfer(a, b, 25.0, null);
+        journal.sync();
+
+        Assert.assertEquals(3, snapshotter.snapshot());
+        Assert.assertEquals(1, snapshotter.getSnapshotCount());
+        Assert.assertEquals(2, snapshotter.getLastSnapshotAccounts());
+        Assert.assertTrue(snapshotter.getLastSnapshotSizeBytes() > 0);
+        // the segment holding records 1 to 3 is covered by the snapshot
+        Assert.assertEquals(1, count("journal-"));
+
+        TransferManager.doTransfer(b, a, 5.0, null);
+        a.setName("Renamed");
+        journal.accountUpdated(a);
+        journal.sync();
+
+        AccountStore recovered = recover();
+        Assert.assertEquals(8000, recovered.get(a.getId()).getBalanceMinor());
+        Assert.assertEquals(2000, recovered.get(b.getId()).getBalanceMinor());
+        Assert.assertEquals("Renamed", recovered.get(a.getId()).getName());
+        Assert.assertEquals(b.getOwner(), recovered.get(b.getId()).getOwner());
+    }
+
+    /**
+     * transfers whose records were removed with the segments a snapshot covers are restored from the snapshot
+     */
+    @Test
+    public void testTransfersSurviveSnapshot() throws IOException {
+        Account a = create(100.0);
+        Account b = create(0.0);
+        Transfer first = TransferManager.doTransfer(a, b, 25.0, "first");
+        Transfer second = TransferManager.doTransfer(b, a, 5.0, "second");
+        journal.sync();
+        snapshotter.snapshot();
+        Transfer third = TransferManager.doTransfer(a, b, 1.0, "third");
+        journal.sync();
+
+        AccountStore recovered = recover();
+        TransferIndex transfers = TransferManager.getIndex();
+        Assert.assertEquals(3, transfers.size());
+        Transfer restored = transfers.get(first.getId());
+        Assert.assertEquals("first", restored.getName());
+        Assert.assertEquals(2500, restored.getAmountMinor());
+        Assert.assertEquals(first.getDate(), restored.getDate());
+        Assert.assertSame(recovered.get(a.getId()), restored.getFrom());
+        Assert.assertSame(recovered.get(b.getId()), restored.getTo());
+        for (Account account : new Account[] {a, b}) {
+            List<Transfer> history = recovered.get(account.getId()).getTransfers();
+            Assert.assertEquals(3, history.size());
+            Assert.assertEquals(first.getId(), history.get(0).getId());
+            Assert.assertEquals(second.getId(), history.get(1).getId());
+            Assert.assertEquals(third.getId(), history.get(2).getId());
+        }
+    }
+
+    /**
+     * a transfer both in the snapshot and in the journal after it is only added once to the histories
+     */
+    @Test
+    public void testTransferInSnapshotAndJournal() throws IOException {
+        Account a = create(100.0);
+        Account b = create(0.0);
+        // snapshot once the transfer is indexed, before the journal appends its record
+        TransferListener snapshotting = transfer -> {
+            try {
+                snapshotter.snapshot();
+            }
+            catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+        };
+        TransferManager.removeListener(journal);
+        TransferManager.addListener(snapshotting);
+        TransferManager.addListener(journal);
+        try {
+            TransferManager.doTransfer(a, b, 25.0, null);
+        }
+        finally {
+            TransferManager.removeListener(snapshotting);
+        }
+        journal.sync();
+        Assert.assertEquals(2, snapshotter.getLastSnapshotSequence());
+
+        AccountStore recovered = recover();
+        Assert.assertEquals(1, recovered.get(a.getId()).getHistory().size());
+        Assert.assertEquals(1, recovered.get(b.getId()).getHistory().size());
+    }
+
+    @Test
+    public void testNothingToSnapshot() throws IOException {
+        Assert.assertEquals(0, snapshotter.snapshot());
+        Assert.assertEquals(0, snapshotter.getSnapshotCount());
+        create(1.0);
+        snapshotter.snapshot();
+        snapshotter.snapshot();
+        Assert.assertEquals(1, snapshotter.getSnapshotCount());
+        Assert.assertEquals(1, count("snapshot-"));
+    }
+
+    /**
+     * snapshots taken while transfers run still recover the exact balances
+     */
+    @Test(timeout = 60000)
+    public void testSnapshotsDuringTransfers() throws Exception {
+        final List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            accounts.add(create(1000.0));
+        }
+        final AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                Random random = new Random();
+                while (!stop.get()) {
+                    try {
+                        TransferManager.doTransfer(accounts.get(random.nextInt(accounts.size())),
+                                accounts.get(random.nextInt(accounts.size())), 1.0 + random.nextInt(100), null);
+                    }
+                    catch (TransferException exc) {
+                        // same account or not enough funds
+                    }
+                    // paced, so that the history recovered with the snapshots fits in the test heap
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(20));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(50);
+            snapshotter.snapshot();
+        }
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        journal.sync();
+
+        AccountStore recovered = recover();
+        long total = 0;
+        for (Account account : accounts) {
+            Assert.assertEquals(account.getBalanceMinor(), recovered.get(account.getId()).getBalanceMinor());
+            total += recovered.get(account.getId()).getBalanceMinor();
+        }
+        Assert.assertEquals(50 * 100000, total);
+        Assert.assertEquals(1, count("snapshot-"));
+    }
+}
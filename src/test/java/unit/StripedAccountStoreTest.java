@@ -0,0 +1,198 @@
+package unit;
+
+import moolah.model.Account;
+import moolah.store.AccountStore;
+import moolah.store.StripedAccountStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+public class StripedAccountStoreTest {
+
+    @Test
+    public void testPutThenGetReturnsAccount() {
+        AccountStore store = new StripedAccountStore();
+        Account account = AccountTest.getAccount(100.0);
+
+        Assert.assertNull(store.put(account));
+        Assert.assertSame(account, store.get(account.getId()));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testGetWhenAbsentReturnsNull() {
+        AccountStore store = new StripedAccountStore();
+        Assert.assertNull(store.get(UUID.randomUUID()));
+    }
+
+    @Test
+    public void testPutReplacesAccountWithSameId() {
+        AccountStore store = new StripedAccountStore();
+        Account original = AccountTest.getAccount(100.0);
+        Account replacement = AccountTest.getAccount(200.0);
+        replacement.setId(original.getId());
+
+        store.put(original);
+        Assert.assertSame(original, store.put(replacement));
+        Assert.assertSame(replacement, store.get(original.getId()));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsExistingAccount() {
+        AccountStore store = new StripedAccountStore();
+        Account original = AccountTest.getAccount(100.0);
+        Account duplicate = AccountTest.getAccount(200.0);
+        duplicate.setId(original.getId());
+
+        Assert.assertNull(store.putIfAbsent(original));
+        Assert.assertSame(original, store.putIfAbsent(duplicate));
+        Assert.assertSame(original, store.get(original.getId()));
+    }
+
+    @Test
+    public void testRemove() {
+        AccountStore store = new StripedAccountStore();
+        Account account = AccountTest.getAccount(100.0);
+        store.put(account);
+
+        Assert.assertSame(account, store.remove(account.getId()));
+        Assert.assertNull(store.get(account.getId()));
+        Assert.assertNull(store.remove(account.getId()));
+        Assert.assertEquals(0, store.size());
+    }
+
+    /**
+     * store enough accounts to force every stripe to resize a few times, then remove half of them
+     */
+    @Test
+    public void testManyAccountsSurviveResizeAndRemoval() {
+        AccountStore store = new StripedAccountStore(4, 0);
+        List<Account> added = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            Account account = AccountTest.getAccount(1.0);
+            store.put(account);
+            added.add(account);
+        }
+        for (int i = 0; i < added.size(); i += 2) {
+            store.remove(added.get(i).getId());
+        }
+
+        Assert.assertEquals(added.size() / 2, store.size());
+        for (int i = 0; i < added.size(); i++) {
+            Account expected = i % 2 == 0 ? null : added.get(i);
+            Assert.assertSame(expected, store.get(added.get(i).getId()));
+        }
+    }
+
+    @Test
+    public void testIteratorReturnsEveryAccountOnce() {
+        AccountStore store = new StripedAccountStore();
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            Account account = AccountTest.getAccount(1.0);
+            store.put(account);
+            ids.add(account.getId());
+        }
+
+        Set<UUID> seen = new HashSet<>();
+        for (Account account : store) {
+            Assert.assertTrue(seen.add(account.getId()));
+        }
+        Assert.assertEquals(ids, seen);
+    }
+
+    /**
+     * pages hold the smallest ids after the cursor, in order, with one extra account while more pages follow
+     */
+    @Test
+    public void testPageReturnsAccountsInIdOrder() {
+        AccountStore store = new StripedAccountStore();
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            Account account = AccountTest.getAccount(1.0);
+            store.put(account);
+            ids.add(account.getId());
+        }
+        Collections.sort(ids);
+
+        List<UUID> paged = new ArrayList<>();
+        UUID after = null;
+        List<Account> page;
+        do {
+            page = store.page(after, 100);
+            for (int i = 0; i < Math.min(page.size(), 100); i++) {
+                paged.add(page.get(i).getId());
+            }
+            after = paged.get(paged.size() - 1);
+        } while (page.size() > 100);
+
+        Assert.assertEquals(ids, paged);
+        Assert.assertEquals(101, store.page(null, 100).size());
+        Assert.assertTrue(store.page(ids.get(ids.size() - 1), 100).isEmpty());
+
+        // removed accounts leave the order, stored ones join it
+        store.remove(ids.get(1));
+        Account added = AccountTest.getAccount(1.0);
+        added.setId(new UUID(Long.MIN_VALUE, 0));
+        store.putIfAbsent(added);
+        page = store.page(null, 2);
+        Assert.assertEquals(Arrays.asList(added.getId(), ids.get(0), ids.get(2)),
+                Arrays.asList(page.get(0).getId(), page.get(1).getId(), page.get(2).getId()));
+    }
+
+    /**
+     * threads insert disjoint accounts at the same time, none of them may be lost
+     */
+    @Test
+    public void testConcurrentPutsAreNotLost() throws InterruptedException {
+        final int THREADS = 8;
+        final int PER_THREAD = 5000;
+        final AccountStore store = new StripedAccountStore();
+        final List<List<Account>> perThread = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<Account> accounts = new ArrayList<>();
+            for (int i = 0; i < PER_THREAD; i++) {
+                accounts.add(AccountTest.getAccount(1.0));
+            }
+            perThread.add(accounts);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (final List<Account> accounts : perThread) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (Account account : accounts) {
+                    store.put(account);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(THREADS * PER_THREAD, store.size());
+        for (List<Account> accounts : perThread) {
+            for (Account account : accounts) {
+                Assert.assertSame(account, store.get(account.getId()));
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package unit;
+
+import moolah.exceptions.web.InternalServerErrorException;
+import moolah.exceptions.web.ServiceUnavailableException;
+import moolah.services.TransferExecutor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TransferExecutorTest {
+
+    /**
+     * @return an AsyncResponse putting whatever it is resumed with in {@code resumed}
+     */
+    private static AsyncResponse recording(LinkedBlockingQueue<Object> resumed) {
+        return (AsyncResponse) Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(),
+                new Class<?>[] {AsyncResponse.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("resume")) {
+                        resumed.add(args[0]);
+                    }
+                    return method.getReturnType() == boolean.class ? true : null;
+                });
+    }
+
+    @Test(timeout = 10000)
+    public void testResumesWithResultOrException() throws InterruptedException {
+        TransferExecutor executor = new TransferExecutor(2, 10, 1);
+        LinkedBlockingQueue<Object> resumed = new LinkedBlockingQueue<>();
+        try {
+            executor.submit(recording(resumed), () -> "done");
+            Assert.assertEquals("done", resumed.take());
+
+            IllegalStateException failure = new IllegalStateException();
+            executor.submit(recording(resumed), () -> {
+                throw failure;
+            });
+            Assert.assertSame(failure, resumed.take());
+
+            // an error still answers the request
+            executor.submit(recording(resumed), () -> {
+                throw new StackOverflowError();
+            });
+            Object error = resumed.take();
+            Assert.assertTrue(error instanceof InternalServerErrorException);
+            Assert.assertEquals(500, ((InternalServerErrorException) error).getResponse().getStatus());
+            executor.submit(recording(resumed), () -> "after");
+            Assert.assertEquals("after", resumed.take());
+        }
+        finally {
+            executor.close();
+        }
+    }
+
+    /**
+     * with the only thread busy and the queue full, the next request is rejected at once
+     */
+    @Test(timeout = 10000)
+    public void testRejectsWhenQueueIsFull() throws InterruptedException {
+        TransferExecutor executor = new TransferExecutor(1, 1, 7);
+        LinkedBlockingQueue<Object> resumed = new LinkedBlockingQueue<>();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.submit(recording(resumed), () -> {
+                running.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ignored) { }
+                return "first";
+            });
+            running.await();
+            executor.submit(recording(resumed), () -> "queued");
+            Assert.assertEquals(1, executor.getQueued());
+
+            executor.submit(recording(resumed), () -> "rejected");
+            Object rejection = resumed.poll(1, TimeUnit.SECONDS);
+            Assert.assertTrue(rejection instanceof ServiceUnavailableException);
+            Assert.assertEquals(503, ((ServiceUnavailableException) rejection).getResponse().getStatus());
+            Assert.assertEquals("7", ((ServiceUnavailableException) rejection).getResponse()
+                    .getHeaderString(HttpHeaders.RETRY_AFTER));
+            Assert.assertEquals(1, executor.getRejectedCount());
+
+            release.countDown();
+            Assert.assertEquals("first", resumed.take());
+            Assert.assertEquals("queued", resumed.take());
+        }
+        finally {
+            release.countDown();
+            executor.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package unit;
+
+import moolah.model.Transfer;
+import moolah.model.TransferHistory;
+import moolah.model.TransferIds;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+public class TransferHistoryTest {
+
+    private static Transfer transfer(UUID id) {
+        Transfer transfer = new Transfer();
+        transfer.setId(id);
+        return transfer;
+    }
+
+    private static List<Transfer> fill(TransferHistory history, int count) {
+        List<Transfer> added = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Transfer transfer = transfer(TransferIds.next());
+            history.add(transfer);
+            added.add(transfer);
+        }
+        return added;
+    }
+
+    /**
+     * follow the cursors from the newest transfer to the oldest
+     */
+    private static List<Transfer> pageAll(TransferHistory history, int limit) {
+        List<Transfer> all = new ArrayList<>();
+        UUID cursor = null;
+        while (true) {
+            List<Transfer> page = new ArrayList<>();
+            boolean more = history.page(cursor, limit, page);
+            Assert.assertTrue(page.size() <= limit);
+            all.addAll(page);
+            if (!more) {
+                return all;
+            }
+            cursor = page.get(page.size() - 1).getId();
+        }
+    }
+
+    @Test
+    public void testIdsAreOrdered() {
+        UUID previous = TransferIds.next();
+        for (int i = 0; i < 100000; i++) {
+            UUID id = TransferIds.next();
+            Assert.assertTrue(id.compareTo(previous) > 0);
+            Assert.assertEquals(7, id.version());
+            previous = id;
+        }
+        Assert.assertTrue(Math.abs(System.currentTimeMillis() - TransferIds.timestamp(previous)) < 60000);
+    }
+
+    @Test
+    public void testPagesCoverHistoryNewestFirst() {
+        TransferHistory history = new TransferHistory();
+        List<Transfer> added = fill(history, 1000);
+
+        List<Transfer> paged = pageAll(history, 64);
+        List<Transfer> expected = new ArrayList<>(added);
+        Collections.reverse(expected);
+        Assert.assertEquals(expected, paged);
+        Assert.assertEquals(added, history.toList());
+        Assert.assertEquals(1000, history.size());
+    }
+
+    @Test
+    public void testLastPageHasNoCursor() {
+        TransferHistory history = new TransferHistory();
+        fill(history, 10);
+        List<Transfer> page = new ArrayList<>();
+        Assert.assertFalse(history.page(null, 10, page));
+        Assert.assertEquals(10, page.size());
+
+        Assert.assertFalse(new TransferHistory().page(null, 10, new ArrayList<>()));
+    }
+
+    @Test
+    public void testRemovedTransfersAreSkipped() {
+        TransferHistory history = new TransferHistory();
+        List<Transfer> added = fill(history, 100);
+        for (int i = 0; i < 100; i += 3) {
+            Assert.assertTrue(history.remove(added.get(i)));
+        }
+        Assert.assertFalse(history.remove(added.get(0)));
+
+        List<Transfer> paged = pageAll(history, 7);
+        Assert.assertEquals(100 - 34, paged.size());
+        Assert.assertEquals(100 - 34, history.size());
+        Assert.assertFalse(paged.contains(added.get(0)));
+    }
+
+    /**
+     * ids not in time order, e.g. set by hand, still page correctly
+     */
+    @Test
+    public void testUnorderedIds() {
+        TransferHistory history = new TransferHistory();
+        List<Transfer> added = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Transfer transfer = transfer(UUID.randomUUID());
+            history.add(transfer);
+            added.add(transfer);
+        }
+        List<Transfer> paged = pageAll(history, 9);
+        Collections.reverse(paged);
+        Assert.assertEquals(added, paged);
+    }
+
+    /**
+     * readers paging while a writer appends never see a missing or duplicated transfer
+     */
+    @Test(timeout = 60000)
+    public void testPagingWhileAppending() throws InterruptedException {
+        final TransferHistory history = new TransferHistory();
+        Thread writer = new Thread(() -> fill(history, 200000));
+        writer.start();
+        while (writer.isAlive()) {
+            List<Transfer> paged = pageAll(history, 100);
+            Set<UUID> seen = new HashSet<>();
+            UUID previous = null;
+            for (Transfer transfer : paged) {
+                Assert.assertNotNull(transfer);
+                Assert.assertTrue(seen.add(transfer.getId()));
+                Assert.assertTrue(previous == null || transfer.getId().compareTo(previous) < 0);
+                previous = transfer.getId();
+            }
+        }
+        writer.join();
+        Assert.assertEquals(200000, pageAll(history, 1000).size());
+    }
+}
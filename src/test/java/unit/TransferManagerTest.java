@@ -1,12 +1,315 @@
 package unit;
 
+import moolah.exceptions.TransferException;
+import moolah.model.Account;
+import moolah.model.TransferBatch;
 import moolah.model.TransferManager;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class TransferManagerTest {
 
+    /**
+     * number of transfers issued by {@link #testConcurrentRandomTransfersConserveMoney()}, can be raised with
+     * -Dmoolah.stress.transfers
+     */
+    private static final int STRESS_TRANSFERS = Integer.getInteger("moolah.stress.transfers", 1000000);
+
     @Test
     public void testTransferManagerDefaultConstructor() {
         new TransferManager();
     }
+
+    /**
+     * Many threads issue random transfers between a small set of accounts, so that most transfers contend with
+     * others and plenty of them run in opposite directions. Whatever the interleaving, no account may be overdrawn
+     * and the total amount of money must be unchanged.
+     */
+    @Test(timeout = 120000)
+    public void testConcurrentRandomTransfersConserveMoney() throws InterruptedException {
+        final int THREADS = 8;
+        final int ACCOUNTS = 16;
+        final double INITIAL = 1000.0;
+
+        final List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(AccountTest.getAccount(INITIAL));
+        }
+
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < STRESS_TRANSFERS / THREADS; i++) {
+                    Account from = accounts.get(random.nextInt(ACCOUNTS));
+                    Account to = accounts.get(random.nextInt(ACCOUNTS));
+                    // whole amounts keep the sum exact whatever the order of additions
+                    double amount = 1 + random.nextInt(200);
+                    try {
+                        TransferManager.doTransfer(from, to, amount, null);
+                        succeeded.incrementAndGet();
+                    }
+                    catch (TransferException exc) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        double total = 0;
+        for (Account account : accounts) {
+            Assert.assertTrue("account overdrawn: " + account.getBalance(), account.getBalance() >= 0);
+            total += account.getBalance();
+        }
+        Assert.assertEquals(ACCOUNTS * INITIAL, total, 0.0);
+        Assert.assertEquals((STRESS_TRANSFERS / THREADS) * THREADS, succeeded.get() + rejected.get());
+        Assert.assertTrue(succeeded.get() > 0);
+    }
+
+    /**
+     * two accounts transfer their whole balance back and forth, so every transfer races one going the other way
+     */
+    @Test(timeout = 60000)
+    public void testOppositeTransfersDoNotDeadlock() throws InterruptedException {
+        final Account a = AccountTest.getAccount(100.0);
+        final Account b = AccountTest.getAccount(100.0);
+        final int TRANSFERS = 100000;
+
+        Thread aToB = new Thread(() -> {
+            for (int i = 0; i < TRANSFERS; i++) {
+                try {
+                    TransferManager.doTransfer(a, b, 1.0, null);
+                }
+                catch (TransferException ignored) { }
+            }
+        });
+        Thread bToA = new Thread(() -> {
+            for (int i = 0; i < TRANSFERS; i++) {
+                try {
+                    TransferManager.doTransfer(b, a, 1.0, null);
+                }
+                catch (TransferException ignored) { }
+            }
+        });
+        aToB.start();
+        bToA.start();
+        aToB.join();
+        bToA.join();
+
+        Assert.assertEquals(200.0, a.getBalance() + b.getBalance(), 0.0);
+    }
+
+    /**
+     * threads race to withdraw from one account, only as many transfers as the balance allows may succeed
+     */
+    @Test(timeout = 60000)
+    public void testConcurrentTransfersCannotOverdraw() throws InterruptedException {
+        final Account from = AccountTest.getAccount(1000.0);
+        final int THREADS = 8;
+        final AtomicLong succeeded = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final Account to = AccountTest.getAccount(0.0);
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    try {
+                        TransferManager.doTransfer(from, to, 1.0, null);
+                        succeeded.incrementAndGet();
+                    }
+                    catch (TransferException ignored) { }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(1000, succeeded.get());
+        Assert.assertEquals(0.0, from.getBalance(), 0.0);
+    }
+
+    @Test
+    public void testIndependentBatchAppliesEachItemOnItsOwn() {
+        Account a = AccountTest.getAccount(100.0);
+        Account b = AccountTest.getAccount(0.0);
+        TransferBatch batch = new TransferBatch(TransferBatch.Mode.INDEPENDENT);
+        batch.add(a, b, 60.0, "first");
+        batch.add(a, b, 60.0, "overdraws");
+        batch.addRejected("From account not found.");
+        batch.add(b, a, 10.0, "back");
+
+        Assert.assertFalse(TransferManager.doBatch(batch));
+        Assert.assertNotNull(batch.getTransfer(0));
+        Assert.assertNull(batch.getTransfer(1));
+        Assert.assertNotNull(batch.getError(1));
+        Assert.assertEquals("From account not found.", batch.getError(2));
+        Assert.assertEquals("back", batch.getTransfer(3).getName());
+        Assert.assertEquals(50.0, a.getBalance(), 0.0);
+        Assert.assertEquals(50.0, b.getBalance(), 0.0);
+        Assert.assertEquals(2, a.getHistory().size());
+        Assert.assertTrue(batch.getTransfer(0).getId().compareTo(batch.getTransfer(3).getId()) < 0);
+    }
+
+    /**
+     * items are checked against the balances left by the items before them: a chain of transfers passes even though
+     * the middle account starts empty, and one failing item leaves every balance untouched
+     */
+    @Test
+    public void testAtomicBatchIsAllOrNothing() {
+        Account a = AccountTest.getAccount(100.0);
+        Account b = AccountTest.getAccount(0.0);
+        Account c = AccountTest.getAccount(0.0);
+
+        TransferBatch chain = new TransferBatch(TransferBatch.Mode.ATOMIC);
+        chain.add(a, b, 100.0, null);
+        chain.add(b, c, 100.0, null);
+        Assert.assertTrue(TransferManager.doBatch(chain));
+        Assert.assertEquals(0.0, a.getBalance(), 0.0);
+        Assert.assertEquals(100.0, c.getBalance(), 0.0);
+
+        TransferBatch failing = new TransferBatch(TransferBatch.Mode.ATOMIC);
+        failing.add(c, a, 60.0, null);
+        failing.add(c, b, 60.0, null);
+        Assert.assertFalse(TransferManager.doBatch(failing));
+        Assert.assertNull(failing.getTransfer(0));
+        Assert.assertNull(failing.getError(0));
+        Assert.assertNotNull(failing.getError(1));
+        Assert.assertEquals(0.0, a.getBalance(), 0.0);
+        Assert.assertEquals(0.0, b.getBalance(), 0.0);
+        Assert.assertEquals(100.0, c.getBalance(), 0.0);
+        Assert.assertEquals(1, c.getHistory().size());
+
+        TransferBatch rejected = new TransferBatch(TransferBatch.Mode.ATOMIC);
+        rejected.add(c, a, 10.0, null);
+        rejected.add(c, c, 10.0, null);
+        Assert.assertFalse(TransferManager.doBatch(rejected));
+        Assert.assertEquals(100.0, c.getBalance(), 0.0);
+    }
+
+    /**
+     * batches spanning the same accounts in opposite orders race each other and single transfers
+     */
+    @Test(timeout = 60000)
+    public void testOppositeBatchesDoNotDeadlock() throws InterruptedException {
+        final int ACCOUNTS = 8;
+        final List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(AccountTest.getAccount(100.0));
+        }
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final boolean forward = t % 2 == 0;
+            final TransferBatch.Mode mode = t < 2 ? TransferBatch.Mode.ATOMIC : TransferBatch.Mode.INDEPENDENT;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    TransferBatch batch = new TransferBatch(mode);
+                    for (int j = 0; j < ACCOUNTS; j++) {
+                        Account from = accounts.get(j);
+                        Account to = accounts.get((j + 1) % ACCOUNTS);
+                        batch.add(forward ? from : to, forward ? to : from, 1.0, null);
+                    }
+                    TransferManager.doBatch(batch);
+                    try {
+                        TransferManager.doTransfer(accounts.get(ACCOUNTS - 1), accounts.get(0), 1.0, null);
+                    }
+                    catch (TransferException ignored) { }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        double total = 0;
+        for (Account account : accounts) {
+            Assert.assertTrue(account.getBalance() >= 0);
+            total += account.getBalance();
+        }
+        Assert.assertEquals(ACCOUNTS * 100.0, total, 0.0);
+    }
+
+    @Test
+    public void testRejectionsAreCountedByReason() {
+        Account from = AccountTest.getAccount(10.0);
+        Account to = AccountTest.getAccount(0.0);
+        long committed = TransferManager.getCommittedCount();
+        long funds = TransferManager.getRejectedCount(TransferException.Reason.INSUFFICIENT_FUNDS);
+        long same = TransferManager.getRejectedCount(TransferException.Reason.SAME_ACCOUNT);
+        long amount = TransferManager.getRejectedCount(TransferException.Reason.INVALID_AMOUNT);
+
+        TransferManager.doTransfer(from, to, 5.0, null);
+        assertRejected(TransferException.Reason.INSUFFICIENT_FUNDS, () -> TransferManager.doTransfer(from, to, 50.0, null));
+        assertRejected(TransferException.Reason.SAME_ACCOUNT, () -> TransferManager.doTransfer(from, from, 1.0, null));
+        assertRejected(TransferException.Reason.INVALID_AMOUNT, () -> TransferManager.doTransfer(from, to, -1.0, null));
+
+        Assert.assertEquals(committed + 1, TransferManager.getCommittedCount());
+        Assert.assertEquals(funds + 1, TransferManager.getRejectedCount(TransferException.Reason.INSUFFICIENT_FUNDS));
+        Assert.assertEquals(same + 1, TransferManager.getRejectedCount(TransferException.Reason.SAME_ACCOUNT));
+        Assert.assertEquals(amount + 1, TransferManager.getRejectedCount(TransferException.Reason.INVALID_AMOUNT));
+    }
+
+    /**
+     * a transfer the 'to' account cannot hold, or of an amount that is not finite, moves nothing
+     */
+    @Test
+    public void testTransferDoesNotOverflowBalances() {
+        Account from = AccountTest.getAccount(10.0);
+        Account to = AccountTest.getAccount(0.0);
+        to.setBalanceMinor(Long.MAX_VALUE - 100);
+        long overflows = TransferManager.getRejectedCount(TransferException.Reason.BALANCE_OVERFLOW);
+
+        assertRejected(TransferException.Reason.BALANCE_OVERFLOW, () -> TransferManager.doTransfer(from, to, 5.0, null));
+        assertRejected(TransferException.Reason.INVALID_AMOUNT,
+                () -> TransferManager.doTransfer(from, to, Double.POSITIVE_INFINITY, null));
+        assertRejected(TransferException.Reason.INVALID_AMOUNT, () -> TransferManager.doTransfer(from, to, 1e300, null));
+        Assert.assertEquals(1000, from.getBalanceMinor());
+        Assert.assertEquals(Long.MAX_VALUE - 100, to.getBalanceMinor());
+        Assert.assertTrue(from.getTransfers().isEmpty());
+        Assert.assertEquals(overflows + 1, TransferManager.getRejectedCount(TransferException.Reason.BALANCE_OVERFLOW));
+
+        TransferManager.doTransfer(from, to, 1.0, null);
+        Assert.assertEquals(Long.MAX_VALUE, to.getBalanceMinor());
+
+        TransferBatch batch = new TransferBatch(TransferBatch.Mode.ATOMIC);
+        batch.add(from, to, 1.0, null);
+        Assert.assertFalse(TransferManager.doBatch(batch));
+        Assert.assertNotNull(batch.getError(0));
+        Assert.assertEquals(900, from.getBalanceMinor());
+    }
+
+    private static void assertRejected(TransferException.Reason reason, Runnable transfer) {
+        try {
+            transfer.run();
+            Assert.fail();
+        }
+        catch (TransferException exc) {
+            Assert.assertEquals(reason, exc.getReason());
+        }
+    }
 }
@@ -7,6 +7,10 @@ import moolah.model.TransferManager;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
 public class TransferTest {
 
     @Test
@@ -93,4 +97,35 @@ public class TransferTest {
         Assert.assertFalse(t.equals(o));
     }
 
+    @Test
+    public void testEqualTransfersHaveSameHashCode() {
+        Transfer a = new Transfer();
+        Transfer b = new Transfer();
+        a.setId(UUID.randomUUID());
+        b.setId(a.getId());
+        Assert.assertEquals(a, b);
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+
+        Set<Transfer> set = new HashSet<>();
+        set.add(a);
+        Assert.assertTrue(set.contains(b));
+    }
+
+    @Test
+    public void testTransfersWithoutIdAreOnlyEqualToThemselves() {
+        Transfer a = new Transfer();
+        Transfer b = new Transfer();
+        Assert.assertNotEquals(a, b);
+        Assert.assertEquals(a.hashCode(), a.hashCode());
+    }
+
+    @Test
+    public void testCommittedTransferIsIndexed() {
+        Account from = AccountTest.getAccount(100.0);
+        Account to = AccountTest.getAccount(0.0);
+        Transfer transfer = TransferManager.doTransfer(from, to, 10.0, null);
+
+        Assert.assertSame(transfer, TransferManager.getIndex().get(transfer.getId()));
+        Assert.assertNull(TransferManager.getIndex().get(UUID.randomUUID()));
+    }
 }
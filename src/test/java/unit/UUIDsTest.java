@@ -0,0 +1,53 @@
+package unit;
+
+import moolah.model.UUIDs;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.UUID;
+
+public class UUIDsTest {
+
+    @Test
+    public void testParsesCanonicalForm() {
+        for (int i = 0; i < 1000; i++) {
+            UUID id = i == 0 ? new UUID(-1, -1) : i == 1 ? new UUID(0, 0) : UUID.randomUUID();
+            String text = "  " + (i % 2 == 0 ? id.toString() : id.toString().toUpperCase(Locale.ROOT));
+            char[] chars = text.toCharArray();
+            Assert.assertEquals(id.getMostSignificantBits(), UUIDs.mostSignificantBits(chars, 2));
+            Assert.assertEquals(id.getLeastSignificantBits(), UUIDs.leastSignificantBits(chars, 2));
+        }
+    }
+
+    @Test
+    public void testRejectsMalformedIds() {
+        String[] malformed = {
+                "263afea3-3843-4880-b1d5-cce977be06cg",
+                "263afea3x3843-4880-b1d5-cce977be06c1",
+                "263afea3-3843-4880-b1d5+cce977be06c1",
+                "263afea3-3843-4880-b1d5-cce977be06\u00e91",
+        };
+        for (String id : malformed) {
+            try {
+                char[] chars = id.toCharArray();
+                UUIDs.mostSignificantBits(chars, 0);
+                UUIDs.leastSignificantBits(chars, 0);
+                Assert.fail(id);
+            }
+            catch (IllegalArgumentException exc) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testFormatsCanonicalForm() {
+        char[] chars = new char[UUIDs.LENGTH + 1];
+        for (int i = 0; i < 1000; i++) {
+            UUID id = i == 0 ? new UUID(-1, -1) : i == 1 ? new UUID(0, 0) : UUID.randomUUID();
+            UUIDs.format(id.getMostSignificantBits(), id.getLeastSignificantBits(), chars, 1);
+            Assert.assertEquals(id.toString(), new String(chars, 1, UUIDs.LENGTH));
+        }
+    }
+}